@@ -0,0 +1,222 @@
+package io.kestra.plugin.history;
+
+import io.kestra.core.models.annotations.Plugin;
+import io.kestra.core.models.annotations.PluginProperty;
+import io.kestra.core.models.tasks.RunnableTask;
+import io.kestra.core.models.tasks.Task;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.serializers.FileSerde;
+import io.kestra.service.HistoryStore;
+import io.kestra.service.PostRecord;
+import io.kestra.service.SentimentAnalysisApiClient;
+import io.kestra.service.WorkerComponents;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+
+@SuperBuilder
+@ToString
+@EqualsAndHashCode
+@Getter
+@NoArgsConstructor
+@Schema(title = "Append sentiment results to the history", description = "Append the sentiment of each analyzed post to a local history store, memory-mapped segment files on the worker or on a shared volume, so that QueryHistory answers windowed aggregations without downloading the result files again. Only the metadata and sentiment of the posts are kept, not their text.")
+@Plugin(examples = {@io.kestra.core.models.annotations.Example(title = "Keep the sentiment of every run of a hashtag", full = true, code = {
+    "id: sentimentHistory",
+    "namespace: company.team",
+    "",
+    "tasks:",
+    "  - id: fetch",
+    "    type: io.kestra.plugin.instagram.GetPosts",
+    "    hashtag: kestra",
+    "    token: \"{{ secret('APIFY_TOKEN') }}\"",
+    "",
+    "  - id: analyze",
+    "    type: io.kestra.plugin.sentiment_analysis.SentimentAnalysis",
+    "    posts: \"{{ outputs.fetch.uri }}\"",
+    "    api_key: \"{{ secret('GROQ_API_KEY') }}\"",
+    "",
+    "  - id: append",
+    "    type: io.kestra.plugin.history.AppendHistory",
+    "    results: \"{{ outputs.analyze.uri }}\"",
+    "    posts: \"{{ outputs.fetch.uri }}\"",
+    "    hashtag: kestra",
+    "    directory: /data/sentiment-history"})})
+public class AppendHistory extends Task implements RunnableTask<AppendHistory.Output> {
+    // Records are appended by chunks, each chunk is one locked write
+    private static final int APPEND_CHUNK_SIZE = 10_000;
+    private static final Pattern HASHTAG_PREFIX = Pattern.compile("^#");
+
+    @Schema(title = "Directory", description = "The directory of the history store, a shared volume to share it between workers. Defaults to a directory per namespace in the temporary directory of the worker.")
+    @PluginProperty(dynamic = true)
+    private String directory;
+
+    @NonNull
+    @Schema(title = "Results File", description = "A file containing the sentiment analysis results, as output by SentimentAnalysis or SentimentPipeline")
+    @PluginProperty(dynamic = true)
+    private String results;
+
+    @Schema(title = "Posts File", description = "The file of posts the results were computed from, in the same order, to record their hashtags, source, language and time. It must hold one post per result, the task fails before appending anything otherwise.")
+    @PluginProperty(dynamic = true)
+    private String posts;
+
+    @Schema(title = "Hashtag", description = "The hashtag the posts were fetched for, recorded for every post in addition to the hashtags of the post itself")
+    @PluginProperty(dynamic = true)
+    private String hashtag;
+
+    @Schema(title = "Timestamp", description = "The time recorded for posts without one, as an ISO-8601 instant. Defaults to now.")
+    @PluginProperty(dynamic = true)
+    private String timestamp;
+
+    @Override
+    public Output run(RunContext runContext) throws Exception {
+        Logger logger = runContext.logger();
+        // Prepare Object Mapper
+        ObjectMapper om = WorkerComponents.get().objectMapper();
+        // Prepare input parameters
+        HistoryStore store = new HistoryStore(directory(runContext, directory));
+        URI inputResults = new URI(runContext.render(results));
+        URI inputPosts = posts == null ? null : new URI(runContext.render(posts));
+        String inputHashtag = hashtag == null ? null : normalizeHashtag(runContext.render(hashtag));
+        Instant inputTimestamp = timestamp == null ? Instant.now() : Instant.parse(runContext.render(timestamp));
+
+        // Results are matched to their post by position, a posts file of another
+        // size would record every post with the sentiment of another one
+        if (inputPosts != null) {
+            long resultCount = count(runContext, om, inputResults);
+            long postCount = count(runContext, om, inputPosts);
+            if (resultCount != postCount) {
+                throw new IllegalArgumentException("Invalid posts file, " + postCount + " posts for " + resultCount
+                    + " results");
+            }
+        }
+
+        long appended = 0;
+        long skipped = 0;
+        List<HistoryStore.Entry> entries = new ArrayList<>(APPEND_CHUNK_SIZE);
+        try (
+            Reader resultsReader = reader(runContext, inputResults);
+            MappingIterator<JsonNode> resultsIterator = om.readerFor(JsonNode.class).readValues(resultsReader);
+            Reader postsReader = inputPosts == null ? null : reader(runContext, inputPosts);
+            MappingIterator<JsonNode> postsIterator = postsReader == null
+                ? null
+                : om.readerFor(JsonNode.class).readValues(postsReader)
+        ) {
+            // Results are in the order of the posts, both files are read side by side
+            while (resultsIterator.hasNextValue()) {
+                JsonNode resultNode = resultsIterator.nextValue();
+                PostRecord post = postsIterator != null
+                    ? PostRecord.of(postsIterator.nextValue())
+                    : new PostRecord();
+                SentimentAnalysisApiClient.SentimentResult result = om.treeToValue(resultNode,
+                    SentimentAnalysisApiClient.SentimentResult.class);
+                String text = resultNode.hasNonNull("text") ? resultNode.get("text").asText() : post.getText();
+
+                Set<String> hashtags = new LinkedHashSet<>();
+                if (inputHashtag != null) {
+                    hashtags.add(inputHashtag);
+                }
+                if (post.getHashtags() != null) {
+                    post.getHashtags().forEach(postHashtag -> hashtags.add(normalizeHashtag(postHashtag)));
+                }
+                if (hashtags.isEmpty()) {
+                    skipped++;
+                    continue;
+                }
+
+                for (String entryHashtag : hashtags) {
+                    entries.add(new HistoryStore.Entry(
+                        post.getTimestamp() == null ? inputTimestamp : post.getTimestamp(),
+                        HistoryStore.postHash(text),
+                        entryHashtag,
+                        post.getSource(),
+                        post.getLanguage(),
+                        result.getSentiment(),
+                        result.getTier(),
+                        result.getScore()));
+                }
+                if (entries.size() >= APPEND_CHUNK_SIZE) {
+                    appended += store.append(entries);
+                    entries.clear();
+                }
+            }
+        }
+        appended += store.append(entries);
+
+        logger.debug("appended {} records to the history, skipped {} results without hashtag", appended, skipped);
+
+        return Output.builder()
+            .appended(appended)
+            .skipped(skipped)
+            .build();
+    }
+
+    static Path directory(RunContext runContext, String directory) throws Exception {
+        if (directory != null) {
+            return Path.of(runContext.render(directory));
+        }
+        return Path.of(System.getProperty("java.io.tmpdir"), "kestra-sentiment-history",
+            runContext.flowInfo().namespace());
+    }
+
+    static String normalizeHashtag(String hashtag) {
+        return HASHTAG_PREFIX.matcher(hashtag.trim()).replaceFirst("").toLowerCase(Locale.ROOT);
+    }
+
+    // Number of elements of a file, without binding them. Like readValues, a
+    // root array is counted by its elements.
+    private static long count(RunContext runContext, ObjectMapper om, URI uri) throws IOException {
+        try (
+            Reader reader = reader(runContext, uri);
+            JsonParser parser = om.getFactory().createParser(reader)
+        ) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                token = parser.nextToken();
+            }
+
+            long count = 0;
+            while (token != null && token != JsonToken.END_ARRAY) {
+                parser.skipChildren();
+                count++;
+                token = parser.nextToken();
+            }
+            return count;
+        }
+    }
+
+    private static Reader reader(RunContext runContext, URI uri) throws IOException {
+        return new BufferedReader(
+            new InputStreamReader(runContext.storage().getFile(uri), StandardCharsets.UTF_8),
+            FileSerde.BUFFER_SIZE);
+    }
+
+    @Builder
+    @Getter
+    public static class Output implements io.kestra.core.models.tasks.Output {
+        @Schema(title = "Number of records appended, one per post and hashtag")
+        private long appended;
+
+        @Schema(title = "Number of results skipped because no hashtag is known for their post")
+        private long skipped;
+    }
+}
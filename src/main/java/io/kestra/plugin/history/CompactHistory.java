@@ -0,0 +1,83 @@
+package io.kestra.plugin.history;
+
+import io.kestra.core.models.annotations.Plugin;
+import io.kestra.core.models.annotations.PluginProperty;
+import io.kestra.core.models.tasks.RunnableTask;
+import io.kestra.core.models.tasks.Task;
+import io.kestra.core.runners.RunContext;
+import io.kestra.service.HistoryStore;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.slf4j.Logger;
+
+@SuperBuilder
+@ToString
+@EqualsAndHashCode
+@Getter
+@NoArgsConstructor
+@Schema(title = "Compact the sentiment history", description = "Rewrite the history store sorted by hashtag and time, dropping the posts appended twice for a hashtag within the same hour and, with a retention, the expired records. Segments are sorted one at a time then merged, so the memory used is bounded by the size of a segment. Sorted segments keep each hashtag and hour contiguous, which makes queries read fewer records.")
+@Plugin(examples = {@io.kestra.core.models.annotations.Example(title = "Nightly compaction keeping 90 days", full = true, code = {
+    "id: compactHistory",
+    "namespace: company.team",
+    "",
+    "tasks:",
+    "  - id: compact",
+    "    type: io.kestra.plugin.history.CompactHistory",
+    "    directory: /data/sentiment-history",
+    "    retention: P90D",
+    "",
+    "triggers:",
+    "  - id: nightly",
+    "    type: io.kestra.plugin.core.trigger.Schedule",
+    "    cron: \"0 3 * * *\""})})
+public class CompactHistory extends Task implements RunnableTask<CompactHistory.Output> {
+    @Schema(title = "Directory", description = "The directory of the history store, see AppendHistory")
+    @PluginProperty(dynamic = true)
+    private String directory;
+
+    @Schema(title = "Retention", description = "How long records are kept, all of them are kept when not set")
+    @PluginProperty
+    private Duration retention;
+
+    @Override
+    public Output run(RunContext runContext) throws Exception {
+        Logger logger = runContext.logger();
+        // Prepare input parameters
+        HistoryStore store = new HistoryStore(AppendHistory.directory(runContext, directory));
+        Instant olderThan = retention == null ? null : Instant.now().minus(retention);
+
+        HistoryStore.Compaction compaction = store.compact(olderThan);
+
+        logger.debug("compacted the history from {} records in {} segments to {} records in {} segments",
+            compaction.recordsBefore(), compaction.segmentsBefore(), compaction.recordsAfter(),
+            compaction.segmentsAfter());
+
+        return Output.builder()
+            .recordsBefore(compaction.recordsBefore())
+            .recordsAfter(compaction.recordsAfter())
+            .segmentsBefore(compaction.segmentsBefore())
+            .segmentsAfter(compaction.segmentsAfter())
+            .build();
+    }
+
+    @Builder
+    @Getter
+    public static class Output implements io.kestra.core.models.tasks.Output {
+        @Schema(title = "Number of records before the compaction")
+        private long recordsBefore;
+
+        @Schema(title = "Number of records kept")
+        private long recordsAfter;
+
+        @Schema(title = "Number of segment files before the compaction")
+        private int segmentsBefore;
+
+        @Schema(title = "Number of segment files after the compaction")
+        private int segmentsAfter;
+    }
+}
@@ -0,0 +1,117 @@
+package io.kestra.plugin.history;
+
+import io.kestra.core.models.annotations.Plugin;
+import io.kestra.core.models.annotations.PluginProperty;
+import io.kestra.core.models.tasks.RunnableTask;
+import io.kestra.core.models.tasks.Task;
+import io.kestra.core.runners.RunContext;
+import io.kestra.service.HistoryStore;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import org.slf4j.Logger;
+
+@SuperBuilder
+@ToString
+@EqualsAndHashCode
+@Getter
+@NoArgsConstructor
+@Schema(title = "Query the sentiment history", description = "Aggregate the sentiment of a hashtag over fixed intervals from the history store written by AppendHistory. Whole hours are answered from the pre-aggregated index of the store, only partial hours are read record by record.")
+@Plugin(examples = {@io.kestra.core.models.annotations.Example(title = "Hourly sentiment of a hashtag over the last day", code = {
+    "hashtag: kestra",
+    "window: PT24H",
+    "interval: PT1H",
+    "directory: /data/sentiment-history"})})
+public class QueryHistory extends Task implements RunnableTask<QueryHistory.Output> {
+    @Schema(title = "Directory", description = "The directory of the history store, see AppendHistory")
+    @PluginProperty(dynamic = true)
+    private String directory;
+
+    @NonNull
+    @Schema(title = "Hashtag", description = "The hashtag to aggregate, with or without #")
+    @PluginProperty(dynamic = true)
+    private String hashtag;
+
+    @Schema(title = "From", description = "The start of the window, as an ISO-8601 instant. Defaults to the window before to.")
+    @PluginProperty(dynamic = true)
+    private String from;
+
+    @Schema(title = "To", description = "The end of the window, excluded, as an ISO-8601 instant. Defaults to now.")
+    @PluginProperty(dynamic = true)
+    private String to;
+
+    @Schema(title = "Window", description = "The length of the window when from isn't set")
+    @PluginProperty
+    @Builder.Default
+    private Duration window = Duration.ofHours(24);
+
+    @Schema(title = "Interval", description = "The length of each aggregated interval, starting at from")
+    @PluginProperty
+    @Builder.Default
+    private Duration interval = Duration.ofHours(1);
+
+    @Override
+    public Output run(RunContext runContext) throws Exception {
+        Logger logger = runContext.logger();
+        // Prepare input parameters
+        HistoryStore store = new HistoryStore(AppendHistory.directory(runContext, directory));
+        String inputHashtag = AppendHistory.normalizeHashtag(runContext.render(hashtag));
+        Instant inputTo = to == null ? Instant.now() : Instant.parse(runContext.render(to));
+        Instant inputFrom = from == null ? inputTo.minus(window) : Instant.parse(runContext.render(from));
+
+        long start = System.nanoTime();
+        List<HistoryStore.Bucket> buckets = store.query(inputHashtag, inputFrom, inputTo, interval);
+
+        long count = 0;
+        long positive = 0;
+        long negative = 0;
+        long neutral = 0;
+        double scoreSum = 0;
+        for (HistoryStore.Bucket bucket : buckets) {
+            count += bucket.count();
+            positive += bucket.positive();
+            negative += bucket.negative();
+            neutral += bucket.neutral();
+            scoreSum += bucket.meanScore() * bucket.count();
+        }
+
+        logger.debug("aggregated {} records of #{} in {} intervals in {} ms", count, inputHashtag, buckets.size(),
+            Duration.ofNanos(System.nanoTime() - start).toMillis());
+
+        return Output.builder()
+            .buckets(buckets)
+            .count(count)
+            .positive(positive)
+            .negative(negative)
+            .neutral(neutral)
+            .meanScore(count == 0 ? 0 : scoreSum / count)
+            .build();
+    }
+
+    @Builder
+    @Getter
+    public static class Output implements io.kestra.core.models.tasks.Output {
+        @Schema(title = "Aggregates of each interval, empty intervals included")
+        private List<HistoryStore.Bucket> buckets;
+
+        @Schema(title = "Number of posts in the window")
+        private long count;
+
+        @Schema(title = "Number of positive posts in the window")
+        private long positive;
+
+        @Schema(title = "Number of negative posts in the window")
+        private long negative;
+
+        @Schema(title = "Number of neutral posts in the window")
+        private long neutral;
+
+        @Schema(title = "Mean sentiment score in the window")
+        private double meanScore;
+    }
+}
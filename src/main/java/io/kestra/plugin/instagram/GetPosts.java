@@ -5,25 +5,34 @@ import io.kestra.core.models.annotations.PluginProperty;
 import io.kestra.core.models.tasks.RunnableTask;
 import io.kestra.core.models.tasks.Task;
 import io.kestra.core.runners.RunContext;
-import io.kestra.core.serializers.FileSerde;
+import io.kestra.service.ApifyApiClient;
+import io.kestra.service.CredentialPool;
+import io.kestra.service.FetchCache;
+import io.kestra.service.JsonArrayWriter;
+import io.kestra.service.WorkerComponents;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.*;
 import lombok.experimental.SuperBuilder;
 
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import reactor.core.publisher.Flux;
+import com.fasterxml.jackson.databind.ObjectReader;
 
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
-import java.io.Writer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import org.slf4j.Logger;
 
@@ -34,15 +43,25 @@ import org.slf4j.Logger;
 @NoArgsConstructor
 @Schema(title = "Fetch Instagram posts using a hashtag", description = "Fetch posts from Instagram containing a specific hashtag")
 @Plugin(examples = { @io.kestra.core.models.annotations.Example(title = "Fetch Instagram Posts", code = {
-        "token: apify_api_*******************", "hashtag: blackfridaysale", "numberOfPosts: 1" }) })
+        "token: apify_api_*******************", "hashtag: blackfridaysale", "numberOfPosts: 1" }),
+        @io.kestra.core.models.annotations.Example(title = "Fetch thousands of Instagram Posts with an asynchronous run", code = {
+                "token: apify_api_*******************", "hashtag: blackfridaysale", "numberOfPosts: 5000",
+                "mode: ASYNC", "memory: 1024" }),
+        @io.kestra.core.models.annotations.Example(title = "Spread the requests over several Apify tokens", code = {
+                "tokens:", "  - \"{{ secret('APIFY_TOKEN_1') }}\"", "  - \"{{ secret('APIFY_TOKEN_2') }}\"",
+                "hashtag: blackfridaysale", "numberOfPosts: 100" }),
+        @io.kestra.core.models.annotations.Example(title = "Share the posts fetched within the hour with the other flows of the namespace", code = {
+                "token: apify_api_*******************", "hashtag: blackfridaysale", "numberOfPosts: 100",
+                "cacheTtl: PT1H" }) })
 public class GetPosts extends Task implements RunnableTask<GetPosts.Output> {
-    private static final String APIFY_API_URL = "https://api.apify.com/v2/acts/apify~instagram-hashtag-scraper/run-sync-get-dataset-items";
-    private static final int DEFAULT_MEMORY = 256;
-
-    @Schema(title = "Apify Token", description = "Token from Apify Console. Get it at: https://console.apify.com/settings/integrations", requiredMode = Schema.RequiredMode.REQUIRED)
+    @Schema(title = "Apify Token", description = "Token from Apify Console. Get it at: https://console.apify.com/settings/integrations. Either token or tokens must be set.")
     @PluginProperty(dynamic = true)
     private String token;
 
+    @Schema(title = "Apify Tokens", description = "Several tokens, each run is started with the token rate limited the longest time ago, and with another one when it's answered with a 429")
+    @PluginProperty(dynamic = true)
+    private List<String> tokens;
+
     @Schema(title = "Hashtag", description = "Hashtag for which posts will be fetched")
     @PluginProperty(dynamic = true)
     @Builder.Default
@@ -53,58 +72,194 @@ public class GetPosts extends Task implements RunnableTask<GetPosts.Output> {
     @Builder.Default
     private String numberOfPosts = "1";
 
+    @Schema(title = "Fetch Mode", description = "SYNC holds a single request open for the whole scrape and is bound by Apify's sync timeout. ASYNC starts the actor run, waits for it to finish and streams the dataset page by page, use it for large scrapes.")
+    @PluginProperty
+    @Builder.Default
+    private FetchMode mode = FetchMode.SYNC;
+
+    @Schema(title = "Actor Memory", description = "Memory allocated to the Apify actor run in megabytes, must be a power of 2 starting at 128")
+    @PluginProperty(dynamic = true)
+    @Builder.Default
+    private String memory = "256";
+
+    @Schema(title = "Page Size", description = "Number of dataset items downloaded per request in ASYNC mode")
+    @PluginProperty(dynamic = true)
+    @Builder.Default
+    private String pageSize = "1000";
+
+    @Schema(title = "Wait Timeout", description = "Maximum time to wait for the actor run to finish in ASYNC mode")
+    @PluginProperty
+    @Builder.Default
+    private Duration waitTimeout = Duration.ofHours(1);
+
+    @Schema(title = "Include Metadata", description = "Write each post as an object with its caption as text, hashtags, mentions and time, instead of its caption only")
+    @PluginProperty
+    @Builder.Default
+    private Boolean includeMetadata = false;
+
+    @Schema(title = "API Base URL", description = "Base URL of the Apify API, override it to go through a proxy or a mock server")
+    @PluginProperty(dynamic = true)
+    @Builder.Default
+    private String baseUrl = ApifyApiClient.DEFAULT_BASE_URL;
+
+    @Schema(title = "Cache TTL", description = "When set, the posts fetched for a hashtag are shared with the executions of the namespace fetching the same hashtag, number of posts and format in the same time bucket of this length. Concurrent executions of a worker wait for a single Apify run. Executions reading the cache copy the file into their own storage, and fetch again if the execution that fetched it was purged.")
+    @PluginProperty
+    private Duration cacheTtl;
+
     @Override
     public Output run(RunContext runContext) throws Exception {
         Logger logger = runContext.logger();
         // Prepare input parameters
-        String inputToken = runContext.render(token);
-        String inputNumberOfPosts = runContext.render(numberOfPosts);
+        String inputBaseUrl = runContext.render(baseUrl);
+        List<String> inputTokens = new ArrayList<>();
+        if (token != null) {
+            inputTokens.add(runContext.render(token));
+        }
+        if (tokens != null) {
+            inputTokens.addAll(runContext.render(tokens));
+        }
+        if (inputTokens.isEmpty()) {
+            throw new IllegalArgumentException("Invalid token, either token or tokens must be set");
+        }
+        long inputNumberOfPosts = Long.parseLong(runContext.render(numberOfPosts));
         String inputHashtag = runContext.render(hashtag).replaceFirst("^#", "");
-        File tempFile = runContext.workingDir().createTempFile().toFile();
+        int inputMemory = Integer.parseInt(runContext.render(memory));
+        long inputPageSize = Long.parseLong(runContext.render(pageSize));
+        if (inputPageSize <= 0) {
+            throw new IllegalArgumentException("Invalid pageSize " + inputPageSize + ", must be positive");
+        }
+
+        if (cacheTtl == null) {
+            URI tempFileURI = fetch(runContext, inputTokens, inputBaseUrl, inputHashtag, inputNumberOfPosts,
+                    inputMemory, inputPageSize);
+            return Output.builder().uri(tempFileURI).cached(false).build();
+        }
 
-        // Prepare HTTP client and object mapper
-        HttpClient httpClient = HttpClient.newHttpClient();
-        ObjectMapper objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES,
-                false);
+        String variant = inputNumberOfPosts + (includeMetadata ? "_metadata" : "");
+        String cacheKey = FetchCache.key("instagram", inputHashtag, variant, cacheTtl, Instant.now());
+        FetchCache.Result result = new FetchCache(runContext).get(cacheKey, cacheTtl,
+                () -> fetch(runContext, inputTokens, inputBaseUrl, inputHashtag, inputNumberOfPosts, inputMemory,
+                        inputPageSize));
+        logger.debug("cache key: {}, cached: {}", cacheKey, result.cached());
 
-        // Construct request URL
-        String requestUrl = String.format("%s?token=%s&maxItems=%s&memory=%d", APIFY_API_URL, inputToken,
-                inputNumberOfPosts, DEFAULT_MEMORY);
+        return Output.builder().uri(result.uri()).cached(result.cached()).build();
+    }
 
-        // Prepare request body
-        String requestBody = String.format("{ \"hashtags\": [\"%s\"] }", inputHashtag);
+    private URI fetch(RunContext runContext, List<String> inputTokens, String inputBaseUrl, String inputHashtag,
+            long inputNumberOfPosts, int inputMemory, long inputPageSize) throws Exception {
+        Logger logger = runContext.logger();
+        File tempFile = runContext.workingDir().createTempFile().toFile();
 
-        // Create HTTP request
-        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(requestUrl))
-                .header("Content-Type", "application/json").POST(HttpRequest.BodyPublishers.ofString(requestBody))
-                .build();
+        // Prepare API client and object mapper
+        CredentialPool credentialPool = CredentialPool.shared("apify:" + inputBaseUrl, inputTokens);
+        ApifyApiClient apifyApiClient = new ApifyApiClient(credentialPool, inputBaseUrl);
+        ObjectMapper objectMapper = WorkerComponents.get().objectMapper();
+        ObjectReader postsReader = WorkerComponents.get().reader(PostsData.class);
 
-        // Send request and get response
-        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        // Prepare actor input
+        Map<String, Object> actorInput = Map.of(
+                "hashtags", List.of(inputHashtag),
+                "resultsLimit", inputNumberOfPosts);
 
-        // Parse response
-        PostsData[] postsObject = objectMapper.readValue(response.body(), PostsData[].class);
+        // Stream posts to the result file as they are parsed
+        try (JsonArrayWriter output = new JsonArrayWriter(new BufferedWriter(new FileWriter(tempFile)), objectMapper)) {
+            if (mode == FetchMode.ASYNC) {
+                fetchAsync(runContext, apifyApiClient, postsReader, actorInput, inputNumberOfPosts, inputMemory,
+                        inputPageSize, output);
+            } else {
+                try (InputStream body = apifyApiClient.runSyncGetDatasetItems(
+                        ApifyApiClient.INSTAGRAM_HASHTAG_SCRAPER, actorInput, inputNumberOfPosts, inputMemory)) {
+                    writePosts(postsReader.readValues(body), output);
+                }
+            }
 
-        // Extract post captions
-        List<String> posts = new ArrayList<>();
-        for (PostsData post : postsObject) {
-            posts.add(post.caption);
+            logger.debug("posts: {}", output.count());
         }
+        logger.debug("token usage: {}", credentialPool.usage());
 
-        try (Writer output = new BufferedWriter(new FileWriter(tempFile))) {
+        logger.debug("tempFile: {}", tempFile);
+
+        URI tempFileURI = runContext.storage().putFile(tempFile);
+
+        logger.debug("tempFileURI: {}", tempFileURI);
+
+        return tempFileURI;
+    }
+
+    private void fetchAsync(RunContext runContext, ApifyApiClient apifyApiClient, ObjectReader postsReader,
+            Map<String, Object> actorInput, long maxItems, int actorMemory, long inputPageSize, JsonArrayWriter output)
+            throws Exception {
+        Logger logger = runContext.logger();
 
-            output.write(objectMapper.writeValueAsString(posts));
-            output.flush();
-            logger.debug("tempFile: {}", tempFile);
+        // Start the run and wait for it without holding a request open
+        ApifyApiClient.ActorRun run = apifyApiClient.startRun(ApifyApiClient.INSTAGRAM_HASHTAG_SCRAPER, actorInput,
+                maxItems, actorMemory);
+        logger.info("Started Apify run {}", run.getId());
+        run = apifyApiClient.waitForRun(run, waitTimeout);
+        logger.info("Apify run {} finished, reading dataset {}", run.getId(), run.getDefaultDatasetId());
 
-            URI tempFileURI = runContext.storage().putFile(tempFile);
+        // Page through the dataset, downloading the next page while the current
+        // one is parsed and written
+        long offset = 0;
+        long requested = Math.min(inputPageSize, maxItems);
+        CompletableFuture<byte[]> pending = apifyApiClient.fetchDatasetItems(run, offset, requested);
+        while (pending != null) {
+            byte[] page = await(pending);
+            offset += requested;
 
-            logger.debug("tempFileURI: {}", tempFileURI);
+            long pageLimit = requested;
+            requested = Math.min(inputPageSize, maxItems - offset);
+            pending = requested > 0
+                    ? apifyApiClient.fetchDatasetItems(run, offset, requested)
+                    : null;
 
-            return Output.builder().uri(tempFileURI).build();
+            // A short page means the end of the dataset was reached
+            if (writePosts(postsReader.readValues(page), output) < pageLimit && pending != null) {
+                pending.cancel(true);
+                pending = null;
+            }
         }
     }
 
+    private long writePosts(MappingIterator<PostsData> posts, JsonArrayWriter output) throws IOException {
+        long count = 0;
+        try (posts) {
+            while (posts.hasNextValue()) {
+                PostsData post = posts.nextValue();
+                output.write(includeMetadata ? metadata(post) : post.caption);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // The fields read back by PostRecord
+    private static Map<String, Object> metadata(PostsData post) {
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("text", post.caption);
+        metadata.put("source", "instagram");
+        metadata.put("timestamp", post.timestamp == null ? null : post.timestamp.toInstant().toString());
+        metadata.put("hashtags", post.hashtags == null ? List.of() : post.hashtags);
+        metadata.put("mentions", post.mentions == null ? List.of() : post.mentions);
+        return metadata;
+    }
+
+    private static byte[] await(CompletableFuture<byte[]> page) throws IOException, InterruptedException {
+        try {
+            return page.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException uncheckedIOException) {
+                throw uncheckedIOException.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    public enum FetchMode {
+        SYNC,
+        ASYNC
+    }
+
     @Builder
     @Getter
     public static class Output implements io.kestra.core.models.tasks.Output {
@@ -113,5 +268,8 @@ public class GetPosts extends Task implements RunnableTask<GetPosts.Output> {
 
         @Schema(title = "Date of Data")
         private final String currentDate;
+
+        @Schema(title = "Whether the posts were fetched by another execution, see cacheTtl")
+        private final Boolean cached;
     }
 }
\ No newline at end of file
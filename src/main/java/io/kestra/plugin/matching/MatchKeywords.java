@@ -0,0 +1,275 @@
+package io.kestra.plugin.matching;
+
+import io.kestra.core.models.annotations.Plugin;
+import io.kestra.core.models.annotations.PluginProperty;
+import io.kestra.core.models.tasks.RunnableTask;
+import io.kestra.core.models.tasks.Task;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.serializers.FileSerde;
+import io.kestra.service.AhoCorasickMatcher;
+import io.kestra.service.JsonArrayWriter;
+import io.kestra.service.PostRecord;
+import io.kestra.service.WorkerComponents;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+
+@SuperBuilder
+@ToString
+@EqualsAndHashCode
+@Getter
+@NoArgsConstructor
+@Schema(title = "Match brand keywords", description = "Tag each post with the brands whose keywords it contains, and with its mentions and URLs, optionally keeping only the posts matching a brand. The keyword dictionary is compiled once per worker into an Aho-Corasick automaton, so posts are matched in a single pass whatever the number of keywords.")
+@Plugin(examples = {@io.kestra.core.models.annotations.Example(title = "Only analyze the tweets mentioning a brand", full = true, code = {
+    "id: brandMonitoring",
+    "namespace: company.team",
+    "",
+    "tasks:",
+    "  - id: match",
+    "    type: io.kestra.plugin.matching.MatchKeywords",
+    "    posts: \"{{ outputs['fetch-tweets'].uri }}\"",
+    "    keywords:",
+    "      kestra: [\"kestra\", \"kestra.io\", \"@kestra_io\"]",
+    "      airflow: [\"airflow\", \"apache airflow\"]",
+    "    filter: true",
+    "",
+    "  - id: analyze",
+    "    type: io.kestra.plugin.sentiment_analysis.SentimentAnalysis",
+    "    posts: \"{{ outputs.match.uri }}\"",
+    "    api_key: \"{{ secret('GROQ_API_KEY') }}\""})})
+public class MatchKeywords extends Task implements RunnableTask<MatchKeywords.Output> {
+    private static final Pattern TAG_PREFIX = Pattern.compile("^@");
+    // Compiled dictionaries, kept per worker and keyed by a hash of the dictionary
+    private static final int MAX_CACHED_MATCHERS = 16;
+    private static final Map<String, AhoCorasickMatcher> MATCHERS = Collections.synchronizedMap(
+        new LinkedHashMap<>(MAX_CACHED_MATCHERS, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, AhoCorasickMatcher> eldest) {
+                return size() > MAX_CACHED_MATCHERS;
+            }
+        });
+
+    @NonNull
+    @Schema(title = "Posts File", description = "A file containing a list of posts to match")
+    @PluginProperty(dynamic = true)
+    private String posts;
+
+    @Schema(title = "Keywords", description = "The keywords of each brand, as a map from brand to list of keywords or as a JSON string of it. Either keywords or dictionary must be set.")
+    @PluginProperty(dynamic = true)
+    private Object keywords;
+
+    @Schema(title = "Dictionary File", description = "A file containing a JSON object mapping each brand to its keywords, for dictionaries too large to be inlined in the flow")
+    @PluginProperty(dynamic = true)
+    private String dictionary;
+
+    @Schema(title = "Case Sensitive", description = "Whether keywords are matched case sensitively")
+    @PluginProperty
+    @Builder.Default
+    private Boolean caseSensitive = false;
+
+    @Schema(title = "Whole Words", description = "Whether keywords only match whole words, e.g. 'kestra' doesn't match 'orchestra'")
+    @PluginProperty
+    @Builder.Default
+    private Boolean wholeWords = true;
+
+    @Schema(title = "Filter", description = "Whether to only output the posts matching at least one brand")
+    @PluginProperty
+    @Builder.Default
+    private Boolean filter = false;
+
+    @Override
+    public Output run(RunContext runContext) throws Exception {
+        Logger logger = runContext.logger();
+        // Prepare Object Mapper
+        ObjectMapper om = WorkerComponents.get().objectMapper();
+        // Prepare input parameters
+        URI inputPosts = new URI(runContext.render(posts));
+        AhoCorasickMatcher matcher = matcher(runContext, om, dictionary(runContext, om));
+        File tempFile = runContext.workingDir().createTempFile().toFile();
+
+        AhoCorasickMatcher.Scratch scratch = matcher.newScratch();
+        long[] brandCounts = new long[matcher.brandCount()];
+        long total = 0;
+        long matched = 0;
+        try (
+            Reader reader = new BufferedReader(
+                new InputStreamReader(runContext.storage().getFile(inputPosts), StandardCharsets.UTF_8),
+                FileSerde.BUFFER_SIZE);
+            MappingIterator<JsonNode> iterator = om.readerFor(JsonNode.class).readValues(reader);
+            JsonArrayWriter output = new JsonArrayWriter(new BufferedWriter(new FileWriter(tempFile)), om)
+        ) {
+            while (iterator.hasNextValue()) {
+                JsonNode node = iterator.nextValue();
+                String text = PostRecord.of(node).getText();
+                total++;
+
+                int found = matcher.match(text, scratch);
+                if (found == 0 && filter) {
+                    continue;
+                }
+
+                ObjectNode post = node.isObject() ? (ObjectNode) node : om.createObjectNode().put("text", text);
+                ArrayNode brands = post.putArray("brands");
+                for (int i = 0; i < found; i++) {
+                    brands.add(matcher.brand(scratch.get(i)));
+                    brandCounts[scratch.get(i)]++;
+                }
+                entities(text, array(post, "mentions"), array(post, "urls"));
+                output.write(post);
+                if (found > 0) {
+                    matched++;
+                }
+            }
+        }
+
+        URI tempFileURI = runContext.storage().putFile(tempFile);
+
+        logger.debug("{} of {} posts matched a brand, tempFileURI: {}", matched, total, tempFileURI);
+
+        Map<String, Long> brands = new LinkedHashMap<>();
+        for (int i = 0; i < brandCounts.length; i++) {
+            brands.put(matcher.brand(i), brandCounts[i]);
+        }
+
+        return Output.builder()
+            .uri(tempFileURI)
+            .total(total)
+            .matched(matched)
+            .brands(brands)
+            .build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, List<String>> dictionary(RunContext runContext, ObjectMapper om) throws Exception {
+        if ((keywords == null) == (dictionary == null)) {
+            throw new IllegalArgumentException("Exactly one of 'keywords' or 'dictionary' must be set");
+        }
+
+        TypeReference<TreeMap<String, List<String>>> type = new TypeReference<>() {
+        };
+        if (dictionary != null) {
+            try (InputStream inputStream = runContext.storage().getFile(new URI(runContext.render(dictionary)))) {
+                return om.readValue(inputStream, type);
+            }
+        }
+        if (keywords instanceof String string) {
+            return om.readValue(runContext.render(string), type);
+        }
+        if (keywords instanceof Map<?, ?> map) {
+            return om.convertValue(runContext.render((Map<String, Object>) map), type);
+        }
+        throw new IllegalArgumentException("Invalid keywords '" + keywords + "', must be a map or a JSON string");
+    }
+
+    // Compiling a large dictionary dominates small runs, reuse it across executions
+    AhoCorasickMatcher matcher(RunContext runContext, ObjectMapper om, Map<String, List<String>> inputDictionary) throws Exception {
+        byte[] canonical = om.writer().with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS).writeValueAsBytes(inputDictionary);
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(canonical);
+        String key = HexFormat.of().formatHex(digest.digest()) + ":" + caseSensitive + ":" + wholeWords;
+
+        AhoCorasickMatcher matcher = MATCHERS.get(key);
+        if (matcher == null) {
+            matcher = AhoCorasickMatcher.compile(inputDictionary, caseSensitive, wholeWords);
+            MATCHERS.put(key, matcher);
+            runContext.logger().debug("compiled dictionary of {} brands", matcher.brandCount());
+        }
+        return matcher;
+    }
+
+    // The array already in the post, e.g. the mentions of its metadata, is kept
+    private static ArrayNode array(ObjectNode post, String field) {
+        return post.get(field) instanceof ArrayNode existing ? existing : post.putArray(field);
+    }
+
+    private static void addDistinct(ArrayNode values, String value) {
+        for (JsonNode existing : values) {
+            if (value.equals(TAG_PREFIX.matcher(existing.asText()).replaceFirst(""))) {
+                return;
+            }
+        }
+        values.add(value);
+    }
+
+    // Extract mentions and URLs in a single scan, only allocating the values found
+    private static void entities(String text, ArrayNode mentions, ArrayNode urls) {
+        if (text == null) {
+            return;
+        }
+
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (c == '@' && (i == 0 || !isWordChar(text.charAt(i - 1)))) {
+                int end = i + 1;
+                while (end < length && isWordChar(text.charAt(end))) {
+                    end++;
+                }
+                if (end > i + 1) {
+                    addDistinct(mentions, text.substring(i + 1, end));
+                }
+                i = end;
+            } else if (c == 'h' && (text.startsWith("http://", i) || text.startsWith("https://", i))) {
+                int end = i;
+                while (end < length && !Character.isWhitespace(text.charAt(end))) {
+                    end++;
+                }
+                // Trailing punctuation belongs to the sentence, not to the URL
+                while (end > i && isTrailingPunctuation(text.charAt(end - 1))) {
+                    end--;
+                }
+                addDistinct(urls, text.substring(i, end));
+                i = end;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private static boolean isWordChar(char c) {
+        return c == '_' || Character.isLetterOrDigit(c);
+    }
+
+    private static boolean isTrailingPunctuation(char c) {
+        return c == '.' || c == ',' || c == '!' || c == '?' || c == ')' || c == ';' || c == ':' || c == '"' || c == '\'';
+    }
+
+    @Builder
+    @Getter
+    public static class Output implements io.kestra.core.models.tasks.Output {
+        @Schema(title = "URI of a temporary file containing the tagged posts, as objects with text, brands, mentions and urls. Mentions and URLs already in a post are kept, the ones of its text are added.")
+        private URI uri;
+
+        @Schema(title = "Number of posts read")
+        private Long total;
+
+        @Schema(title = "Number of posts matching at least one brand")
+        private Long matched;
+
+        @Schema(title = "Number of posts matching each brand")
+        private Map<String, Long> brands;
+    }
+}
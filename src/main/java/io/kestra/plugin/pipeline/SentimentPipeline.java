@@ -0,0 +1,425 @@
+package io.kestra.plugin.pipeline;
+
+import io.kestra.core.models.annotations.Plugin;
+import io.kestra.core.models.annotations.PluginProperty;
+import io.kestra.core.models.tasks.RunnableTask;
+import io.kestra.core.models.tasks.Task;
+import io.kestra.core.runners.RunContext;
+import io.kestra.plugin.sentiment_analysis.SentimentAnalysis;
+import io.kestra.service.ApifyApiClient;
+import io.kestra.service.CascadeSentimentEngine;
+import io.kestra.service.CredentialPool;
+import io.kestra.service.JsonArrayWriter;
+import io.kestra.service.LexiconSentimentEngine;
+import io.kestra.service.PostRecord;
+import io.kestra.service.SentimentAggregates;
+import io.kestra.service.SentimentAnalysisApiClient;
+import io.kestra.service.SentimentEngine;
+import io.kestra.service.SentimentEngines;
+import io.kestra.service.TwitterApiClient;
+import io.kestra.service.WorkerComponents;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.*;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+
+@SuperBuilder
+@ToString
+@EqualsAndHashCode
+@Getter
+@NoArgsConstructor
+@Schema(title = "Fetch and analyze posts in a single pipeline", description = "Fetch the posts of a hashtag page by page, normalize and deduplicate them, analyze them in concurrent batches and stream the results to a file, all stages running at the same time. Every stage only buffers a bounded number of pages, posts or batches, so memory stays constant whatever the number of posts, and a slow stage slows down the ones before it instead of piling data up.")
+@Plugin(examples = {@io.kestra.core.models.annotations.Example(title = "Analyze 10,000 Instagram posts with 8 concurrent model calls", code = {
+    "source: INSTAGRAM",
+    "token: \"{{ secret('APIFY_TOKEN') }}\"",
+    "hashtag: blackfridaysale",
+    "numberOfPosts: \"10000\"",
+    "api_key: \"{{ secret('GROQ_API_KEY') }}\"",
+    "engine: CASCADE",
+    "concurrency: \"8\""})})
+public class SentimentPipeline extends Task implements RunnableTask<SentimentPipeline.Output> {
+    private static final TypeReference<List<JsonNode>> ITEMS = new TypeReference<>() {
+    };
+    private static final Pattern WHITESPACES = Pattern.compile("\\s+");
+    private static final Pattern RETWEET_PREFIX = Pattern.compile("^rt @\\w+: ");
+
+    @NonNull
+    @Schema(title = "Source", description = "The social network to fetch the posts from")
+    @PluginProperty
+    private Source source;
+
+    @Schema(title = "Hashtag", description = "Hashtag for which posts will be fetched")
+    @PluginProperty(dynamic = true)
+    @Builder.Default
+    private String hashtag = "blackfridaysale";
+
+    @Schema(title = "Number of Posts", description = "Number of posts that will be fetched, duplicates included")
+    @PluginProperty(dynamic = true)
+    @Builder.Default
+    private String numberOfPosts = "100";
+
+    @Schema(title = "Apify Token", description = "Apify token, for the INSTAGRAM source")
+    @PluginProperty(dynamic = true)
+    private String token;
+
+    @Schema(title = "Apify Tokens", description = "Several Apify tokens, for the INSTAGRAM source")
+    @PluginProperty(dynamic = true)
+    private List<String> tokens;
+
+    @Schema(title = "Twitter Access Token", description = "A valid OAuth2 access token, for the TWITTER source, e.g. the one stored in the KV store by GetTweets")
+    @PluginProperty(dynamic = true)
+    private String access_token;
+
+    @Schema(title = "Page Size", description = "Number of posts fetched per request, Twitter caps it at 100")
+    @PluginProperty(dynamic = true)
+    @Builder.Default
+    private String pageSize = "100";
+
+    @Schema(title = "Prefetched Pages", description = "Number of pages fetched ahead while the previous ones are analyzed")
+    @PluginProperty(dynamic = true)
+    @Builder.Default
+    private String prefetchPages = "2";
+
+    @Schema(title = "Actor Memory", description = "Memory allocated to the Apify actor run in megabytes, for the INSTAGRAM source")
+    @PluginProperty(dynamic = true)
+    @Builder.Default
+    private String memory = "256";
+
+    @Schema(title = "Wait Timeout", description = "Maximum time to wait for the Apify actor run to finish, for the INSTAGRAM source")
+    @PluginProperty
+    @Builder.Default
+    private Duration waitTimeout = Duration.ofHours(1);
+
+    @Schema(title = "Deduplication Window", description = "Number of recent distinct posts remembered to drop duplicates and retweets, duplicates further apart are analyzed again")
+    @PluginProperty(dynamic = true)
+    @Builder.Default
+    private String dedupWindow = "100000";
+
+    @Schema(title = "Groq API Key", description = "API Key from https://console.groq.com/keys, required unless the engine is LOCAL or api_keys is set")
+    @PluginProperty(dynamic = true)
+    private String api_key;
+
+    @Schema(title = "Groq API Keys", description = "Several API keys, requests are spread over them")
+    @PluginProperty(dynamic = true)
+    private List<String> api_keys;
+
+    @Schema(title = "Engine", description = "LLM sends every post to the model, LOCAL scores every post with a word lexicon, CASCADE only sends the posts the lexicon isn't confident about to the model")
+    @PluginProperty
+    @Builder.Default
+    private SentimentAnalysis.Engine engine = SentimentAnalysis.Engine.LLM;
+
+    @Schema(title = "Confidence Threshold", description = "With the CASCADE engine, posts scored locally with a confidence below this are sent to the model")
+    @PluginProperty(dynamic = true)
+    @Builder.Default
+    private String confidenceThreshold = "0.6";
+
+    @Schema(title = "Batch Size", description = "Number of posts sent to the model per request")
+    @PluginProperty(dynamic = true)
+    @Builder.Default
+    private String batchSize = "50";
+
+    @Schema(title = "Concurrency", description = "Maximum number of batches analyzed at the same time")
+    @PluginProperty(dynamic = true)
+    @Builder.Default
+    private String concurrency = "4";
+
+    @Schema(title = "Confidence Level", description = "Confidence level of the intervals reported in the aggregates")
+    @PluginProperty(dynamic = true)
+    @Builder.Default
+    private String confidenceLevel = "0.95";
+
+    @Schema(title = "Apify API Base URL", description = "Base URL of the Apify API, override it to go through a proxy or a mock server")
+    @PluginProperty(dynamic = true)
+    @Builder.Default
+    private String apifyBaseUrl = ApifyApiClient.DEFAULT_BASE_URL;
+
+    @Schema(title = "Twitter API Base URL", description = "Base URL of the Twitter API, override it to go through a proxy or a mock server")
+    @PluginProperty(dynamic = true)
+    @Builder.Default
+    private String twitterBaseUrl = TwitterApiClient.DEFAULT_BASE_URL;
+
+    @Schema(title = "Groq API Base URL", description = "Base URL of the Groq API, override it to go through a proxy or a mock server")
+    @PluginProperty(dynamic = true)
+    @Builder.Default
+    private String baseUrl = SentimentAnalysisApiClient.DEFAULT_BASE_URL;
+
+    @Override
+    public Output run(RunContext runContext) throws Exception {
+        Logger logger = runContext.logger();
+        // Prepare Object Mapper
+        ObjectMapper om = WorkerComponents.get().objectMapper();
+        // Prepare input parameters
+        long inputNumberOfPosts = Long.parseLong(runContext.render(numberOfPosts));
+        int inputPrefetchPages = Integer.parseInt(runContext.render(prefetchPages));
+        int inputBatchSize = Integer.parseInt(runContext.render(batchSize));
+        int inputConcurrency = Integer.parseInt(runContext.render(concurrency));
+        double inputConfidenceLevel = Double.parseDouble(runContext.render(confidenceLevel));
+        RecentPosts recentPosts = new RecentPosts(Integer.parseInt(runContext.render(dedupWindow)));
+        SentimentEngine sentimentEngine = sentimentEngine(runContext);
+        File tempFile = runContext.workingDir().createTempFile().toFile();
+
+        AtomicLong fetched = new AtomicLong();
+        AtomicLong duplicates = new AtomicLong();
+        SentimentAggregates.Accumulator accumulator = new SentimentAggregates.Accumulator();
+        try (JsonArrayWriter output = new JsonArrayWriter(new BufferedWriter(new FileWriter(tempFile)), om)) {
+            // Fetch: pages are requested on demand and at most prefetchPages ahead
+            pages(runContext, om, inputNumberOfPosts)
+                .subscribeOn(Schedulers.boundedElastic())
+                .publishOn(Schedulers.boundedElastic(), inputPrefetchPages)
+                .concatMapIterable(page -> page)
+                .take(inputNumberOfPosts, true)
+                .doOnNext(post -> fetched.incrementAndGet())
+                // Normalize and deduplicate
+                .mapNotNull(post -> normalize(PostRecord.of(post).getText()))
+                .filter(text -> {
+                    if (recentPosts.add(text)) {
+                        return true;
+                    }
+                    duplicates.incrementAndGet();
+                    return false;
+                })
+                // Analyze: up to concurrency batches in flight, results kept in order
+                .buffer(inputBatchSize)
+                .flatMapSequential(batch -> Mono.fromCallable(() -> analyze(sentimentEngine, batch))
+                    .subscribeOn(Schedulers.boundedElastic()), inputConcurrency, 1)
+                // Write: results are streamed to the file as batches complete
+                .handle((analyzedPosts, sink) -> {
+                    try {
+                        for (AnalyzedPost analyzedPost : analyzedPosts) {
+                            accumulator.add(analyzedPost.result());
+                            output.write(analyzedPost);
+                        }
+                        sink.next(analyzedPosts.size());
+                    } catch (IOException e) {
+                        sink.error(e);
+                    }
+                })
+                .blockLast();
+        } catch (RuntimeException e) {
+            // Reactor wraps checked exceptions, surface the original ones
+            Throwable cause = Exceptions.unwrap(e);
+            if (cause instanceof Exception exception) {
+                throw exception;
+            }
+            throw e;
+        }
+
+        URI tempFileURI = runContext.storage().putFile(tempFile);
+
+        logger.debug("fetched {} posts, {} duplicates, tempFileURI: {}", fetched.get(), duplicates.get(),
+            tempFileURI);
+
+        return Output.builder()
+            .uri(tempFileURI)
+            .fetched(fetched.get())
+            .duplicates(duplicates.get())
+            .aggregates(accumulator.build(null, inputConfidenceLevel))
+            .build();
+    }
+
+    private Flux<List<JsonNode>> pages(RunContext runContext, ObjectMapper om, long maxPosts) throws Exception {
+        int inputPageSize = Integer.parseInt(runContext.render(pageSize));
+        String inputHashtag = runContext.render(hashtag).replaceFirst("^#", "");
+
+        if (source == Source.TWITTER) {
+            if (access_token == null) {
+                throw new IllegalArgumentException("Invalid access_token, required by the TWITTER source");
+            }
+            TwitterApiClient twitterApiClient = new TwitterApiClient(runContext.render(access_token),
+                runContext.render(twitterBaseUrl));
+
+            return Flux.<List<JsonNode>, Cursor>generate(Cursor::new, (cursor, sink) -> {
+                try {
+                    TwitterApiClient.SearchPage page = twitterApiClient.searchRecent("#" + inputHashtag,
+                        (int) Math.min(inputPageSize, maxPosts - cursor.fetched), cursor.nextToken);
+                    cursor.fetched += page.tweets().size();
+                    cursor.nextToken = page.nextToken();
+
+                    if (!page.tweets().isEmpty()) {
+                        sink.next(page.tweets());
+                    }
+                    if (page.tweets().isEmpty() || cursor.nextToken == null || cursor.fetched >= maxPosts) {
+                        sink.complete();
+                    }
+                } catch (Exception e) {
+                    sink.error(e);
+                }
+                return cursor;
+            });
+        }
+
+        List<String> inputTokens = new ArrayList<>();
+        if (token != null) {
+            inputTokens.add(runContext.render(token));
+        }
+        if (tokens != null) {
+            inputTokens.addAll(runContext.render(tokens));
+        }
+        if (inputTokens.isEmpty()) {
+            throw new IllegalArgumentException("Invalid token, either token or tokens is required by the INSTAGRAM source");
+        }
+        String inputApifyBaseUrl = runContext.render(apifyBaseUrl);
+        ApifyApiClient apifyApiClient = new ApifyApiClient(
+            CredentialPool.shared("apify:" + inputApifyBaseUrl, inputTokens), inputApifyBaseUrl);
+        int inputMemory = Integer.parseInt(runContext.render(memory));
+        Map<String, Object> actorInput = Map.of(
+            "hashtags", List.of(inputHashtag),
+            "resultsLimit", maxPosts);
+
+        return Mono.fromCallable(() -> {
+                ApifyApiClient.ActorRun run = apifyApiClient.startRun(ApifyApiClient.INSTAGRAM_HASHTAG_SCRAPER,
+                    actorInput, maxPosts, inputMemory);
+                runContext.logger().info("Started Apify run {}", run.getId());
+                return apifyApiClient.waitForRun(run, waitTimeout);
+            })
+            .flatMapMany(run -> Flux.<List<JsonNode>, Cursor>generate(Cursor::new, (cursor, sink) -> {
+                long limit = Math.min(inputPageSize, maxPosts - cursor.fetched);
+                try {
+                    List<JsonNode> items = om.readValue(
+                        apifyApiClient.fetchDatasetItems(run, cursor.fetched, limit).get(), ITEMS);
+                    cursor.fetched += items.size();
+
+                    if (!items.isEmpty()) {
+                        sink.next(items);
+                    }
+                    // A short page means the end of the dataset was reached
+                    if (items.size() < limit || cursor.fetched >= maxPosts) {
+                        sink.complete();
+                    }
+                } catch (ExecutionException e) {
+                    sink.error(e.getCause() instanceof UncheckedIOException uncheckedIOException
+                        ? uncheckedIOException.getCause()
+                        : e.getCause());
+                } catch (Exception e) {
+                    sink.error(e);
+                }
+                return cursor;
+            }));
+    }
+
+    private SentimentEngine sentimentEngine(RunContext runContext) throws Exception {
+        if (engine == SentimentAnalysis.Engine.LOCAL) {
+            return new LexiconSentimentEngine();
+        }
+
+        List<String> inputApiKeys = new ArrayList<>();
+        if (api_key != null) {
+            inputApiKeys.add(runContext.render(api_key));
+        }
+        if (api_keys != null) {
+            inputApiKeys.addAll(runContext.render(api_keys));
+        }
+        if (inputApiKeys.isEmpty()) {
+            throw new IllegalArgumentException("Invalid api_key, either api_key or api_keys is required by the "
+                + engine + " engine");
+        }
+
+        SentimentEngine modelEngine = SentimentEngines.model(inputApiKeys, runContext.render(baseUrl), null, true,
+            null);
+        if (engine == SentimentAnalysis.Engine.CASCADE) {
+            return new CascadeSentimentEngine(new LexiconSentimentEngine(), modelEngine,
+                Double.parseDouble(runContext.render(confidenceThreshold)));
+        }
+        return modelEngine;
+    }
+
+    private static List<AnalyzedPost> analyze(SentimentEngine sentimentEngine, List<String> batch)
+        throws IOException, InterruptedException {
+        List<SentimentAnalysisApiClient.SentimentResult> sentimentResults = SentimentEngines.requireOnePerPost(batch,
+                sentimentEngine.analyzeSentiment(batch));
+
+        // Results are matched to posts by position
+        List<AnalyzedPost> analyzedPosts = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            analyzedPosts.add(new AnalyzedPost(batch.get(i), sentimentResults.get(i)));
+        }
+        return analyzedPosts;
+    }
+
+    private static String normalize(String text) {
+        if (text == null) {
+            return null;
+        }
+        String normalized = WHITESPACES.matcher(text).replaceAll(" ").trim();
+        return normalized.isEmpty() ? null : normalized;
+    }
+
+    private static class Cursor {
+        private long fetched;
+        private String nextToken;
+    }
+
+    // Bounded set of the hashes of the last distinct posts, retweets hash like
+    // the tweet they quote
+    private static class RecentPosts {
+        private final Map<Long, Boolean> hashes;
+
+        private RecentPosts(int capacity) {
+            this.hashes = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        private boolean add(String text) {
+            String key = RETWEET_PREFIX.matcher(text.toLowerCase(Locale.ROOT)).replaceFirst("");
+
+            // 64-bit FNV-1a, collisions are negligible at this window size
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < key.length(); i++) {
+                hash ^= key.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            return hashes.put(hash, Boolean.TRUE) == null;
+        }
+    }
+
+    public record AnalyzedPost(String text, @JsonUnwrapped SentimentAnalysisApiClient.SentimentResult result) {
+    }
+
+    public enum Source {
+        TWITTER,
+        INSTAGRAM
+    }
+
+    @Builder
+    @Getter
+    public static class Output implements io.kestra.core.models.tasks.Output {
+        @Schema(title = "URI of a temporary file containing the analyzed posts, with their text and sentiment")
+        private URI uri;
+
+        @Schema(title = "Number of posts fetched")
+        private Long fetched;
+
+        @Schema(title = "Number of duplicate posts and retweets dropped")
+        private Long duplicates;
+
+        @Schema(title = "Sentiment distribution and mean score of the analyzed posts, with confidence intervals")
+        private SentimentAggregates aggregates;
+    }
+}
@@ -0,0 +1,132 @@
+package io.kestra.plugin.sampling;
+
+import io.kestra.core.models.annotations.Plugin;
+import io.kestra.core.models.annotations.PluginProperty;
+import io.kestra.core.models.tasks.RunnableTask;
+import io.kestra.core.models.tasks.Task;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.serializers.FileSerde;
+import io.kestra.service.JsonArrayWriter;
+import io.kestra.service.PostRecord;
+import io.kestra.service.StratifiedReservoirSampler;
+import io.kestra.service.StratifyBy;
+import io.kestra.service.WorkerComponents;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+
+@SuperBuilder
+@ToString
+@EqualsAndHashCode
+@Getter
+@NoArgsConstructor
+@Schema(title = "Sample posts", description = "Keep a fixed-size random sample of one or more posts files in a single pass with bounded memory, to cap the cost of analyzing viral hashtags")
+@Plugin(examples = {@io.kestra.core.models.annotations.Example(title = "Sample 500 posts, stratified by source", code = {
+    "posts:",
+    "  - \"{{ outputs['fetch-tweets'].uri }}\"",
+    "  - \"{{ outputs['fetch-posts'].uri }}\"",
+    "sampleSize: 500",
+    "stratifyBy: SOURCE"})})
+public class SamplePosts extends Task implements RunnableTask<SamplePosts.Output> {
+    @NonNull
+    @Schema(title = "Posts Files", description = "Files containing a list of posts to sample from")
+    @PluginProperty(dynamic = true)
+    private List<String> posts;
+
+    @Schema(title = "Sample Size", description = "Maximum number of posts to keep")
+    @PluginProperty(dynamic = true)
+    @Builder.Default
+    private String sampleSize = "1000";
+
+    @Schema(title = "Stratify By", description = "Keep the share of each source, language or hour of the input in the sample. Posts without the information are grouped under 'unknown', the source of a plain post is the file it comes from and its language is detected from its text.")
+    @PluginProperty
+    @Builder.Default
+    private StratifyBy stratifyBy = StratifyBy.NONE;
+
+    @Schema(title = "Seed", description = "Seed of the random generator, to get a reproducible sample")
+    @PluginProperty(dynamic = true)
+    private String seed;
+
+    @Override
+    public Output run(RunContext runContext) throws Exception {
+        Logger logger = runContext.logger();
+        // Prepare Object Mapper
+        ObjectMapper om = WorkerComponents.get().objectMapper();
+        // Prepare input parameters
+        List<String> inputPosts = runContext.render(posts);
+        int inputSampleSize = Integer.parseInt(runContext.render(sampleSize));
+        Long inputSeed = seed == null ? null : Long.parseLong(runContext.render(seed));
+        File tempFile = runContext.workingDir().createTempFile().toFile();
+
+        StratifiedReservoirSampler<JsonNode> sampler = new StratifiedReservoirSampler<>(inputSampleSize,
+            StratifiedReservoirSampler.DEFAULT_MAX_STRATA, inputSeed);
+
+        for (String inputPost : inputPosts) {
+            URI inputUri = new URI(inputPost);
+            try (
+                Reader reader = new BufferedReader(
+                    new InputStreamReader(runContext.storage().getFile(inputUri), StandardCharsets.UTF_8),
+                    FileSerde.BUFFER_SIZE);
+                MappingIterator<JsonNode> iterator = om.readerFor(JsonNode.class).readValues(reader)
+            ) {
+                while (iterator.hasNextValue()) {
+                    JsonNode node = iterator.nextValue();
+                    PostRecord post = PostRecord.of(node);
+                    if (post.getSource() == null) {
+                        post.setSource(inputPost);
+                    }
+                    sampler.offer(stratifyBy.stratum(post), node);
+                }
+            }
+        }
+
+        List<JsonNode> sample = sampler.sample();
+        logger.debug("sampled {} posts out of {}", sample.size(), sampler.populationSize());
+
+        try (JsonArrayWriter output = new JsonArrayWriter(new BufferedWriter(new FileWriter(tempFile)), om)) {
+            for (JsonNode node : sample) {
+                output.write(node);
+            }
+        }
+        logger.debug("tempFile: {}", tempFile);
+
+        URI tempFileURI = runContext.storage().putFile(tempFile);
+
+        logger.debug("tempFileURI: {}", tempFileURI);
+
+        return Output.builder()
+            .uri(tempFileURI)
+            .sampleSize((long) sample.size())
+            .populationSize(sampler.populationSize())
+            .strata(sampler.strata())
+            .build();
+    }
+
+    @Builder
+    @Getter
+    public static class Output implements io.kestra.core.models.tasks.Output {
+        @Schema(title = "URI of a temporary file containing the sampled posts")
+        private URI uri;
+
+        @Schema(title = "Number of posts in the sample")
+        private Long sampleSize;
+
+        @Schema(title = "Number of posts read from the input files", description = "Pass it to the populationSize of SentimentAnalysis to narrow its confidence intervals")
+        private Long populationSize;
+
+        @Schema(title = "Number of posts read by stratum")
+        private Map<String, Long> strata;
+    }
+}
@@ -1,24 +1,42 @@
 package io.kestra.plugin.sentiment_analysis;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import io.kestra.core.models.annotations.Plugin;
 import io.kestra.core.models.annotations.PluginProperty;
 import io.kestra.core.models.tasks.RunnableTask;
 import io.kestra.core.models.tasks.Task;
 import io.kestra.core.runners.RunContext;
 import io.kestra.core.serializers.FileSerde;
+import io.kestra.service.BatchCheckpoint;
+import io.kestra.service.CascadeSentimentEngine;
+import io.kestra.service.JsonArrayWriter;
+import io.kestra.service.LanguageDetector;
+import io.kestra.service.LanguageRoutingSentimentEngine;
+import io.kestra.service.LexiconSentimentEngine;
+import io.kestra.service.PostRecord;
+import io.kestra.service.SentimentAggregates;
 import io.kestra.service.SentimentAnalysisApiClient;
+import io.kestra.service.SentimentEngine;
+import io.kestra.service.SentimentEngines;
+import io.kestra.service.StratifiedReservoirSampler;
+import io.kestra.service.StratifyBy;
+import io.kestra.service.WorkerComponents;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.*;
 import lombok.experimental.SuperBuilder;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.DeserializationFeature;
 
 import java.io.File;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 import java.io.*;
 
@@ -31,54 +49,354 @@ import org.slf4j.Logger;
 @NoArgsConstructor
 @Schema(title = "Perform Sentiment Analysis", description = "Use this plugin to Perform a Sentiment Analysis on an array of strings containing various posts")
 @Plugin(examples = {@io.kestra.core.models.annotations.Example(title = "Fetch Instagram Posts", code = {
-    "posts: [\"post1\", \"post2\", \"post3\"]",})})
+    "posts: [\"post1\", \"post2\", \"post3\"]",}),
+    @io.kestra.core.models.annotations.Example(title = "Analyze a stratified sample of a viral hashtag", code = {
+        "posts: \"{{ outputs['fetch-tweets'].uri }}\"",
+        "api_key: gsk_*******************",
+        "sampleSize: 500",
+        "stratifyBy: HOUR"}),
+    @io.kestra.core.models.annotations.Example(title = "Only send the posts the local scorer is unsure about to the model", code = {
+        "posts: \"{{ outputs['fetch-tweets'].uri }}\"",
+        "api_key: gsk_*******************",
+        "engine: CASCADE",
+        "confidenceThreshold: \"0.6\""}),
+    @io.kestra.core.models.annotations.Example(title = "Batch posts by language, with a cascade for English posts and another model for Polish ones", code = {
+        "posts: \"{{ outputs['fetch-tweets'].uri }}\"",
+        "api_key: gsk_*******************",
+        "groupByLanguage: true",
+        "languageEngines:",
+        "  en: CASCADE",
+        "languageModels:",
+        "  pl: llama-3.1-70b-versatile"})})
 public class SentimentAnalysis extends Task implements RunnableTask<SentimentAnalysis.Output> {
+    private static final String CHECKPOINT_NAME = "sentiment_analysis";
+    // Posts are grouped by language within windows of this many batches
+    private static final int LANGUAGE_WINDOW_BATCHES = 10;
 
     @NonNull
     @Schema(title = "Posts File", description = "A file containing a list of posts for which analysis will be performed")
     @PluginProperty(dynamic = true)
     private String posts;
 
-    @NonNull
-    @Schema(title = "Groq API Key", description = "API Key from https://console.groq.com/keys", requiredMode = Schema.RequiredMode.REQUIRED)
+    @Schema(title = "Groq API Key", description = "API Key from https://console.groq.com/keys, required unless the engine is LOCAL or api_keys is set")
     @PluginProperty(dynamic = true)
     private String api_key;
 
+    @Schema(title = "Groq API Keys", description = "Several API keys, each request is sent with the key rate limited the longest time ago, and sent again with another one when it's answered with a 429")
+    @PluginProperty(dynamic = true)
+    private List<String> api_keys;
+
+    @Schema(title = "Engine", description = "LLM sends every post to the model. LOCAL scores every post in the worker with a word lexicon. CASCADE scores every post locally and only sends the posts scored with a confidence below confidenceThreshold to the model.")
+    @PluginProperty
+    @Builder.Default
+    private Engine engine = Engine.LLM;
+
+    @Schema(title = "Confidence Threshold", description = "With the CASCADE engine, posts scored locally with a confidence below this, between 0 and 1, are sent to the model. A single sentiment word gives a confidence of 0.5, three agreeing words 0.75.")
+    @PluginProperty(dynamic = true)
+    @Builder.Default
+    private String confidenceThreshold = "0.6";
+
+    @Schema(title = "Sample Size", description = "Only analyze a uniform random sample of this many posts, read in a single pass with bounded memory. Aggregates are extrapolated to all posts.")
+    @PluginProperty(dynamic = true)
+    private String sampleSize;
+
+    @Schema(title = "Stratify By", description = "Keep the share of each source, language or hour of the input in the sample, only used with sampleSize")
+    @PluginProperty
+    @Builder.Default
+    private StratifyBy stratifyBy = StratifyBy.NONE;
+
+    @Schema(title = "Population Size", description = "Number of posts the input was sampled from, e.g. the populationSize output of SamplePosts. When the task samples itself, the number of posts read is used.")
+    @PluginProperty(dynamic = true)
+    private String populationSize;
+
+    @Schema(title = "Confidence Level", description = "Confidence level of the intervals reported in the aggregates")
+    @PluginProperty(dynamic = true)
+    @Builder.Default
+    private String confidenceLevel = "0.95";
+
+    @Schema(title = "API Base URL", description = "Base URL of the Groq API, override it to go through a proxy or a mock server")
+    @PluginProperty(dynamic = true)
+    @Builder.Default
+    private String baseUrl = SentimentAnalysisApiClient.DEFAULT_BASE_URL;
+
+    @Schema(title = "Hedging Percentile", description = "When set, a request to Groq still pending after this percentile of the recent latencies (e.g. 95) is sent a second time and the first answer wins. At most 10% of the requests are duplicated.")
+    @PluginProperty(dynamic = true)
+    private String hedgingPercentile;
+
+    @Schema(title = "Circuit Breaker", description = "Fail fast, or use the fallback, once half of the recent calls to Groq from this worker failed. Calls are retried after 30 seconds.")
+    @PluginProperty
+    @Builder.Default
+    private Boolean circuitBreaker = true;
+
+    @Schema(title = "Fallback", description = "Engine answering while the circuit breaker is open. LOCAL scores posts in the worker with a word lexicon, less accurate than the model.")
+    @PluginProperty
+    @Builder.Default
+    private Fallback fallback = Fallback.NONE;
+
+    @Schema(title = "Batch Size", description = "Number of posts sent to the model per request")
+    @PluginProperty(dynamic = true)
+    @Builder.Default
+    private String batchSize = "50";
+
+    @Schema(title = "Model", description = "Groq model the posts are sent to")
+    @PluginProperty(dynamic = true)
+    @Builder.Default
+    private String model = SentimentAnalysisApiClient.DEFAULT_MODEL;
+
+    @Schema(title = "Group By Language", description = "Detect the language of each post in the worker and only batch posts of the same language together, within windows of 10 batches. Each language can be given its own engine and model, posts whose language isn't detected are grouped under 'unknown'.")
+    @PluginProperty
+    @Builder.Default
+    private Boolean groupByLanguage = false;
+
+    @Schema(title = "Language Engines", description = "Engine of each language code (en, es, fr, it, pl, de, pt or unknown) when grouping by language, e.g. LOCAL or CASCADE for languages the lexicon handles. Other languages use engine.")
+    @PluginProperty
+    private Map<String, Engine> languageEngines;
+
+    @Schema(title = "Language Models", description = "Groq model of each language code when grouping by language. Other languages use model.")
+    @PluginProperty(dynamic = true)
+    private Map<String, String> languageModels;
+
+    @Schema(title = "Checkpoint", description = "Record completed batches in the namespace KV store, so that a retry of the task resumes after the last completed batch instead of analyzing every post again. The checkpoint is removed once the task succeeds. Each batch then costs a write to the KV store and to the internal storage, worth it for long runs with many batches rather than for short ones.")
+    @PluginProperty
+    @Builder.Default
+    private Boolean checkpoint = false;
+
     @Override
     public Output run(RunContext runContext) throws Exception {
         Logger logger = runContext.logger();
         // Prepare Object Mapper
-        ObjectMapper om = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        ObjectMapper om = WorkerComponents.get().objectMapper();
         // Prepare input parameters
         URI inputPosts = new URI(runContext.render(posts));
-        String inputApiKey = runContext.render(api_key);
+        List<String> inputApiKeys = new ArrayList<>();
+        if (api_key != null) {
+            inputApiKeys.add(runContext.render(api_key));
+        }
+        if (api_keys != null) {
+            inputApiKeys.addAll(runContext.render(api_keys));
+        }
+        for (Engine usedEngine : usedEngines()) {
+            if (usedEngine != Engine.LOCAL && inputApiKeys.isEmpty()) {
+                throw new IllegalArgumentException("Invalid api_key, either api_key or api_keys is required by the "
+                    + usedEngine + " engine");
+            }
+        }
+        Long inputPopulationSize = populationSize == null ? null : Long.parseLong(runContext.render(populationSize));
+        double inputConfidenceLevel = Double.parseDouble(runContext.render(confidenceLevel));
+        int inputBatchSize = Integer.parseInt(runContext.render(batchSize));
         File tempFile = runContext.workingDir().createTempFile().toFile();
 
+        // Resume from the batches committed by a previous attempt, if any
+        BatchCheckpoint batchCheckpoint = checkpoint
+            ? BatchCheckpoint.of(runContext, CHECKPOINT_NAME).orElse(null)
+            : null;
+        BatchCheckpoint.State state = batchCheckpoint == null ? null
+            : batchCheckpoint.load(inputPosts.toString(), inputBatchSize);
+
+        List<String> postList;
+        if (state != null && state.getPosts() != null) {
+            // The sample of the previous attempt, sampling again would draw other posts
+            try (Reader reader = reader(runContext, new URI(state.getPosts()))) {
+                postList = readPosts(om, reader);
+            }
+            inputPopulationSize = state.getPopulationSize();
+        } else if (sampleSize == null) {
+            try (Reader reader = reader(runContext, inputPosts)) {
+                postList = readPosts(om, reader);
+            }
+        } else {
+            StratifiedReservoirSampler<String> sampler;
+            try (Reader reader = reader(runContext, inputPosts)) {
+                sampler = samplePosts(om, reader, inputPosts.toString(),
+                    Integer.parseInt(runContext.render(sampleSize)));
+            }
+            postList = sampler.sample();
+            if (inputPopulationSize == null) {
+                inputPopulationSize = sampler.populationSize();
+            }
+            logger.debug("sampled {} posts out of {}", postList.size(), sampler.populationSize());
+
+            if (state != null) {
+                state.setPosts(write(runContext, om, postList).toString());
+                state.setPopulationSize(inputPopulationSize);
+                batchCheckpoint.save(state);
+            }
+        }
+
+        SentimentAggregates.Accumulator accumulator = new SentimentAggregates.Accumulator();
+        try (JsonArrayWriter output = new JsonArrayWriter(new BufferedWriter(new FileWriter(tempFile)), om)) {
+            int next = 0;
+            if (state != null && state.next() > 0) {
+                logger.info("Resuming from checkpoint, {} of {} posts already analyzed", state.next(),
+                    postList.size());
+                for (BatchCheckpoint.Batch batch : state.getBatches()) {
+                    copyResults(runContext, om, new URI(batch.getUri()), output, accumulator);
+                }
+                next = state.next();
+            }
+
+            SentimentEngine sentimentEngine = sentimentEngine(runContext, inputApiKeys, inputBatchSize);
+            // Grouping by language needs more posts than a batch to fill batches of a language
+            int rangeSize = groupByLanguage ? inputBatchSize * LANGUAGE_WINDOW_BATCHES : inputBatchSize;
+            for (int from = next; from < postList.size(); from += rangeSize) {
+                int to = Math.min(from + rangeSize, postList.size());
+                // Results are matched to posts by position downstream
+                List<String> batch = postList.subList(from, to);
+                List<SentimentAnalysisApiClient.SentimentResult> sentimentResults = SentimentEngines
+                    .requireOnePerPost(batch, sentimentEngine.analyzeSentiment(batch));
+
+                logger.debug("sentimentResults: {}", sentimentResults);
+
+                for (SentimentAnalysisApiClient.SentimentResult sentimentResult : sentimentResults) {
+                    accumulator.add(sentimentResult);
+                    output.write(sentimentResult);
+                }
+
+                if (state != null) {
+                    batchCheckpoint.commit(state, from, to, write(runContext, om, sentimentResults).toString());
+                }
+            }
+
+            if (sentimentEngine instanceof LanguageRoutingSentimentEngine languageRoutingSentimentEngine) {
+                logger.info("Posts analyzed by language: {}", languageRoutingSentimentEngine.counts());
+            }
+        }
+        logger.debug("tempFile: {}", tempFile);
+
+        URI tempFileURI = runContext.storage().putFile(tempFile);
+
+        logger.debug("tempFileURI: {}", tempFileURI);
+
+        if (batchCheckpoint != null) {
+            batchCheckpoint.clear(state);
+        }
+
+        return Output.builder()
+            .uri(tempFileURI)
+            .aggregates(accumulator.build(inputPopulationSize, inputConfidenceLevel))
+            .build();
+    }
+
+    private static Reader reader(RunContext runContext, URI uri) throws IOException {
+        return new BufferedReader(
+            new InputStreamReader(runContext.storage().getFile(uri), StandardCharsets.UTF_8),
+            FileSerde.BUFFER_SIZE);
+    }
+
+    private static URI write(RunContext runContext, ObjectMapper om, List<?> values) throws IOException {
+        File file = runContext.workingDir().createTempFile().toFile();
+        try (Writer output = new BufferedWriter(new FileWriter(file))) {
+            om.writeValue(output, values);
+        }
+        return runContext.storage().putFile(file);
+    }
+
+    private static void copyResults(RunContext runContext, ObjectMapper om, URI uri, JsonArrayWriter output,
+                                    SentimentAggregates.Accumulator accumulator) throws IOException {
         try (
-            Reader reader = new BufferedReader(
-                new InputStreamReader(runContext.storage().getFile(inputPosts), StandardCharsets.UTF_8),
-                FileSerde.BUFFER_SIZE);
-            Writer output = new BufferedWriter(new FileWriter(tempFile))
+            Reader reader = reader(runContext, uri);
+            MappingIterator<SentimentAnalysisApiClient.SentimentResult> iterator = om
+                .readerFor(SentimentAnalysisApiClient.SentimentResult.class).readValues(reader)
         ) {
-            List<String> postList = om.readValue(reader, new TypeReference<>() {
-            });
-            SentimentAnalysisApiClient sentimentAnalysisApiClient = new SentimentAnalysisApiClient(
-                inputApiKey);
-            List<SentimentAnalysisApiClient.SentimentResult> sentimentResults = sentimentAnalysisApiClient
-                .analyzeSentiment(postList);
+            while (iterator.hasNextValue()) {
+                SentimentAnalysisApiClient.SentimentResult sentimentResult = iterator.nextValue();
+                accumulator.add(sentimentResult);
+                output.write(sentimentResult);
+            }
+        }
+    }
+
+    private List<Engine> usedEngines() {
+        List<Engine> usedEngines = new ArrayList<>();
+        usedEngines.add(engine);
+        if (groupByLanguage && languageEngines != null) {
+            usedEngines.addAll(languageEngines.values());
+        }
+        return usedEngines;
+    }
 
-            logger.debug("sentimentResults: {}", sentimentResults);
+    private SentimentEngine sentimentEngine(RunContext runContext, List<String> inputApiKeys, int inputBatchSize)
+        throws Exception {
+        String inputModel = runContext.render(model);
+        SentimentEngine defaultEngine = sentimentEngine(runContext, inputApiKeys, engine, inputModel);
+        if (!groupByLanguage) {
+            return defaultEngine;
+        }
 
-            output.write(om.writeValueAsString(sentimentResults));
-            output.flush();
-            logger.debug("tempFile: {}", tempFile);
+        // An engine for each language given its own engine or model
+        Map<String, String> inputLanguageModels = languageModels == null ? Map.of()
+            : runContext.renderMap(languageModels);
+        Map<String, Engine> inputLanguageEngines = languageEngines == null ? Map.of() : languageEngines;
+        Set<String> languages = new TreeSet<>(inputLanguageModels.keySet());
+        languages.addAll(inputLanguageEngines.keySet());
 
-            URI tempFileURI = runContext.storage().putFile(tempFile);
+        Map<String, SentimentEngine> engines = new HashMap<>();
+        for (String language : languages) {
+            engines.put(language, sentimentEngine(runContext, inputApiKeys,
+                inputLanguageEngines.getOrDefault(language, engine),
+                inputLanguageModels.getOrDefault(language, inputModel)));
+        }
+        return new LanguageRoutingSentimentEngine(LanguageDetector.get(), engines, defaultEngine, inputBatchSize);
+    }
 
-            logger.debug("tempFileURI: {}", tempFileURI);
+    private SentimentEngine sentimentEngine(RunContext runContext, List<String> inputApiKeys, Engine inputEngine,
+                                            String inputModel) throws Exception {
+        if (inputEngine == Engine.LOCAL) {
+            return new LexiconSentimentEngine();
+        }
 
-            return Output.builder().uri(tempFileURI).build();
+        SentimentEngine modelEngine = modelEngine(runContext, inputApiKeys, inputModel);
+        if (inputEngine == Engine.CASCADE) {
+            return new CascadeSentimentEngine(new LexiconSentimentEngine(), modelEngine,
+                Double.parseDouble(runContext.render(confidenceThreshold)));
         }
+        return modelEngine;
+    }
+
+    private SentimentEngine modelEngine(RunContext runContext, List<String> inputApiKeys, String inputModel)
+        throws Exception {
+        Double inputHedgingPercentile = hedgingPercentile == null ? null
+            : Double.parseDouble(runContext.render(hedgingPercentile));
+
+        return SentimentEngines.model(inputApiKeys, runContext.render(baseUrl), inputModel, inputHedgingPercentile,
+            circuitBreaker, fallback == Fallback.LOCAL ? new LexiconSentimentEngine() : null);
+    }
+
+    private static List<String> readPosts(ObjectMapper om, Reader reader) throws IOException {
+        List<String> postList = new ArrayList<>();
+        try (MappingIterator<JsonNode> iterator = om.readerFor(JsonNode.class).readValues(reader)) {
+            while (iterator.hasNextValue()) {
+                postList.add(PostRecord.of(iterator.nextValue()).getText());
+            }
+        }
+        return postList;
+    }
+
+    private StratifiedReservoirSampler<String> samplePosts(ObjectMapper om, Reader reader, String source,
+                                                           int inputSampleSize) throws IOException {
+        StratifiedReservoirSampler<String> sampler = new StratifiedReservoirSampler<>(inputSampleSize,
+            StratifiedReservoirSampler.DEFAULT_MAX_STRATA, null);
+        try (MappingIterator<JsonNode> iterator = om.readerFor(JsonNode.class).readValues(reader)) {
+            while (iterator.hasNextValue()) {
+                PostRecord post = PostRecord.of(iterator.nextValue());
+                if (post.getSource() == null) {
+                    post.setSource(source);
+                }
+                sampler.offer(stratifyBy.stratum(post), post.getText());
+            }
+        }
+        return sampler;
+    }
+
+    public enum Engine {
+        LLM,
+        LOCAL,
+        CASCADE
+    }
+
+    public enum Fallback {
+        NONE,
+        LOCAL
     }
 
     @Builder
@@ -86,5 +404,8 @@ public class SentimentAnalysis extends Task implements RunnableTask<SentimentAna
     public static class Output implements io.kestra.core.models.tasks.Output {
         @Schema(title = "URI of a temporary file containing Sentiment Analysis result")
         private URI uri;
+
+        @Schema(title = "Sentiment distribution and mean score, with confidence intervals based on the number of analyzed posts")
+        private SentimentAggregates aggregates;
     }
 }
\ No newline at end of file
@@ -0,0 +1,169 @@
+package io.kestra.plugin.sharding;
+
+import io.kestra.core.models.annotations.Plugin;
+import io.kestra.core.models.annotations.PluginProperty;
+import io.kestra.core.models.tasks.RunnableTask;
+import io.kestra.core.models.tasks.Task;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.serializers.FileSerde;
+import io.kestra.service.JsonArrayWriter;
+import io.kestra.service.SentimentAggregates;
+import io.kestra.service.SentimentAnalysisApiClient;
+import io.kestra.service.WorkerComponents;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+
+@SuperBuilder
+@ToString
+@EqualsAndHashCode
+@Getter
+@NoArgsConstructor
+@Schema(title = "Merge sentiment analysis shards", description = "Stream the results of sharded SentimentAnalysis runs back into a single file, in the order of the shards, and compute the aggregates of all of them")
+@Plugin(examples = {@io.kestra.core.models.annotations.Example(title = "Merge the results of a ForEach over the shards of SplitPosts", code = {
+    "results: \"{{ outputs.analyze }}\"",
+    "shards: \"{{ outputs.split.uris }}\""})})
+public class MergeResults extends Task implements RunnableTask<MergeResults.Output> {
+    @NonNull
+    @Schema(title = "Results", description = "The sentiment analysis results to merge: a list of result file URIs, or the outputs of SentimentAnalysis in a ForEach, i.e. a map from shard URI to output. Can be a JSON string of either.")
+    @PluginProperty(dynamic = true)
+    private Object results;
+
+    @Schema(title = "Shards", description = "The shard URIs output by SplitPosts, used to order results given as a map. Can be a JSON string.")
+    @PluginProperty(dynamic = true)
+    private Object shards;
+
+    @Schema(title = "Population Size", description = "Number of posts the shards were sampled from, if they are a sample")
+    @PluginProperty(dynamic = true)
+    private String populationSize;
+
+    @Schema(title = "Confidence Level", description = "Confidence level of the intervals reported in the aggregates")
+    @PluginProperty(dynamic = true)
+    @Builder.Default
+    private String confidenceLevel = "0.95";
+
+    @Override
+    public Output run(RunContext runContext) throws Exception {
+        Logger logger = runContext.logger();
+        // Prepare Object Mapper
+        ObjectMapper om = WorkerComponents.get().objectMapper();
+        // Prepare input parameters
+        List<URI> inputResults = resultUris(om, runContext);
+        Long inputPopulationSize = populationSize == null ? null : Long.parseLong(runContext.render(populationSize));
+        double inputConfidenceLevel = Double.parseDouble(runContext.render(confidenceLevel));
+        File tempFile = runContext.workingDir().createTempFile().toFile();
+
+        SentimentAggregates.Accumulator accumulator = new SentimentAggregates.Accumulator();
+        try (JsonArrayWriter output = new JsonArrayWriter(new BufferedWriter(new FileWriter(tempFile)), om)) {
+            for (URI inputResult : inputResults) {
+                // Shards are accumulated apart then merged, like the partial
+                // aggregates of parallel runs
+                SentimentAggregates.Accumulator shardAccumulator = new SentimentAggregates.Accumulator();
+                try (
+                    Reader reader = new BufferedReader(
+                        new InputStreamReader(runContext.storage().getFile(inputResult), StandardCharsets.UTF_8),
+                        FileSerde.BUFFER_SIZE);
+                    MappingIterator<SentimentAnalysisApiClient.SentimentResult> iterator = om
+                        .readerFor(SentimentAnalysisApiClient.SentimentResult.class).readValues(reader)
+                ) {
+                    while (iterator.hasNextValue()) {
+                        SentimentAnalysisApiClient.SentimentResult result = iterator.nextValue();
+                        shardAccumulator.add(result);
+                        output.write(result);
+                    }
+                }
+                accumulator.merge(shardAccumulator);
+            }
+
+            logger.debug("merged {} results from {} shards", output.count(), inputResults.size());
+        }
+
+        URI tempFileURI = runContext.storage().putFile(tempFile);
+
+        logger.debug("tempFileURI: {}", tempFileURI);
+
+        return Output.builder()
+            .uri(tempFileURI)
+            .aggregates(accumulator.build(inputPopulationSize, inputConfidenceLevel))
+            .build();
+    }
+
+    private List<URI> resultUris(ObjectMapper om, RunContext runContext) throws Exception {
+        JsonNode inputResults = render(om, runContext, results);
+
+        List<URI> uris = new ArrayList<>();
+        if (inputResults.isArray()) {
+            for (JsonNode result : inputResults) {
+                uris.add(resultUri(result));
+            }
+            return uris;
+        }
+
+        if (!inputResults.isObject()) {
+            uris.add(resultUri(inputResults));
+            return uris;
+        }
+
+        // Outputs of a ForEach are keyed by value, i.e. by shard URI
+        if (shards == null) {
+            for (Iterator<JsonNode> iterator = inputResults.elements(); iterator.hasNext(); ) {
+                uris.add(resultUri(iterator.next()));
+            }
+            return uris;
+        }
+
+        for (JsonNode shard : render(om, runContext, shards)) {
+            JsonNode result = inputResults.get(shard.asText());
+            if (result == null) {
+                throw new IllegalArgumentException("No result for shard '" + shard.asText() + "'");
+            }
+            uris.add(resultUri(result));
+        }
+        return uris;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JsonNode render(ObjectMapper om, RunContext runContext, Object value) throws Exception {
+        if (value instanceof String string) {
+            String rendered = runContext.render(string).trim();
+            return rendered.startsWith("[") || rendered.startsWith("{")
+                ? om.readTree(rendered)
+                : om.getNodeFactory().textNode(rendered);
+        }
+        if (value instanceof List<?> list) {
+            return om.valueToTree(runContext.render((List<String>) list));
+        }
+        if (value instanceof Map<?, ?> map) {
+            return om.valueToTree(runContext.render((Map<String, Object>) map));
+        }
+        throw new IllegalArgumentException("Invalid value '" + value + "', must be a string, a list or a map");
+    }
+
+    private static URI resultUri(JsonNode result) {
+        return URI.create(result.isObject() ? result.get("uri").asText() : result.asText());
+    }
+
+    @Builder
+    @Getter
+    public static class Output implements io.kestra.core.models.tasks.Output {
+        @Schema(title = "URI of a temporary file containing the merged Sentiment Analysis results")
+        private URI uri;
+
+        @Schema(title = "Sentiment distribution and mean score of all the shards, with confidence intervals")
+        private SentimentAggregates aggregates;
+    }
+}
@@ -0,0 +1,204 @@
+package io.kestra.plugin.sharding;
+
+import io.kestra.core.models.annotations.Plugin;
+import io.kestra.core.models.annotations.PluginProperty;
+import io.kestra.core.models.tasks.RunnableTask;
+import io.kestra.core.models.tasks.Task;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.serializers.FileSerde;
+import io.kestra.service.JsonArrayWriter;
+import io.kestra.service.WorkerComponents;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+
+@SuperBuilder
+@ToString
+@EqualsAndHashCode
+@Getter
+@NoArgsConstructor
+@Schema(title = "Split posts into shards", description = "Stream a posts file into several smaller files, to analyze them in parallel with ForEach, ForEachItem or subflows. Shards are contiguous and keep the order of the posts, so that MergeResults can restore it.")
+@Plugin(examples = {@io.kestra.core.models.annotations.Example(title = "Analyze 500 posts per worker, then merge the results", full = true, code = {
+    "id: shardedSentiment",
+    "namespace: company.team",
+    "",
+    "tasks:",
+    "  - id: split",
+    "    type: io.kestra.plugin.sharding.SplitPosts",
+    "    posts: \"{{ outputs['fetch-tweets'].uri }}\"",
+    "    rows: \"500\"",
+    "",
+    "  - id: each",
+    "    type: io.kestra.plugin.core.flow.ForEach",
+    "    values: \"{{ outputs.split.uris }}\"",
+    "    concurrencyLimit: 0",
+    "    tasks:",
+    "      - id: analyze",
+    "        type: io.kestra.plugin.sentiment_analysis.SentimentAnalysis",
+    "        posts: \"{{ taskrun.value }}\"",
+    "        api_key: \"{{ secret('GROQ_API_KEY') }}\"",
+    "",
+    "  - id: merge",
+    "    type: io.kestra.plugin.sharding.MergeResults",
+    "    results: \"{{ outputs.analyze }}\"",
+    "    shards: \"{{ outputs.split.uris }}\""})})
+public class SplitPosts extends Task implements RunnableTask<SplitPosts.Output> {
+    @NonNull
+    @Schema(title = "Posts File", description = "A file containing a list of posts to split")
+    @PluginProperty(dynamic = true)
+    private String posts;
+
+    @Schema(title = "Rows", description = "Maximum number of posts per shard. Exactly one of rows, bytes or partitions must be set.")
+    @PluginProperty(dynamic = true)
+    private String rows;
+
+    @Schema(title = "Bytes", description = "Maximum size of a shard in bytes, a single post larger than this gets a shard of its own")
+    @PluginProperty(dynamic = true)
+    private String bytes;
+
+    @Schema(title = "Partitions", description = "Number of shards of equal size, the posts file is read twice to count them")
+    @PluginProperty(dynamic = true)
+    private String partitions;
+
+    @Override
+    public Output run(RunContext runContext) throws Exception {
+        Logger logger = runContext.logger();
+        // Prepare Object Mapper
+        ObjectMapper om = WorkerComponents.get().objectMapper();
+        // Prepare input parameters
+        URI inputPosts = new URI(runContext.render(posts));
+        if ((rows == null ? 0 : 1) + (bytes == null ? 0 : 1) + (partitions == null ? 0 : 1) != 1) {
+            throw new IllegalArgumentException("Exactly one of 'rows', 'bytes' or 'partitions' must be set");
+        }
+
+        long maxRows = Long.MAX_VALUE;
+        long maxBytes = Long.MAX_VALUE;
+        if (rows != null) {
+            maxRows = Long.parseLong(runContext.render(rows));
+        } else if (bytes != null) {
+            maxBytes = Long.parseLong(runContext.render(bytes));
+        } else {
+            long inputPartitions = Long.parseLong(runContext.render(partitions));
+            maxRows = Math.max(1, (count(runContext, om, inputPosts) + inputPartitions - 1) / inputPartitions);
+        }
+        if (maxRows <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("The size of a shard must be > 0");
+        }
+
+        List<URI> uris = new ArrayList<>();
+        long total = 0;
+        try (
+            Reader reader = new BufferedReader(
+                new InputStreamReader(runContext.storage().getFile(inputPosts), StandardCharsets.UTF_8),
+                FileSerde.BUFFER_SIZE);
+            MappingIterator<JsonNode> iterator = om.readerFor(JsonNode.class).readValues(reader)
+        ) {
+            Shard shard = null;
+            while (iterator.hasNextValue()) {
+                String post = om.writeValueAsString(iterator.nextValue());
+                long postBytes = utf8Length(post);
+
+                if (shard != null && (shard.rows >= maxRows || shard.bytes + postBytes > maxBytes)) {
+                    uris.add(shard.close(runContext));
+                    shard = null;
+                }
+                if (shard == null) {
+                    shard = new Shard(runContext.workingDir().createTempFile().toFile(), om);
+                }
+
+                shard.write(post, postBytes);
+                total++;
+            }
+
+            if (shard != null) {
+                uris.add(shard.close(runContext));
+            }
+        }
+
+        logger.debug("split {} posts into {} shards", total, uris.size());
+
+        return Output.builder()
+            .uris(uris)
+            .size(total)
+            .build();
+    }
+
+    private static long count(RunContext runContext, ObjectMapper om, URI inputPosts) throws IOException {
+        long count = 0;
+        try (JsonParser parser = om.getFactory().createParser(runContext.storage().getFile(inputPosts))) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Posts file must contain a JSON array");
+            }
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                parser.skipChildren();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static long utf8Length(String value) {
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static class Shard {
+        private final File file;
+        private final JsonArrayWriter writer;
+        private long rows;
+        private long bytes;
+
+        private Shard(File file, ObjectMapper om) throws IOException {
+            this.file = file;
+            this.writer = new JsonArrayWriter(new BufferedWriter(new FileWriter(file)), om);
+        }
+
+        private void write(String post, long postBytes) throws IOException {
+            writer.writeRaw(post);
+            rows++;
+            bytes += postBytes;
+        }
+
+        private URI close(RunContext runContext) throws IOException {
+            writer.close();
+            return runContext.storage().putFile(file);
+        }
+    }
+
+    @Builder
+    @Getter
+    public static class Output implements io.kestra.core.models.tasks.Output {
+        @Schema(title = "URIs of the shard files, in the order of the posts")
+        private List<URI> uris;
+
+        @Schema(title = "Number of posts split")
+        private Long size;
+    }
+}
@@ -0,0 +1,230 @@
+package io.kestra.plugin.trends;
+
+import io.kestra.core.models.annotations.Plugin;
+import io.kestra.core.models.annotations.PluginProperty;
+import io.kestra.core.models.tasks.RunnableTask;
+import io.kestra.core.models.tasks.Task;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.serializers.FileSerde;
+import io.kestra.service.HistoryStore;
+import io.kestra.service.KeyValueStoreService;
+import io.kestra.service.PostRecord;
+import io.kestra.service.TrendWindow;
+import io.kestra.service.WorkerComponents;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.slf4j.Logger;
+
+@SuperBuilder
+@ToString
+@EqualsAndHashCode
+@Getter
+@NoArgsConstructor
+@Schema(title = "Trending hashtags and mentions", description = "Count hashtags, mentions and pairs of hashtags posted together over a sliding window, and output the most posted ones. The window is kept in the namespace KV store between runs, so each run only counts the posts newer than the ones counted before. Posts without a time are counted as posted at the time of the run, and remembered by their text so that they are counted once while in the window. Hashtags and mentions are taken from the post metadata, e.g. GetPosts with includeMetadata, or else extracted from the text.")
+@Plugin(examples = {@io.kestra.core.models.annotations.Example(title = "Hourly trends of the last day", full = true, code = {
+    "id: trends",
+    "namespace: company.team",
+    "",
+    "tasks:",
+    "  - id: fetch",
+    "    type: io.kestra.plugin.instagram.GetPosts",
+    "    hashtag: blackfridaysale",
+    "    numberOfPosts: 1000",
+    "    includeMetadata: true",
+    "    token: \"{{ secret('APIFY_TOKEN') }}\"",
+    "",
+    "  - id: trends",
+    "    type: io.kestra.plugin.trends.TrendingTags",
+    "    posts: \"{{ outputs.fetch.uri }}\"",
+    "    stateKey: blackfridaysale",
+    "    window: P1D",
+    "    bucket: PT1H",
+    "",
+    "triggers:",
+    "  - id: hourly",
+    "    type: io.kestra.plugin.core.trigger.Schedule",
+    "    cron: \"0 * * * *\""})})
+public class TrendingTags extends Task implements RunnableTask<TrendingTags.Output> {
+    private static final String KEY_PREFIX = "trends_";
+    private static final Pattern TAG_PREFIX = Pattern.compile("^[#@]");
+
+    @NonNull
+    @Schema(title = "Posts File", description = "A file containing a list of posts")
+    @PluginProperty(dynamic = true)
+    private String posts;
+
+    @Schema(title = "State Key", description = "The name of the window in the namespace KV store, flows tracking different posts must use different keys")
+    @PluginProperty(dynamic = true)
+    @Builder.Default
+    private String stateKey = "default";
+
+    @Schema(title = "Window", description = "The length of the sliding window, posts older than the latest one by more than this are no longer counted")
+    @PluginProperty
+    @Builder.Default
+    private Duration window = Duration.ofDays(1);
+
+    @Schema(title = "Bucket", description = "The granularity of the window, it slides by buckets. Changing it or the window restarts the counts.")
+    @PluginProperty
+    @Builder.Default
+    private Duration bucket = Duration.ofHours(1);
+
+    @Schema(title = "Top K", description = "The number of hashtags, mentions and pairs to output")
+    @PluginProperty(dynamic = true)
+    @Builder.Default
+    private String topK = "10";
+
+    @Override
+    public Output run(RunContext runContext) throws Exception {
+        Logger logger = runContext.logger();
+        // Prepare Object Mapper
+        ObjectMapper om = WorkerComponents.get().objectMapper();
+        // Prepare input parameters
+        URI inputPosts = new URI(runContext.render(posts));
+        int inputTopK = Integer.parseInt(runContext.render(topK));
+        KeyValueStoreService kvService = new KeyValueStoreService(runContext);
+        String key = KEY_PREFIX + runContext.render(stateKey);
+
+        // Executions of this worker counting into the same window wait for
+        // each other, so that neither loses the posts of the other
+        return kvService.withLock(key, () -> {
+            TrendWindow trendWindow = load(kvService, key);
+            // Posts without a time are counted as posted now, once
+            long now = Instant.now().toEpochMilli();
+            long processed = 0;
+            long counted = 0;
+            try (
+                Reader reader = new BufferedReader(
+                    new InputStreamReader(runContext.storage().getFile(inputPosts), StandardCharsets.UTF_8),
+                    FileSerde.BUFFER_SIZE);
+                MappingIterator<JsonNode> iterator = om.readerFor(JsonNode.class).readValues(reader)
+            ) {
+                while (iterator.hasNextValue()) {
+                    PostRecord post = PostRecord.of(iterator.nextValue());
+                    processed++;
+                    List<String> hashtags = normalize(post.getHashtags() == null
+                        ? tags(post.getText(), '#')
+                        : post.getHashtags());
+                    List<String> mentions = normalize(post.getMentions() == null
+                        ? tags(post.getText(), '@')
+                        : post.getMentions());
+                    boolean added = post.getTimestamp() == null
+                        ? trendWindow.addUntimed(HistoryStore.postHash(post.getText()), now, hashtags, mentions)
+                        : trendWindow.add(post.getTimestamp().toEpochMilli(), hashtags, mentions);
+                    if (added) {
+                        counted++;
+                    }
+                }
+            }
+
+            save(kvService, key, trendWindow);
+
+            logger.debug("counted {} of {} posts, {} distinct tags", counted, processed, trendWindow.getTagCount());
+
+            return Output.builder()
+                .processed(processed)
+                .counted(counted)
+                .hashtags(trendWindow.topHashtags(inputTopK))
+                .mentions(trendWindow.topMentions(inputTopK))
+                .cooccurrences(trendWindow.topCooccurrences(inputTopK))
+                .build();
+        });
+    }
+
+    private TrendWindow load(KeyValueStoreService kvService, String key) throws Exception {
+        String value = kvService.getKeyValue(key);
+        if (value == null) {
+            return new TrendWindow(window, bucket);
+        }
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+            new InflaterInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(value)))))) {
+            return TrendWindow.read(input, window, bucket);
+        }
+    }
+
+    // Binary and deflated, the window holds a counter per tag and bucket
+    private static void save(KeyValueStoreService kvService, String key, TrendWindow trendWindow)
+        throws IOException, InterruptedException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(bytes)))) {
+            trendWindow.write(output);
+        }
+        kvService.addKeyValue(key, Base64.getEncoder().encodeToString(bytes.toByteArray()));
+    }
+
+    private static List<String> normalize(List<String> tags) {
+        List<String> normalized = new ArrayList<>(tags.size());
+        for (String tag : tags) {
+            normalized.add(TAG_PREFIX.matcher(tag).replaceFirst("").toLowerCase(Locale.ROOT));
+        }
+        return normalized;
+    }
+
+    // The words following a marker, e.g. the hashtags of a tweet
+    private static List<String> tags(String text, char marker) {
+        List<String> tags = new ArrayList<>();
+        if (text == null) {
+            return tags;
+        }
+
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            if (text.charAt(i) == marker && (i == 0 || !isWordChar(text.charAt(i - 1)))) {
+                int end = i + 1;
+                while (end < length && isWordChar(text.charAt(end))) {
+                    end++;
+                }
+                if (end > i + 1) {
+                    tags.add(text.substring(i + 1, end));
+                }
+                i = end;
+            } else {
+                i++;
+            }
+        }
+        return tags;
+    }
+
+    private static boolean isWordChar(char c) {
+        return c == '_' || Character.isLetterOrDigit(c);
+    }
+
+    @Builder
+    @Getter
+    public static class Output implements io.kestra.core.models.tasks.Output {
+        @Schema(title = "Number of posts read")
+        private long processed;
+
+        @Schema(title = "Number of posts counted, the others were counted by a previous run or are older than the window")
+        private long counted;
+
+        @Schema(title = "Most posted hashtags of the window, with their count in the window and in the latest bucket")
+        private List<TrendWindow.Trend> hashtags;
+
+        @Schema(title = "Most posted mentions of the window, with their count in the window and in the latest bucket")
+        private List<TrendWindow.Trend> mentions;
+
+        @Schema(title = "Pairs of hashtags most posted together in the window")
+        private List<TrendWindow.Cooccurrence> cooccurrences;
+    }
+}
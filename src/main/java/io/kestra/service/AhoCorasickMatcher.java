@@ -0,0 +1,325 @@
+package io.kestra.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aho-Corasick automaton matching a dictionary of brand keywords in a single
+ * pass over a text, whatever the size of the dictionary.
+ * <p>
+ * Transitions are kept in an open addressing table keyed by state and
+ * character, and states in flat arrays, so matching allocates nothing. An
+ * instance is immutable once compiled and can be shared between threads, each
+ * thread bringing its own {@link Scratch}.
+ */
+public final class AhoCorasickMatcher {
+    private static final long EMPTY = -1L;
+
+    private final String[] brands;
+    private final boolean caseSensitive;
+    private final boolean wholeWords;
+
+    // Transition table: key = state << 16 | char, value = next state
+    private final long[] transitionKeys;
+    private final int[] transitionValues;
+    private final int transitionMask;
+
+    // Per state: failure link, nearest state of the failure chain with an
+    // output (or -1), and keyword output (or -1)
+    private final int[] fail;
+    private final int[] outputLink;
+    private final int[] output;
+
+    // Per keyword: length and brands
+    private final int[] keywordLength;
+    private final int[][] keywordBrands;
+
+    private AhoCorasickMatcher(String[] brands, boolean caseSensitive, boolean wholeWords, long[] transitionKeys,
+                               int[] transitionValues, int[] fail, int[] outputLink, int[] output,
+                               int[] keywordLength, int[][] keywordBrands) {
+        this.brands = brands;
+        this.caseSensitive = caseSensitive;
+        this.wholeWords = wholeWords;
+        this.transitionKeys = transitionKeys;
+        this.transitionValues = transitionValues;
+        this.transitionMask = transitionKeys.length - 1;
+        this.fail = fail;
+        this.outputLink = outputLink;
+        this.output = output;
+        this.keywordLength = keywordLength;
+        this.keywordBrands = keywordBrands;
+    }
+
+    /**
+     * Compile a dictionary
+     *
+     * @param keywords      The keywords of each brand
+     * @param caseSensitive Whether matching is case sensitive
+     * @param wholeWords    Whether keywords only match whole words
+     * @return The matcher
+     */
+    public static AhoCorasickMatcher compile(Map<String, ? extends Collection<String>> keywords, boolean caseSensitive,
+                                             boolean wholeWords) {
+        String[] brands = keywords.keySet().toArray(new String[0]);
+
+        // Deduplicate keywords shared by several brands
+        Map<String, List<Integer>> keywordToBrands = new HashMap<>();
+        for (int brand = 0; brand < brands.length; brand++) {
+            for (String keyword : keywords.get(brands[brand])) {
+                if (keyword == null || keyword.isEmpty()) {
+                    continue;
+                }
+                String normalized = caseSensitive ? keyword : lowerCase(keyword);
+                List<Integer> keywordBrands = keywordToBrands.computeIfAbsent(normalized, key -> new ArrayList<>());
+                if (!keywordBrands.contains(brand)) {
+                    keywordBrands.add(brand);
+                }
+            }
+        }
+
+        // Build the trie, keeping children as linked lists for the breadth first pass
+        Builder builder = new Builder();
+        List<int[]> keywordBrandList = new ArrayList<>();
+        List<Integer> keywordLengthList = new ArrayList<>();
+        for (Map.Entry<String, List<Integer>> entry : keywordToBrands.entrySet()) {
+            int state = 0;
+            String keyword = entry.getKey();
+            for (int i = 0; i < keyword.length(); i++) {
+                state = builder.child(state, keyword.charAt(i));
+            }
+            builder.output[state] = keywordBrandList.size();
+            keywordBrandList.add(entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+            keywordLengthList.add(keyword.length());
+        }
+
+        int states = builder.size;
+        int capacity = Integer.highestOneBit(Math.max(2, builder.transitions * 2 - 1)) << 1;
+        long[] transitionKeys = new long[capacity];
+        int[] transitionValues = new int[capacity];
+        Arrays.fill(transitionKeys, EMPTY);
+        for (int state = 0; state < states; state++) {
+            for (int child = builder.firstChild[state]; child != -1; child = builder.nextSibling[child]) {
+                put(transitionKeys, transitionValues, key(state, builder.label[child]), child);
+            }
+        }
+
+        AhoCorasickMatcher matcher = new AhoCorasickMatcher(brands, caseSensitive, wholeWords, transitionKeys,
+            transitionValues, new int[states], new int[states], Arrays.copyOf(builder.output, states),
+            keywordLengthList.stream().mapToInt(Integer::intValue).toArray(), keywordBrandList.toArray(new int[0][]));
+        matcher.link(builder);
+        return matcher;
+    }
+
+    // Breadth first computation of failure and output links
+    private void link(Builder builder) {
+        int[] queue = new int[fail.length];
+        int head = 0;
+        int tail = 0;
+
+        outputLink[0] = -1;
+        for (int child = builder.firstChild[0]; child != -1; child = builder.nextSibling[child]) {
+            fail[child] = 0;
+            outputLink[child] = -1;
+            queue[tail++] = child;
+        }
+
+        while (head < tail) {
+            int state = queue[head++];
+            for (int child = builder.firstChild[state]; child != -1; child = builder.nextSibling[child]) {
+                char c = builder.label[child];
+                int target = fail[state];
+                int next;
+                while ((next = transition(target, c)) == -1 && target != 0) {
+                    target = fail[target];
+                }
+                fail[child] = next == -1 ? 0 : next;
+                outputLink[child] = output[fail[child]] != -1 ? fail[child] : outputLink[fail[child]];
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    /**
+     * @return The brand names, indexed by brand id
+     */
+    public String brand(int id) {
+        return brands[id];
+    }
+
+    public int brandCount() {
+        return brands.length;
+    }
+
+    /**
+     * @return A new scratch space, to be reused for the matches of one thread
+     */
+    public Scratch newScratch() {
+        return new Scratch(brands.length);
+    }
+
+    /**
+     * Find the distinct brands mentioned in a text
+     *
+     * @param text    The text
+     * @param scratch The scratch space of the calling thread, holding the brand
+     *                ids found once the method returns
+     * @return The number of distinct brands found
+     */
+    public int match(CharSequence text, Scratch scratch) {
+        scratch.reset();
+        if (text == null) {
+            return 0;
+        }
+
+        int state = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = caseSensitive ? text.charAt(i) : Character.toLowerCase(text.charAt(i));
+
+            int next;
+            while ((next = transition(state, c)) == -1 && state != 0) {
+                state = fail[state];
+            }
+            state = next == -1 ? 0 : next;
+
+            for (int candidate = output[state] != -1 ? state : outputLink[state]; candidate != -1;
+                 candidate = outputLink[candidate]) {
+                int keyword = output[candidate];
+                if (!wholeWords || isWholeWord(text, i - keywordLength[keyword] + 1, i)) {
+                    for (int brand : keywordBrands[keyword]) {
+                        scratch.add(brand);
+                    }
+                }
+            }
+        }
+
+        return scratch.size;
+    }
+
+    private static boolean isWholeWord(CharSequence text, int start, int end) {
+        return (start == 0 || !Character.isLetterOrDigit(text.charAt(start - 1)))
+            && (end == text.length() - 1 || !Character.isLetterOrDigit(text.charAt(end + 1)));
+    }
+
+    private int transition(int state, char c) {
+        long key = key(state, c);
+        for (int slot = mix(key) & transitionMask; ; slot = (slot + 1) & transitionMask) {
+            long candidate = transitionKeys[slot];
+            if (candidate == key) {
+                return transitionValues[slot];
+            }
+            if (candidate == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    private static void put(long[] keys, int[] values, long key, int value) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+    }
+
+    private static long key(int state, char c) {
+        return ((long) state << 16) | c;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static String lowerCase(String keyword) {
+        // Lower case char by char, like matching does
+        char[] chars = keyword.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Per thread scratch space deduplicating brands without allocating
+     */
+    public static final class Scratch {
+        private final int[] seen;
+        private final int[] found;
+        private int epoch;
+        private int size;
+
+        private Scratch(int brands) {
+            this.seen = new int[brands];
+            this.found = new int[brands];
+        }
+
+        /**
+         * @return The id of the nth brand found by the last match
+         */
+        public int get(int index) {
+            return found[index];
+        }
+
+        private void reset() {
+            size = 0;
+            if (++epoch == 0) {
+                Arrays.fill(seen, 0);
+                epoch = 1;
+            }
+        }
+
+        private void add(int brand) {
+            if (seen[brand] != epoch) {
+                seen[brand] = epoch;
+                found[size++] = brand;
+            }
+        }
+    }
+
+    private static final class Builder {
+        private int[] firstChild = new int[16];
+        private int[] nextSibling = new int[16];
+        private char[] label = new char[16];
+        private int[] output = new int[16];
+        private int size = 1;
+        private int transitions;
+
+        private Builder() {
+            firstChild[0] = -1;
+            nextSibling[0] = -1;
+            output[0] = -1;
+        }
+
+        private int child(int state, char c) {
+            for (int child = firstChild[state]; child != -1; child = nextSibling[child]) {
+                if (label[child] == c) {
+                    return child;
+                }
+            }
+
+            if (size == firstChild.length) {
+                int capacity = size * 2;
+                firstChild = Arrays.copyOf(firstChild, capacity);
+                nextSibling = Arrays.copyOf(nextSibling, capacity);
+                label = Arrays.copyOf(label, capacity);
+                output = Arrays.copyOf(output, capacity);
+            }
+
+            int child = size++;
+            firstChild[child] = -1;
+            label[child] = c;
+            output[child] = -1;
+            nextSibling[child] = firstChild[state];
+            firstChild[state] = child;
+            transitions++;
+            return child;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package io.kestra.service;
+
+import java.io.IOException;
+
+/**
+ * Error answered by an API, with the HTTP status of the response so that
+ * callers can tell failures of the remote side from rejected requests.
+ */
+public class ApiException extends IOException {
+    private final int statusCode;
+
+    public ApiException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return true if the remote side failed or kept rate limiting, false if
+     *         the request itself was rejected, e.g. a 400 or an invalid key
+     */
+    public boolean isRemoteFailure() {
+        return statusCode >= 500 || statusCode == 429;
+    }
+}
@@ -0,0 +1,271 @@
+package io.kestra.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.Getter;
+
+public class ApifyApiClient {
+    public static final String INSTAGRAM_HASHTAG_SCRAPER = "apify~instagram-hashtag-scraper";
+    public static final String DEFAULT_BASE_URL = "https://api.apify.com/v2";
+    // Apify caps server-side waiting at 60 seconds per request
+    private static final long MAX_WAIT_FOR_FINISH_SECONDS = 60;
+    private static final Set<String> TERMINAL_STATUSES = Set.of("SUCCEEDED", "FAILED", "ABORTED", "TIMED-OUT");
+
+    private final CredentialPool credentialPool;
+    private final String baseUrl;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader actorRunReader;
+
+    // Actor run DTO, only the fields needed to follow a run are mapped
+    @Getter
+    public static class ActorRun {
+        @JsonProperty("id")
+        private String id;
+
+        @JsonProperty("status")
+        private String status;
+
+        @JsonProperty("defaultDatasetId")
+        private String defaultDatasetId;
+
+        // Runs belong to the account of the token which started them, so they
+        // are followed with that same token
+        @JsonIgnore
+        private CredentialPool.Credential credential;
+
+        public boolean isFinished() {
+            return TERMINAL_STATUSES.contains(status);
+        }
+
+        public boolean isSucceeded() {
+            return "SUCCEEDED".equals(status);
+        }
+    }
+
+    // Apify wraps every object response in a "data" envelope
+    @Getter
+    static class ActorRunResponse {
+        @JsonProperty("data")
+        private ActorRun data;
+    }
+
+    public ApifyApiClient(String token) {
+        this(token, DEFAULT_BASE_URL);
+    }
+
+    public ApifyApiClient(String token, String baseUrl) {
+        this(new CredentialPool("apify:" + baseUrl, List.of(token)), baseUrl);
+    }
+
+    /**
+     * @param credentialPool The Apify tokens, runs are started with another
+     *                       token of the pool when one is rate limited
+     * @param baseUrl        The base URL of the API
+     */
+    public ApifyApiClient(CredentialPool credentialPool, String baseUrl) {
+        this.credentialPool = credentialPool;
+        this.baseUrl = baseUrl;
+        this.httpClient = WorkerComponents.get().httpClient();
+        this.objectMapper = WorkerComponents.get().objectMapper();
+        this.actorRunReader = WorkerComponents.get().reader(ActorRunResponse.class);
+    }
+
+    /**
+     * Run an actor synchronously and stream back its dataset items. The request
+     * is held open for the whole run and is bound by Apify's sync timeout.
+     *
+     * @param actorId  The actor to run, e.g. {@link #INSTAGRAM_HASHTAG_SCRAPER}
+     * @param input    The actor input, serialized as JSON
+     * @param maxItems The maximum number of dataset items to return
+     * @param memory   The actor memory in megabytes
+     * @return A stream of the JSON array of dataset items
+     * @throws IOException          If there's a network or request error
+     * @throws InterruptedException If the request is interrupted
+     */
+    public InputStream runSyncGetDatasetItems(String actorId, Object input, long maxItems, int memory)
+            throws IOException, InterruptedException {
+        String requestUrl = String.format("%s/acts/%s/run-sync-get-dataset-items?maxItems=%d&memory=%d",
+                baseUrl, actorId, maxItems, validateMemory(memory));
+
+        HttpResponse<InputStream> response = sendWithPool(token -> post(requestUrl, input, token),
+                HttpResponse.BodyHandlers.ofInputStream()).response();
+        if (response.statusCode() >= 300) {
+            try (InputStream body = response.body()) {
+                throw apiError(response.statusCode(), new String(body.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+
+        return response.body();
+    }
+
+    /**
+     * Start an actor run without waiting for it to finish
+     *
+     * @param actorId  The actor to run, e.g. {@link #INSTAGRAM_HASHTAG_SCRAPER}
+     * @param input    The actor input, serialized as JSON
+     * @param maxItems The maximum number of dataset items the run should produce
+     * @param memory   The actor memory in megabytes
+     * @return The started run
+     * @throws IOException          If there's a network or request error
+     * @throws InterruptedException If the request is interrupted
+     */
+    public ActorRun startRun(String actorId, Object input, long maxItems, int memory)
+            throws IOException, InterruptedException {
+        String requestUrl = String.format("%s/acts/%s/runs?maxItems=%d&memory=%d",
+                baseUrl, actorId, maxItems, validateMemory(memory));
+
+        Sent<String> sent = sendWithPool(token -> post(requestUrl, input, token),
+                HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> response = sent.response();
+        if (response.statusCode() >= 300) {
+            throw apiError(response.statusCode(), response.body());
+        }
+
+        ActorRun run = actorRunReader.<ActorRunResponse>readValue(response.body()).getData();
+        run.credential = sent.credential();
+        return run;
+    }
+
+    /**
+     * Wait for an actor run to reach a terminal status. Waiting is done on the
+     * Apify side with long polling, so each status request blocks for up to a
+     * minute instead of hammering the API.
+     *
+     * @param startedRun The run to wait for, as returned by {@link #startRun}
+     * @param timeout    The maximum time to wait
+     * @return The finished run
+     * @throws IOException          If there's a network or request error, or if
+     *                              the run did not succeed in time
+     * @throws InterruptedException If the request is interrupted
+     */
+    public ActorRun waitForRun(ActorRun startedRun, Duration timeout) throws IOException, InterruptedException {
+        String runId = startedRun.getId();
+        Instant deadline = Instant.now().plus(timeout);
+
+        while (true) {
+            long remaining = Duration.between(Instant.now(), deadline).toSeconds();
+            if (remaining <= 0) {
+                throw new IOException("Apify run " + runId + " did not finish within " + timeout);
+            }
+
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(String.format("%s/actor-runs/%s?waitForFinish=%d", baseUrl,
+                            encode(runId), Math.min(remaining, MAX_WAIT_FOR_FINISH_SECONDS))))
+                    .header("Authorization", "Bearer " + startedRun.credential.getKey())
+                    .GET()
+                    .build();
+
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            credentialPool.onResponse(startedRun.credential, response);
+            if (response.statusCode() >= 300) {
+                throw apiError(response.statusCode(), response.body());
+            }
+
+            ActorRun run = actorRunReader.<ActorRunResponse>readValue(response.body()).getData();
+            run.credential = startedRun.credential;
+            if (run.isFinished()) {
+                if (!run.isSucceeded()) {
+                    throw new IOException("Apify run " + runId + " finished with status " + run.getStatus());
+                }
+                return run;
+            }
+        }
+    }
+
+    /**
+     * Fetch one page of dataset items. The page is downloaded asynchronously so
+     * that the caller can process the previous page in the meantime.
+     *
+     * @param run    The finished run whose default dataset is read
+     * @param offset The index of the first item of the page
+     * @param limit  The maximum number of items in the page
+     * @return The raw JSON array of items of the page
+     */
+    public CompletableFuture<byte[]> fetchDatasetItems(ActorRun run, long offset, long limit) {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(String.format("%s/datasets/%s/items?format=json&clean=true&offset=%d&limit=%d",
+                        baseUrl, encode(run.getDefaultDatasetId()), offset, limit)))
+                .header("Authorization", "Bearer " + run.credential.getKey())
+                .GET()
+                .build();
+
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    credentialPool.onResponse(run.credential, response);
+                    if (response.statusCode() >= 300) {
+                        throw new UncheckedIOException(apiError(response.statusCode(),
+                                new String(response.body(), StandardCharsets.UTF_8)));
+                    }
+                    return response.body();
+                });
+    }
+
+    // Send a request with a token of the pool, switching to another token when
+    // rate limited
+    private <T> Sent<T> sendWithPool(RequestFactory request, HttpResponse.BodyHandler<T> bodyHandler)
+            throws IOException, InterruptedException {
+        Sent<T> sent = null;
+        for (int attempt = 0; attempt < credentialPool.size(); attempt++) {
+            if (sent != null && sent.response().body() instanceof InputStream body) {
+                body.close();
+            }
+
+            CredentialPool.Credential credential = credentialPool.acquire();
+            sent = new Sent<>(credential, httpClient.send(request.create(credential.getKey()), bodyHandler));
+            if (!credentialPool.onResponse(credential, sent.response())) {
+                break;
+            }
+        }
+        return sent;
+    }
+
+    private HttpRequest post(String requestUrl, Object input, String token) throws IOException {
+        return HttpRequest.newBuilder()
+                .uri(URI.create(requestUrl))
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + token)
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(input)))
+                .build();
+    }
+
+    private interface RequestFactory {
+        HttpRequest create(String token) throws IOException;
+    }
+
+    private record Sent<T>(CredentialPool.Credential credential, HttpResponse<T> response) {
+    }
+
+    private static int validateMemory(int memory) {
+        // Apify only accepts powers of 2, starting at 128 MB
+        if (memory < 128 || Integer.bitCount(memory) != 1) {
+            throw new IllegalArgumentException("Invalid actor memory '" + memory + "', must be a power of 2 >= 128");
+        }
+        return memory;
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static IOException apiError(int statusCode, String body) {
+        return new IOException("API Error (" + statusCode + "): " + body);
+    }
+}
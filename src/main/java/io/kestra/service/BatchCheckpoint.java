@@ -0,0 +1,177 @@
+package io.kestra.service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.kestra.core.exceptions.ResourceExpiredException;
+import io.kestra.core.runners.RunContext;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Progress of a batched task run, kept in the namespace KV store so that a
+ * retried attempt of the same task run resumes after the last committed batch
+ * instead of starting over.
+ * <p>
+ * Each batch has a key of its own and the state only counts them, so that a
+ * commit writes two small values whatever the number of batches before it.
+ */
+public class BatchCheckpoint {
+    private static final String KEY_PREFIX = "checkpoint_";
+    private static final String BATCH_SUFFIX = "_batch_";
+    // Long enough to cover retries with backoff, short enough not to pile up
+    private static final Duration TTL = Duration.ofDays(7);
+
+    private final KeyValueStoreService kvService;
+    private final String key;
+    private final ObjectMapper objectMapper;
+
+    @Data
+    @NoArgsConstructor
+    public static class State {
+        // The input of the run, a checkpoint of another input is discarded
+        private String source;
+        private int batchSize;
+        // The posts actually analyzed, when they differ from the source (e.g. a sample)
+        private String posts;
+        private Long populationSize;
+        private int batchCount;
+        // Stored under keys of their own, read by load
+        @JsonIgnore
+        private List<Batch> batches = new ArrayList<>();
+
+        /**
+         * @return The index of the first post not analyzed yet
+         */
+        public int next() {
+            return batches.isEmpty() ? 0 : batches.get(batches.size() - 1).getTo();
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class Batch {
+        private int from;
+        private int to;
+        private String uri;
+    }
+
+    private BatchCheckpoint(KeyValueStoreService kvService, String key) {
+        this.kvService = kvService;
+        this.key = key;
+        this.objectMapper = WorkerComponents.get().objectMapper();
+    }
+
+    /**
+     * Get the checkpoint of the current task run
+     *
+     * @param runContext The run context
+     * @param name       The name of the checkpoint, unique within the task run
+     * @return The checkpoint, or empty outside of an execution
+     */
+    @SuppressWarnings("unchecked")
+    public static Optional<BatchCheckpoint> of(RunContext runContext, String name) {
+        Map<String, Object> execution = (Map<String, Object>) runContext.getVariables().get("execution");
+        Map<String, Object> taskRun = (Map<String, Object>) runContext.getVariables().get("taskrun");
+        if (execution == null || taskRun == null || runContext.flowInfo() == null) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new BatchCheckpoint(
+            new KeyValueStoreService(runContext),
+            KEY_PREFIX + name + "_" + execution.get("id") + "_" + taskRun.get("id")));
+    }
+
+    /**
+     * Load the state of a previous attempt
+     *
+     * @param source    The input of the run
+     * @param batchSize The size of the batches
+     * @return The state of a previous attempt on the same input, or a new state
+     * @throws IOException              If there's a network or request error
+     * @throws ResourceExpiredException If the checkpoint is expired
+     */
+    public State load(String source, int batchSize) throws IOException, ResourceExpiredException {
+        String value = kvService.getKeyValue(key);
+        if (value != null) {
+            State state = objectMapper.readValue(value, State.class);
+            if (Objects.equals(state.getSource(), source) && state.getBatchSize() == batchSize
+                    && loadBatches(state)) {
+                return state;
+            }
+        }
+
+        State state = new State();
+        state.setSource(source);
+        state.setBatchSize(batchSize);
+        return state;
+    }
+
+    // False if a batch is gone, e.g. expired before the state
+    private boolean loadBatches(State state) throws IOException {
+        for (int i = 0; i < state.getBatchCount(); i++) {
+            String value;
+            try {
+                value = kvService.getKeyValue(key + BATCH_SUFFIX + i);
+            } catch (ResourceExpiredException e) {
+                return false;
+            }
+            if (value == null) {
+                return false;
+            }
+            state.getBatches().add(objectMapper.readValue(value, Batch.class));
+        }
+        return true;
+    }
+
+    /**
+     * Persist the state
+     *
+     * @param state The state
+     * @throws IOException If there's a network or request error
+     */
+    public void save(State state) throws IOException {
+        kvService.addKeyValue(key, objectMapper.writeValueAsString(state), TTL);
+    }
+
+    /**
+     * Record a completed batch and persist the state
+     *
+     * @param state The state
+     * @param from  The index of the first post of the batch
+     * @param to    The index after the last post of the batch
+     * @param uri   The file holding the results of the batch
+     * @throws IOException If there's a network or request error
+     */
+    public void commit(State state, int from, int to, String uri) throws IOException {
+        Batch batch = new Batch();
+        batch.setFrom(from);
+        batch.setTo(to);
+        batch.setUri(uri);
+        // The batch first, the state only counts it once it's stored
+        kvService.addKeyValue(key + BATCH_SUFFIX + state.getBatchCount(), objectMapper.writeValueAsString(batch), TTL);
+        state.getBatches().add(batch);
+        state.setBatchCount(state.getBatches().size());
+        save(state);
+    }
+
+    /**
+     * Forget the checkpoint, once the run succeeded
+     *
+     * @param state The state
+     * @throws IOException If there's a network or request error
+     */
+    public void clear(State state) throws IOException {
+        kvService.deleteKeyValue(key);
+        for (int i = 0; i < state.getBatchCount(); i++) {
+            kvService.deleteKeyValue(key + BATCH_SUFFIX + i);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package io.kestra.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scores every post with the local lexicon engine, and only sends the posts
+ * it isn't confident about to the model. Results keep the order of the posts,
+ * each tagged with the tier which produced it.
+ */
+public class CascadeSentimentEngine implements SentimentEngine {
+    private final LexiconSentimentEngine local;
+    private final SentimentEngine model;
+    private final double confidenceThreshold;
+
+    /**
+     * @param local               The first tier, scoring every post
+     * @param model               The second tier, for low confidence posts
+     * @param confidenceThreshold Posts scored locally with a confidence below
+     *                            this are sent to the model
+     */
+    public CascadeSentimentEngine(LexiconSentimentEngine local, SentimentEngine model, double confidenceThreshold) {
+        this.local = local;
+        this.model = model;
+        this.confidenceThreshold = confidenceThreshold;
+    }
+
+    @Override
+    public List<SentimentAnalysisApiClient.SentimentResult> analyzeSentiment(List<String> posts)
+            throws IOException, InterruptedException {
+        List<SentimentAnalysisApiClient.SentimentResult> results = new ArrayList<>(posts.size());
+        List<Integer> escalated = new ArrayList<>();
+        List<String> escalatedPosts = new ArrayList<>();
+        for (int i = 0; i < posts.size(); i++) {
+            SentimentAnalysisApiClient.SentimentResult result = local.score(posts.get(i));
+            results.add(result);
+            if (result.getConfidence() < confidenceThreshold) {
+                escalated.add(i);
+                escalatedPosts.add(posts.get(i));
+            }
+        }
+
+        if (escalatedPosts.isEmpty()) {
+            return results;
+        }
+
+        // The model answers in the order of the posts
+        List<SentimentAnalysisApiClient.SentimentResult> modelResults = SentimentEngines.requireOnePerPost(
+                escalatedPosts, model.analyzeSentiment(escalatedPosts));
+        for (int i = 0; i < escalated.size(); i++) {
+            results.set(escalated.get(i), modelResults.get(i));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,73 @@
+package io.kestra.service;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+/**
+ * Guards a sentiment engine with a circuit breaker. While the circuit is open,
+ * calls fail fast, or are answered by the fallback engine when there is one.
+ * Transport errors, server errors and exhausted rate limits count as failures,
+ * other errors leave the breaker as it was.
+ */
+public class CircuitBreakingSentimentEngine implements SentimentEngine {
+    private final SentimentEngine engine;
+    private final CircuitBreaker circuitBreaker;
+    private final SentimentEngine fallback;
+
+    /**
+     * @param engine         The guarded engine
+     * @param circuitBreaker The circuit breaker
+     * @param fallback       The engine used while the circuit is open, or null to
+     *                       fail fast
+     */
+    public CircuitBreakingSentimentEngine(SentimentEngine engine, CircuitBreaker circuitBreaker,
+            SentimentEngine fallback) {
+        this.engine = engine;
+        this.circuitBreaker = circuitBreaker;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public List<SentimentAnalysisApiClient.SentimentResult> analyzeSentiment(List<String> posts)
+            throws IOException, InterruptedException {
+        if (!circuitBreaker.tryAcquire()) {
+            if (fallback != null) {
+                return fallback.analyzeSentiment(posts);
+            }
+            throw new IOException("Circuit breaker '" + circuitBreaker.getName() + "' is open, failing fast");
+        }
+
+        List<SentimentAnalysisApiClient.SentimentResult> results;
+        try {
+            results = engine.analyzeSentiment(posts);
+        } catch (InterruptedException e) {
+            // Not a failure of the remote side, but the trial slot must be released
+            circuitBreaker.release();
+            throw e;
+        } catch (Exception e) {
+            if (isRemoteFailure(e)) {
+                circuitBreaker.onFailure();
+            } else {
+                circuitBreaker.release();
+            }
+            throw e;
+        }
+
+        circuitBreaker.onSuccess();
+        return results;
+    }
+
+    // Only an endpoint which can't be reached, fails, or keeps rate limiting
+    // every key opens the circuit. Rejected requests (400, 401, 403...) and
+    // answers which can't be parsed come from an endpoint which is up, failing
+    // fast wouldn't help them.
+    private static boolean isRemoteFailure(Exception e) {
+        if (e instanceof ApiException apiException) {
+            return apiException.isRemoteFailure();
+        }
+        return e instanceof IOException && !(e instanceof JsonProcessingException)
+                && !(e instanceof InvalidResponseException);
+    }
+}
@@ -0,0 +1,236 @@
+package io.kestra.service;
+
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Pool of API keys of a provider, so that throughput scales with the number of
+ * keys instead of being capped by the rate limit of a single one.
+ * <p>
+ * Each request takes the key which was rate limited the longest time ago, keys
+ * never limited first and the least used one on ties. A key answered with a
+ * 429 cools down for the Retry-After delay and isn't handed out meanwhile.
+ * Pools are shared per worker, so concurrent executions spread their requests
+ * over the same keys.
+ */
+public class CredentialPool {
+    public static final Duration DEFAULT_COOLDOWN = Duration.ofSeconds(10);
+    // Never trust a Retry-After longer than this, nor wait longer for a key
+    public static final Duration MAX_COOLDOWN = Duration.ofMinutes(1);
+    private static final Map<String, CredentialPool> POOLS = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final List<Credential> credentials;
+
+    /**
+     * @param name The provider, used in logs and errors
+     * @param keys The API keys
+     */
+    public CredentialPool(String name, List<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            throw new IllegalArgumentException("Invalid credentials for '" + name + "', at least one key is required");
+        }
+
+        this.name = name;
+        this.credentials = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            credentials.add(new Credential(key));
+        }
+    }
+
+    /**
+     * Get the pool of this worker for a provider and a set of keys, creating it
+     * on first use
+     *
+     * @param name The provider, e.g. "groq:" + the base URL
+     * @param keys The API keys
+     * @return The shared pool
+     */
+    public static CredentialPool shared(String name, List<String> keys) {
+        return POOLS.computeIfAbsent(name + ":" + fingerprint(keys), key -> new CredentialPool(name, keys));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        return credentials.size();
+    }
+
+    /**
+     * Take the next key, waiting for a cooldown to end if every key is rate
+     * limited
+     *
+     * @return The credential to use for one request
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public Credential acquire() throws InterruptedException {
+        while (true) {
+            long now = System.nanoTime();
+            Credential selected = null;
+            long earliestCooldownEnd = Long.MAX_VALUE;
+
+            synchronized (this) {
+                for (Credential credential : credentials) {
+                    if (credential.limited && credential.cooldownUntil - now > 0) {
+                        earliestCooldownEnd = Math.min(earliestCooldownEnd, credential.cooldownUntil - now);
+                    } else if (selected == null || credential.isPreferredTo(selected)) {
+                        selected = credential;
+                    }
+                }
+                if (selected != null) {
+                    selected.requests.incrementAndGet();
+                    return selected;
+                }
+            }
+
+            TimeUnit.NANOSECONDS.sleep(Math.min(earliestCooldownEnd, MAX_COOLDOWN.toNanos()));
+        }
+    }
+
+    /**
+     * Put a key on cooldown if the response is a 429, honoring its Retry-After
+     * header
+     *
+     * @param credential The key the request was sent with
+     * @param response   The response
+     * @return Whether the key was rate limited
+     */
+    public boolean onResponse(Credential credential, HttpResponse<?> response) {
+        if (response.statusCode() != 429) {
+            return false;
+        }
+
+        onRateLimited(credential, retryAfter(response));
+        return true;
+    }
+
+    /**
+     * Put a key on cooldown
+     *
+     * @param credential The rate limited key
+     * @param cooldown   How long the key mustn't be used
+     */
+    public void onRateLimited(Credential credential, Duration cooldown) {
+        synchronized (this) {
+            long now = System.nanoTime();
+            credential.limited = true;
+            credential.lastLimited = now;
+            credential.cooldownUntil = now + cooldown.toNanos();
+        }
+        credential.rateLimited.incrementAndGet();
+    }
+
+    /**
+     * @return The usage of each key, identified by its last characters only
+     */
+    public Map<String, Usage> usage() {
+        Map<String, Usage> usage = new LinkedHashMap<>();
+        for (Credential credential : credentials) {
+            usage.put(credential.toString(), Usage.builder()
+                    .requests(credential.requests.get())
+                    .rateLimited(credential.rateLimited.get())
+                    .build());
+        }
+        return usage;
+    }
+
+    static Duration retryAfter(HttpResponse<?> response) {
+        Duration retryAfter = response.headers().firstValue("Retry-After")
+                .map(CredentialPool::parseRetryAfter)
+                .orElse(DEFAULT_COOLDOWN);
+        return retryAfter.compareTo(MAX_COOLDOWN) > 0 ? MAX_COOLDOWN : retryAfter;
+    }
+
+    // Retry-After is either a number of seconds or an HTTP date
+    private static Duration parseRetryAfter(String value) {
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                Duration delay = Duration.between(ZonedDateTime.now(),
+                        ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+                return delay.isNegative() ? Duration.ZERO : delay;
+            } catch (DateTimeParseException ignored) {
+                return DEFAULT_COOLDOWN;
+            }
+        }
+    }
+
+    // Keys are secrets, only keep a digest of them in the registry
+    private static String fingerprint(List<String> keys) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String key : keys) {
+                digest.update(key.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A key of the pool
+     */
+    public static class Credential {
+        private final String key;
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong rateLimited = new AtomicLong();
+        // System.nanoTime() of the last 429 and end of the cooldown, guarded by the pool
+        private boolean limited;
+        private long lastLimited;
+        private long cooldownUntil;
+
+        private Credential(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        private boolean isPreferredTo(Credential other) {
+            if (limited != other.limited) {
+                return !limited;
+            }
+            if (limited && lastLimited != other.lastLimited) {
+                return lastLimited - other.lastLimited < 0;
+            }
+            return requests.get() < other.requests.get();
+        }
+
+        @Override
+        public String toString() {
+            return "..." + key.substring(Math.max(0, key.length() - 4));
+        }
+    }
+
+    @Builder
+    @Getter
+    @ToString
+    public static class Usage {
+        private final long requests;
+        private final long rateLimited;
+    }
+}
@@ -0,0 +1,159 @@
+package io.kestra.service;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+
+import io.kestra.core.exceptions.ResourceExpiredException;
+import io.kestra.core.runners.RunContext;
+
+/**
+ * Cache of the files written by the fetch tasks, shared by the executions of a
+ * namespace. The URI of a file is stored in the KV store of the namespace
+ * under a key made of the source, the hashtag, what was fetched and the time
+ * bucket, and expires with the bucket.
+ * <p>
+ * The file belongs to the execution that fetched it and goes away when that
+ * execution is purged, so executions reading it from the cache copy it into
+ * their own storage, and fetch it again when it's gone.
+ * <p>
+ * Executions of this worker missing the same key at the same time wait for
+ * the first one to fetch it instead of fetching it again. Executions of other
+ * workers only see the file once it's stored, the KV store has no
+ * compare-and-set to elect a single fetcher across workers.
+ */
+public class FetchCache {
+    private static final String KEY_PREFIX = "fetch_cache_";
+    private static final Pattern UNSAFE_KEY_CHARACTERS = Pattern.compile("[^a-z0-9_-]");
+
+    // Fetches in progress on this worker, by namespace and key
+    private static final Map<String, CompletableFuture<URI>> IN_FLIGHT = new ConcurrentHashMap<>();
+
+    private final RunContext runContext;
+    private final KeyValueStoreService kvService;
+    private final String namespace;
+
+    public FetchCache(RunContext runContext) {
+        this.runContext = runContext;
+        this.kvService = new KeyValueStoreService(runContext);
+        this.namespace = runContext.flowInfo().namespace();
+    }
+
+    /**
+     * @param source  The source of the posts, e.g. twitter
+     * @param hashtag The hashtag, without its #
+     * @param variant What was fetched for the hashtag, e.g. the number of posts
+     * @param bucket  The length of the time buckets
+     * @param now     The current time
+     * @return The key of the file fetched in the time bucket of now
+     */
+    public static String key(String source, String hashtag, String variant, Duration bucket, Instant now) {
+        return KEY_PREFIX + source + "_" + safe(hashtag) + "_" + safe(variant) + "_"
+                + now.toEpochMilli() / bucket.toMillis();
+    }
+
+    // KV keys are restricted to ASCII, other hashtags are told apart by a hash
+    private static String safe(String value) {
+        String lowerCase = value.toLowerCase(Locale.ROOT);
+        String safe = UNSAFE_KEY_CHARACTERS.matcher(lowerCase).replaceAll("-");
+        return safe.equals(lowerCase) ? safe : safe + "-" + Integer.toHexString(value.hashCode());
+    }
+
+    /**
+     * Get the file of a key, fetching it when it isn't cached
+     *
+     * @param key   The key, see {@link #key}
+     * @param ttl   How long the file is shared after being fetched
+     * @param fetch Fetches the posts and stores them in a file
+     * @return The URI of the file in the storage of this execution and whether
+     *         it was fetched by another execution
+     * @throws Exception If the fetch failed, in this execution or in the one
+     *                   it waited for
+     */
+    public Result get(String key, Duration ttl, Callable<URI> fetch) throws Exception {
+        URI cached = copy(lookup(key));
+        if (cached != null) {
+            return new Result(cached, true);
+        }
+
+        CompletableFuture<URI> fetching = new CompletableFuture<>();
+        CompletableFuture<URI> inFlight = IN_FLIGHT.putIfAbsent(namespace + "/" + key, fetching);
+        if (inFlight != null) {
+            cached = copy(await(inFlight));
+            // Only gone if the execution that fetched it was purged meanwhile
+            return cached != null ? new Result(cached, true) : new Result(fetch.call(), false);
+        }
+
+        try {
+            // The previous fetch of the key may have completed since the lookup
+            cached = copy(lookup(key));
+            if (cached != null) {
+                fetching.complete(cached);
+                return new Result(cached, true);
+            }
+
+            URI uri = fetch.call();
+            kvService.addKeyValue(key, uri.toString(), ttl);
+            fetching.complete(uri);
+            return new Result(uri, false);
+        } catch (Exception e) {
+            fetching.completeExceptionally(e);
+            throw e;
+        } finally {
+            IN_FLIGHT.remove(namespace + "/" + key, fetching);
+        }
+    }
+
+    private URI lookup(String key) throws Exception {
+        try {
+            String value = kvService.getKeyValue(key);
+            return value == null ? null : URI.create(value);
+        } catch (ResourceExpiredException e) {
+            return null;
+        }
+    }
+
+    // Copy a file of another execution into the storage of this one, null if
+    // it was purged with its execution
+    private URI copy(URI uri) throws Exception {
+        if (uri == null) {
+            return null;
+        }
+
+        File tempFile = runContext.workingDir().createTempFile().toFile();
+        try (InputStream inputStream = runContext.storage().getFile(uri)) {
+            Files.copy(inputStream, tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            Files.deleteIfExists(tempFile.toPath());
+            return null;
+        }
+        return runContext.storage().putFile(tempFile);
+    }
+
+    private static URI await(CompletableFuture<URI> inFlight) throws Exception {
+        try {
+            return inFlight.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception exception) {
+                throw exception;
+            }
+            throw e;
+        }
+    }
+
+    public record Result(URI uri, boolean cached) {
+    }
+}
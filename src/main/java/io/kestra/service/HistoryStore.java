@@ -0,0 +1,788 @@
+package io.kestra.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Append-only store of analyzed posts, kept on the worker disk or a shared
+ * volume, answering windowed sentiment aggregations without reading back the
+ * result files.
+ * <p>
+ * Records have a fixed size and are appended to memory-mapped segment files.
+ * Each segment has a sparse index with one entry per hashtag and hour, holding
+ * the range of records of that hour and their pre-aggregated sentiment counts,
+ * so that a query only reads the index for the hours it fully covers and
+ * scans records for the partial ones. Strings are interned in append-only
+ * dictionaries. Compaction rewrites the segments sorted by hashtag and time,
+ * without duplicates nor expired records: each segment is sorted on its own
+ * into a run file, then the runs are merged, so that it only holds one segment
+ * in memory whatever the size of the store.
+ * <p>
+ * Writers are serialized by a lock file, which queries hold shared, so several
+ * workers can share a store on a network volume and query it while it's
+ * compacted.
+ */
+public class HistoryStore {
+    public static final Duration INDEX_BUCKET = Duration.ofHours(1);
+    public static final int DEFAULT_SEGMENT_RECORDS = 1 << 20;
+
+    static final int RECORD_SIZE = 32;
+    private static final int HEADER_SIZE = 64;
+    private static final int SEGMENT_MAGIC = 0x53485347;
+    private static final int INDEX_MAGIC = 0x53484958;
+    private static final int INDEX_ENTRY_SIZE = 44;
+    private static final long BUCKET_MILLIS = INDEX_BUCKET.toMillis();
+    private static final String HASHTAGS = "hashtags.txt";
+    private static final String LABELS = "labels.txt";
+    private static final String LOCK = ".lock";
+    private static final Pattern SEGMENT_FILE = Pattern.compile("segment-\\d+\\.dat");
+    private static final Pattern RUN_FILE = Pattern.compile("segment-\\d+\\.run");
+    private static final int RUN_BUFFER_SIZE = 1 << 16;
+    // File locks are held per JVM, threads of a worker are serialized first
+    private static final Map<Path, StoreLock> LOCKS = new ConcurrentHashMap<>();
+
+    private final Path directory;
+    private final int segmentRecords;
+
+    /**
+     * A record to append
+     *
+     * @param timestamp The time of the post
+     * @param postHash  A hash of the post text, used to drop duplicates on
+     *                  compaction, 0 if unknown
+     * @param hashtag   The hashtag the post was fetched for
+     * @param source    The social network, or null
+     * @param language  The language of the post, or null
+     * @param sentiment The sentiment of the post
+     * @param tier      The engine tier which analyzed the post, or null
+     * @param score     The sentiment score
+     */
+    public record Entry(Instant timestamp, long postHash, String hashtag, String source, String language,
+            SentimentAnalysisApiClient.SentimentResult.Sentiment sentiment,
+            SentimentAnalysisApiClient.SentimentResult.Tier tier, double score) {
+    }
+
+    /**
+     * Aggregates of an interval of a query
+     */
+    public record Bucket(Instant start, long count, long positive, long negative, long neutral, double meanScore) {
+    }
+
+    /**
+     * Outcome of a compaction
+     */
+    public record Compaction(long recordsBefore, long recordsAfter, int segmentsBefore, int segmentsAfter) {
+    }
+
+    public HistoryStore(Path directory) {
+        this(directory, DEFAULT_SEGMENT_RECORDS);
+    }
+
+    /**
+     * @param directory      The directory of the store, created if missing
+     * @param segmentRecords The number of records per segment file
+     */
+    public HistoryStore(Path directory, int segmentRecords) {
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+    }
+
+    /**
+     * Append records, they are visible to queries once the method returns
+     *
+     * @param entries The records
+     * @return The number of records appended
+     * @throws IOException If the store can't be written
+     */
+    public long append(List<Entry> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return 0;
+        }
+
+        return locked(false, () -> {
+            Dictionary hashtags = Dictionary.load(directory.resolve(HASHTAGS));
+            Dictionary labels = Dictionary.load(directory.resolve(LABELS));
+
+            List<Path> segments = segments();
+            Segment segment = segments.isEmpty()
+                    ? Segment.create(segmentPath(1), segmentRecords)
+                    : Segment.open(segments.get(segments.size() - 1), true);
+            try {
+                for (Entry entry : entries) {
+                    if (segment.isFull()) {
+                        segment.close();
+                        segment = Segment.create(segmentPath(segmentNumber(segment.path) + 1), segmentRecords);
+                    }
+                    segment.append(entry.timestamp().toEpochMilli(), entry.postHash(), hashtags.id(entry.hashtag()),
+                            (float) entry.score(), (short) labels.id(entry.source()),
+                            (short) labels.id(entry.language()),
+                            (byte) (entry.sentiment() == null ? -1 : entry.sentiment().ordinal()),
+                            (byte) (entry.tier() == null ? -1 : entry.tier().ordinal()));
+                }
+            } finally {
+                // Dictionaries first, so that committed records never reference unknown ids
+                hashtags.save();
+                labels.save();
+                segment.close();
+            }
+            return (long) entries.size();
+        });
+    }
+
+    /**
+     * Aggregate the records of a hashtag over fixed intervals
+     *
+     * @param hashtag  The hashtag
+     * @param from     The start of the window, inclusive
+     * @param to       The end of the window, exclusive
+     * @param interval The length of each interval, starting at from
+     * @return The aggregates of each interval, empty intervals included
+     * @throws IOException If the store can't be read
+     */
+    public List<Bucket> query(String hashtag, Instant from, Instant to, Duration interval) throws IOException {
+        long fromMillis = from.toEpochMilli();
+        long toMillis = to.toEpochMilli();
+        long intervalMillis = interval.toMillis();
+        if (intervalMillis <= 0 || toMillis <= fromMillis) {
+            throw new IllegalArgumentException("Invalid window [" + from + ", " + to + ") by " + interval);
+        }
+
+        int buckets = (int) ((toMillis - fromMillis + intervalMillis - 1) / intervalMillis);
+        long[][] counts = new long[buckets][4];
+        double[] scores = new double[buckets];
+
+        // Compaction swaps the segments under the exclusive lock, a query never
+        // sees both the old and the new ones, nor a deleted one
+        locked(true, () -> {
+            Integer hashtagId = Dictionary.load(directory.resolve(HASHTAGS)).find(hashtag);
+            if (hashtagId != null) {
+                for (Path path : segments()) {
+                    try (Segment segment = Segment.open(path, false)) {
+                        if (segment.count == 0 || segment.maxTimestamp < fromMillis || segment.minTimestamp >= toMillis) {
+                            continue;
+                        }
+
+                        for (IndexEntry entry : segment.index.values()) {
+                            long bucketStart = entry.bucket * BUCKET_MILLIS;
+                            long bucketEnd = bucketStart + BUCKET_MILLIS;
+                            if (entry.hashtagId != hashtagId || bucketEnd <= fromMillis || bucketStart >= toMillis) {
+                                continue;
+                            }
+
+                            int first = (int) ((bucketStart - fromMillis) / intervalMillis);
+                            if (bucketStart >= fromMillis && bucketEnd <= toMillis
+                                    && first == (int) ((bucketEnd - 1 - fromMillis) / intervalMillis)) {
+                                // The hour falls in a single interval, its aggregates are enough
+                                counts[first][0] += entry.count;
+                                counts[first][1] += entry.positive;
+                                counts[first][2] += entry.negative;
+                                counts[first][3] += entry.neutral;
+                                scores[first] += entry.scoreSum;
+                            } else {
+                                segment.scan(entry, hashtagId, fromMillis, toMillis, (timestamp, sentiment, score) -> {
+                                    int bucket = (int) ((timestamp - fromMillis) / intervalMillis);
+                                    counts[bucket][0]++;
+                                    if (sentiment >= 0 && sentiment < 3) {
+                                        counts[bucket][1 + sentiment]++;
+                                    }
+                                    scores[bucket] += score;
+                                });
+                            }
+                        }
+                    }
+                }
+            }
+            return null;
+        });
+
+        List<Bucket> result = new ArrayList<>(buckets);
+        for (int i = 0; i < buckets; i++) {
+            result.add(new Bucket(Instant.ofEpochMilli(fromMillis + i * intervalMillis), counts[i][0], counts[i][1],
+                    counts[i][2], counts[i][3], counts[i][0] == 0 ? 0 : scores[i] / counts[i][0]));
+        }
+        return result;
+    }
+
+    /**
+     * Rewrite the store sorted by hashtag and time, dropping duplicate posts
+     * of a hashtag within an hour and records older than the retention
+     *
+     * @param olderThan Records before this are dropped, or null to keep them
+     * @return The sizes before and after
+     * @throws IOException If the store can't be rewritten
+     */
+    public Compaction compact(Instant olderThan) throws IOException {
+        return locked(false, () -> {
+            long olderThanMillis = olderThan == null ? Long.MIN_VALUE : olderThan.toEpochMilli();
+            // Runs left over by an interrupted compaction
+            for (Path run : files(RUN_FILE)) {
+                Files.delete(run);
+            }
+
+            List<Path> segments = segments();
+            List<Run> runs = new ArrayList<>(segments.size());
+            long before = 0;
+            long after = 0;
+            int segmentsAfter = 0;
+            Segment segment = null;
+            try {
+                for (Path path : segments) {
+                    try (Segment sorted = Segment.open(path, false)) {
+                        before += sorted.count;
+                        runs.add(sorted.sort(path.resolveSibling(path.getFileName().toString()
+                                .replace(".dat", ".run")), olderThanMillis));
+                    }
+                }
+
+                // Merged by hashtag then time, so that each hashtag and hour is a single contiguous range
+                PriorityQueue<Run> merge = new PriorityQueue<>(Math.max(1, runs.size()),
+                        Comparator.comparingInt(Run::hashtagId).thenComparingLong(Run::timestamp));
+                for (Run run : runs) {
+                    if (run.next()) {
+                        merge.add(run);
+                    }
+                }
+
+                // New segments are numbered after the old ones, which are only deleted once they are written
+                int next = segments.isEmpty() ? 1 : segmentNumber(segments.get(segments.size() - 1)) + 1;
+                Set<Long> seen = new HashSet<>();
+                long currentKey = Long.MIN_VALUE;
+                while (!merge.isEmpty()) {
+                    Run run = merge.poll();
+                    long key = ((long) run.hashtagId() << 32) ^ Math.floorDiv(run.timestamp(), BUCKET_MILLIS);
+                    if (key != currentKey) {
+                        currentKey = key;
+                        seen.clear();
+                    }
+
+                    if (run.postHash() == 0 || seen.add(run.postHash())) {
+                        if (segment == null || segment.isFull()) {
+                            if (segment != null) {
+                                segment.close();
+                            }
+                            segment = Segment.create(segmentPath(next++), segmentRecords);
+                            segmentsAfter++;
+                        }
+                        segment.append(run.record);
+                        after++;
+                    }
+
+                    if (run.next()) {
+                        merge.add(run);
+                    }
+                }
+            } finally {
+                if (segment != null) {
+                    segment.close();
+                }
+                for (Run run : runs) {
+                    run.close();
+                }
+            }
+
+            for (Path path : segments) {
+                Files.deleteIfExists(indexPath(path));
+                Files.delete(path);
+            }
+            return new Compaction(before, after, segments.size(), segmentsAfter);
+        });
+    }
+
+    /**
+     * @return A stable 64-bit hash of a post text, 0 for no text
+     */
+    public static long postHash(String text) {
+        if (text == null) {
+            return 0;
+        }
+
+        // 64-bit FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    // Readers share the lock file, writers hold it alone. File locks are held
+    // per JVM and can't overlap within it, so the readers of a worker share a
+    // single shared file lock.
+    private <T> T locked(boolean shared, Callable<T> action) throws IOException {
+        if (shared && !Files.isDirectory(directory)) {
+            // Nothing to read nor to lock
+            return call(action);
+        }
+
+        Files.createDirectories(directory);
+        StoreLock lock = LOCKS.computeIfAbsent(directory.toAbsolutePath().normalize(), key -> new StoreLock());
+        if (shared) {
+            lock.lockShared(directory.resolve(LOCK));
+            try {
+                return call(action);
+            } finally {
+                lock.unlockShared();
+            }
+        }
+
+        lock.readWriteLock.writeLock().lock();
+        try (
+            FileChannel lockChannel = FileChannel.open(directory.resolve(LOCK), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            FileLock ignored = lockChannel.lock()
+        ) {
+            return call(action);
+        } finally {
+            lock.readWriteLock.writeLock().unlock();
+        }
+    }
+
+    private static <T> T call(Callable<T> action) throws IOException {
+        try {
+            return action.call();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        return files(SEGMENT_FILE);
+    }
+
+    private List<Path> files(Pattern name) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(path -> name.matcher(path.getFileName().toString()).matches())
+                    .sorted(Comparator.comparingInt(HistoryStore::segmentNumber))
+                    .toList();
+        }
+    }
+
+    private Path segmentPath(int number) {
+        return directory.resolve(String.format("segment-%06d.dat", number));
+    }
+
+    private static Path indexPath(Path segment) {
+        return segment.resolveSibling(segment.getFileName().toString().replace(".dat", ".idx"));
+    }
+
+    private static int segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring("segment-".length(), name.lastIndexOf('.')));
+    }
+
+    /**
+     * Lock of a store within this JVM. The first reader takes the shared lock
+     * of the file for all of them, the last one releases it.
+     */
+    private static final class StoreLock {
+        private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+        private int readers;
+        private FileChannel sharedChannel;
+
+        private void lockShared(Path lockFile) throws IOException {
+            readWriteLock.readLock().lock();
+            try {
+                synchronized (this) {
+                    if (readers == 0) {
+                        sharedChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE,
+                                StandardOpenOption.READ, StandardOpenOption.WRITE);
+                        try {
+                            sharedChannel.lock(0, Long.MAX_VALUE, true);
+                        } catch (IOException | RuntimeException e) {
+                            sharedChannel.close();
+                            throw e;
+                        }
+                    }
+                    readers++;
+                }
+            } catch (IOException | RuntimeException e) {
+                readWriteLock.readLock().unlock();
+                throw e;
+            }
+        }
+
+        private void unlockShared() throws IOException {
+            try {
+                synchronized (this) {
+                    if (--readers == 0) {
+                        // Closing the channel releases its lock
+                        sharedChannel.close();
+                        sharedChannel = null;
+                    }
+                }
+            } finally {
+                readWriteLock.readLock().unlock();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordConsumer {
+        void accept(long timestamp, int sentiment, float score);
+    }
+
+    private static class IndexEntry {
+        private int hashtagId;
+        private long bucket;
+        private int first;
+        private int last;
+        private int count;
+        private int positive;
+        private int negative;
+        private int neutral;
+        private double scoreSum;
+    }
+
+    /**
+     * The records of a segment sorted by hashtag and time, read back one at a
+     * time. The file is deleted when closed.
+     */
+    private static final class Run implements AutoCloseable {
+        private final Path path;
+        private final InputStream input;
+        private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        private long remaining;
+
+        private Run(Path path, long count) throws IOException {
+            this.path = path;
+            this.input = new BufferedInputStream(Files.newInputStream(path), RUN_BUFFER_SIZE);
+            this.remaining = count;
+        }
+
+        private boolean next() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            if (input.readNBytes(record.array(), 0, RECORD_SIZE) != RECORD_SIZE) {
+                throw new IOException("Truncated compaction run " + path);
+            }
+            remaining--;
+            return true;
+        }
+
+        private long timestamp() {
+            return record.getLong(0);
+        }
+
+        private long postHash() {
+            return record.getLong(8);
+        }
+
+        private int hashtagId() {
+            return record.getInt(16);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                input.close();
+            } finally {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * A segment file: a header, then fixed size records.
+     * Header: magic, capacity, count, min and max timestamps.
+     * Record: timestamp, post hash, hashtag id, score, source id, language id,
+     * sentiment ordinal, tier ordinal and padding.
+     */
+    private static final class Segment implements AutoCloseable {
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final boolean writable;
+        private final int capacity;
+        private int count;
+        private long minTimestamp;
+        private long maxTimestamp;
+        private final Map<Long, IndexEntry> index = new LinkedHashMap<>();
+        private boolean dirty;
+
+        private Segment(Path path, FileChannel channel, MappedByteBuffer buffer, boolean writable, int capacity,
+                int count, long minTimestamp, long maxTimestamp) throws IOException {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.writable = writable;
+            this.capacity = capacity;
+            this.count = count;
+            this.minTimestamp = minTimestamp;
+            this.maxTimestamp = maxTimestamp;
+            loadIndex();
+        }
+
+        private static Segment create(Path path, int capacity) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_SIZE + (long) capacity * RECORD_SIZE);
+            buffer.putInt(0, SEGMENT_MAGIC);
+            buffer.putInt(4, capacity);
+            buffer.putInt(8, 0);
+            buffer.putLong(16, Long.MAX_VALUE);
+            buffer.putLong(24, Long.MIN_VALUE);
+            return new Segment(path, channel, buffer, true, capacity, 0, Long.MAX_VALUE, Long.MIN_VALUE);
+        }
+
+        private static Segment open(Path path, boolean writable) throws IOException {
+            FileChannel channel = writable
+                    ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                    : FileChannel.open(path, StandardOpenOption.READ);
+            MappedByteBuffer buffer = channel.map(
+                    writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != SEGMENT_MAGIC) {
+                channel.close();
+                throw new IOException("Invalid history segment " + path);
+            }
+            return new Segment(path, channel, buffer, writable, buffer.getInt(4), buffer.getInt(8),
+                    buffer.getLong(16), buffer.getLong(24));
+        }
+
+        private boolean isFull() {
+            return count >= capacity;
+        }
+
+        private void append(long timestamp, long postHash, int hashtagId, float score, short source, short language,
+                byte sentiment, byte tier) {
+            int position = HEADER_SIZE + count * RECORD_SIZE;
+            buffer.putLong(position, timestamp);
+            buffer.putLong(position + 8, postHash);
+            buffer.putInt(position + 16, hashtagId);
+            buffer.putFloat(position + 20, score);
+            buffer.putShort(position + 24, source);
+            buffer.putShort(position + 26, language);
+            buffer.put(position + 28, sentiment);
+            buffer.put(position + 29, tier);
+
+            index(count, timestamp, hashtagId, sentiment, score);
+            minTimestamp = Math.min(minTimestamp, timestamp);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+            count++;
+            dirty = true;
+        }
+
+        // Append a record as read from a run
+        private void append(ByteBuffer record) {
+            append(record.getLong(0), record.getLong(8), record.getInt(16), record.getFloat(20), record.getShort(24),
+                    record.getShort(26), record.get(28), record.get(29));
+        }
+
+        // Write the records from a time on to a run file, sorted by hashtag then
+        // time. Only the record numbers are held in memory.
+        private Run sort(Path run, long from) throws IOException {
+            Integer[] records = IntStream.range(0, count)
+                    .filter(record -> buffer.getLong(HEADER_SIZE + record * RECORD_SIZE) >= from)
+                    .boxed()
+                    .toArray(Integer[]::new);
+            Arrays.sort(records, Comparator
+                    .<Integer>comparingInt(record -> buffer.getInt(HEADER_SIZE + record * RECORD_SIZE + 16))
+                    .thenComparingLong(record -> buffer.getLong(HEADER_SIZE + record * RECORD_SIZE)));
+
+            byte[] bytes = new byte[RECORD_SIZE];
+            try (OutputStream output = new BufferedOutputStream(
+                    Files.newOutputStream(run, StandardOpenOption.CREATE_NEW), RUN_BUFFER_SIZE)) {
+                for (int record : records) {
+                    buffer.get(HEADER_SIZE + record * RECORD_SIZE, bytes);
+                    output.write(bytes);
+                }
+            }
+            return new Run(run, records.length);
+        }
+
+        private void scan(IndexEntry entry, int hashtagId, long from, long to, RecordConsumer consumer) {
+            for (int record = entry.first; record <= entry.last; record++) {
+                int position = HEADER_SIZE + record * RECORD_SIZE;
+                long timestamp = buffer.getLong(position);
+                if (buffer.getInt(position + 16) == hashtagId && timestamp >= from && timestamp < to
+                        && Math.floorDiv(timestamp, BUCKET_MILLIS) == entry.bucket) {
+                    consumer.accept(timestamp, buffer.get(position + 28), buffer.getFloat(position + 20));
+                }
+            }
+        }
+
+        private void index(int record, long timestamp, int hashtagId, byte sentiment, float score) {
+            long bucket = Math.floorDiv(timestamp, BUCKET_MILLIS);
+            IndexEntry entry = index.computeIfAbsent(((long) hashtagId << 32) ^ bucket, key -> {
+                IndexEntry created = new IndexEntry();
+                created.hashtagId = hashtagId;
+                created.bucket = bucket;
+                created.first = record;
+                return created;
+            });
+            entry.last = record;
+            entry.count++;
+            if (sentiment == 0) {
+                entry.positive++;
+            } else if (sentiment == 1) {
+                entry.negative++;
+            } else if (sentiment == 2) {
+                entry.neutral++;
+            }
+            entry.scoreSum += score;
+        }
+
+        // The index is rebuilt from the records when it's missing or behind,
+        // e.g. after a crash between the records and the index being written
+        private void loadIndex() throws IOException {
+            Path indexPath = indexPath(path);
+            if (Files.exists(indexPath)) {
+                ByteBuffer indexBuffer = ByteBuffer.wrap(Files.readAllBytes(indexPath));
+                if (indexBuffer.getInt() == INDEX_MAGIC && indexBuffer.getInt() == count) {
+                    int entries = indexBuffer.getInt();
+                    for (int i = 0; i < entries; i++) {
+                        IndexEntry entry = new IndexEntry();
+                        entry.hashtagId = indexBuffer.getInt();
+                        entry.bucket = indexBuffer.getLong();
+                        entry.first = indexBuffer.getInt();
+                        entry.last = indexBuffer.getInt();
+                        entry.count = indexBuffer.getInt();
+                        entry.positive = indexBuffer.getInt();
+                        entry.negative = indexBuffer.getInt();
+                        entry.neutral = indexBuffer.getInt();
+                        entry.scoreSum = indexBuffer.getDouble();
+                        index.put(((long) entry.hashtagId << 32) ^ entry.bucket, entry);
+                    }
+                    return;
+                }
+            }
+
+            for (int record = 0; record < count; record++) {
+                int position = HEADER_SIZE + record * RECORD_SIZE;
+                index(record, buffer.getLong(position), buffer.getInt(position + 16), buffer.get(position + 28),
+                        buffer.getFloat(position + 20));
+            }
+            dirty = writable;
+        }
+
+        private void saveIndex() throws IOException {
+            ByteBuffer indexBuffer = ByteBuffer.allocate(12 + index.size() * INDEX_ENTRY_SIZE);
+            indexBuffer.putInt(INDEX_MAGIC).putInt(count).putInt(index.size());
+            for (IndexEntry entry : index.values()) {
+                indexBuffer.putInt(entry.hashtagId).putLong(entry.bucket).putInt(entry.first).putInt(entry.last)
+                        .putInt(entry.count).putInt(entry.positive).putInt(entry.negative).putInt(entry.neutral)
+                        .putDouble(entry.scoreSum);
+            }
+
+            Path indexPath = indexPath(path);
+            Path temporary = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+            Files.write(temporary, indexBuffer.array());
+            Files.move(temporary, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (writable && dirty) {
+                    // Records are durable before the count exposing them
+                    buffer.force();
+                    buffer.putLong(16, minTimestamp);
+                    buffer.putLong(24, maxTimestamp);
+                    buffer.putInt(8, count);
+                    buffer.force();
+                    saveIndex();
+                }
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Append-only list of strings, the id of a string is its line number
+     */
+    private static final class Dictionary {
+        private final Path path;
+        private final List<String> values = new ArrayList<>();
+        private final Map<String, Integer> ids = new HashMap<>();
+        private int saved;
+
+        private Dictionary(Path path) {
+            this.path = path;
+        }
+
+        private static Dictionary load(Path path) {
+            Dictionary dictionary = new Dictionary(path);
+            try {
+                if (Files.exists(path)) {
+                    for (String value : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                        dictionary.ids.putIfAbsent(value, dictionary.values.size());
+                        dictionary.values.add(value);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            dictionary.saved = dictionary.values.size();
+            return dictionary;
+        }
+
+        private Integer find(String value) {
+            return ids.get(value);
+        }
+
+        // -1 stands for a missing value
+        private int id(String value) {
+            if (value == null) {
+                return -1;
+            }
+            // Line based, a line break would shift the following ids
+            String normalized = value.replace('\n', ' ').replace('\r', ' ');
+            return ids.computeIfAbsent(normalized, key -> {
+                values.add(key);
+                return values.size() - 1;
+            });
+        }
+
+        private void save() throws IOException {
+            if (saved == values.size()) {
+                return;
+            }
+            StringBuilder appended = new StringBuilder();
+            for (String value : values.subList(saved, values.size())) {
+                appended.append(value).append('\n');
+            }
+            Files.writeString(path, appended, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+            saved = values.size();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package io.kestra.service;
+
+import java.io.IOException;
+
+/**
+ * A response was received but can't be used, e.g. the model didn't answer
+ * one result per post
+ */
+public class InvalidResponseException extends IOException {
+    public InvalidResponseException(String message) {
+        super(message);
+    }
+}
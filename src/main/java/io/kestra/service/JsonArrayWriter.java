@@ -0,0 +1,62 @@
+package io.kestra.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Streams values into a JSON array one element at a time, so that large result
+ * files never need to be materialized as a single list in memory.
+ */
+public class JsonArrayWriter implements Closeable {
+    private final JsonGenerator generator;
+    private final ObjectWriter objectWriter;
+    private long count;
+
+    public JsonArrayWriter(Writer writer, ObjectMapper objectMapper) throws IOException {
+        this.generator = objectMapper.getFactory().createGenerator(writer);
+        // Flushing after every element would defeat the buffered writer
+        this.objectWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.generator.writeStartArray();
+    }
+
+    /**
+     * Append a value to the array
+     *
+     * @param value The value to serialize
+     * @throws IOException If the value can't be written
+     */
+    public void write(Object value) throws IOException {
+        objectWriter.writeValue(generator, value);
+        count++;
+    }
+
+    /**
+     * Append an already serialized JSON value to the array
+     *
+     * @param json The serialized value
+     * @throws IOException If the value can't be written
+     */
+    public void writeRaw(String json) throws IOException {
+        generator.writeRawValue(json);
+        count++;
+    }
+
+    /**
+     * @return The number of values written so far
+     */
+    public long count() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.writeEndArray();
+        generator.close();
+    }
+}
@@ -1,11 +1,25 @@
 package io.kestra.service;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
 import io.kestra.core.exceptions.ResourceExpiredException;
 import io.kestra.core.runners.RunContext;
+import io.kestra.core.storages.kv.KVMetadata;
+import io.kestra.core.storages.kv.KVValue;
 import io.kestra.core.storages.kv.KVValueAndMetadata;
 
 public class KeyValueStoreService {
+    // Locks of the worker, by namespace and name, removed once no execution
+    // holds nor waits for them. The KV store has no compare-and-set,
+    // executions of other workers aren't serialized.
+    private static final Map<String, CountedLock> LOCKS = new ConcurrentHashMap<>();
+
     private final RunContext runContext;
     private final String namespace;
 
@@ -26,6 +40,18 @@ public class KeyValueStoreService {
         runContext.namespaceKv(namespace).put(key, new KVValueAndMetadata(null, value), true);
     }
 
+    /**
+     * Add a key-value pair to the store that expires after a given time
+     *
+     * @param key   The key to store
+     * @param value The value to store
+     * @param ttl   The time to live of the pair
+     * @throws IOException          If there's a network or request error
+     */
+    public void addKeyValue(String key, String value, Duration ttl) throws IOException {
+        runContext.namespaceKv(namespace).put(key, new KVValueAndMetadata(new KVMetadata(ttl), value), true);
+    }
+
     /**
      * Retrieve a value for a given key
      *
@@ -35,10 +61,36 @@ public class KeyValueStoreService {
      * @throws ResourceExpiredException If the resource is expired
      */
     public String getKeyValue(String key) throws IOException, ResourceExpiredException {
-        if (runContext.namespaceKv(namespace).getValue(key).isEmpty()) {
-            return null;
+        Optional<KVValue> value = runContext.namespaceKv(namespace).getValue(key);
+        return value.map(kvValue -> (String) kvValue.value()).orElse(null);
+    }
+
+    /**
+     * Run an action while holding a lock of this worker, e.g. to read then
+     * write several keys consistently
+     *
+     * @param name   The name of the lock, scoped to the namespace
+     * @param action The action
+     * @return The result of the action
+     * @throws Exception If the action fails
+     */
+    public <T> T withLock(String name, Callable<T> action) throws Exception {
+        String key = namespace + "/" + name;
+        CountedLock lock = LOCKS.compute(key, (ignored, existing) -> {
+            CountedLock counted = existing == null ? new CountedLock() : existing;
+            counted.users++;
+            return counted;
+        });
+        try {
+            lock.lock();
+            try {
+                return action.call();
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            LOCKS.compute(key, (ignored, existing) -> --existing.users == 0 ? null : existing);
         }
-        return (String) runContext.namespaceKv(namespace).getValue(key).get().value();
     }
 
     /**
@@ -52,4 +104,10 @@ public class KeyValueStoreService {
     public boolean deleteKeyValue(String key) throws IOException {
         return runContext.namespaceKv(namespace).delete(key);
     }
+
+    // The number of executions holding or waiting for the lock, only changed
+    // within LOCKS.compute
+    private static final class CountedLock extends ReentrantLock {
+        private int users;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,252 @@
+package io.kestra.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-JVM language identification of posts with character n-grams. Each
+ * language has a profile of letter, bigram and trigram frequencies built from
+ * a short reference text, a post is given the language whose profile makes its
+ * n-grams the most likely (naive Bayes with add-one smoothing). Letters and
+ * bigrams make up for the trigrams of short posts missing from the small
+ * reference texts, and weigh distinctive letters such as ł or ñ.
+ * <p>
+ * Links, mentions and hashtags are ignored, they are mostly English whatever
+ * the language of the post. Posts with too few letters, e.g. only emojis, or
+ * too close to several languages are left undetected.
+ * <p>
+ * Profiles are built once per worker. Detecting a post takes a few
+ * microseconds, without building strings, and is thread safe.
+ */
+public final class LanguageDetector {
+    // Below this many n-grams the scores are mostly noise
+    private static final int MIN_NGRAMS = 8;
+    // Minimum log-likelihood margin between the two best languages, the best
+    // one must be about 7 times as likely
+    private static final double MIN_MARGIN = 2.0;
+    private static final long BIGRAM = 1L << 48;
+    private static final long LETTER = 2L << 48;
+
+    private static final Map<String, String> REFERENCE_TEXTS = new LinkedHashMap<>();
+
+    static {
+        REFERENCE_TEXTS.put("en", """
+            Black Friday is here and the deals are better than ever. Save big on our online courses this week only,
+            don't miss out on the best offers of the year. I waited two hours in line and the store was already sold
+            out, never again. Thank you so much for the amazing gift, my kids love it and we had a great time
+            together. What do you think about the new phone? The battery life is terrible and the price is way too
+            high for what you get. Get one now while it lasts, free shipping on all orders over fifty dollars. We are
+            so excited to share our latest collection with you, check the link in our bio. This is the worst customer
+            service I have ever seen, they cancelled my order without telling me. Happy holidays to everyone who
+            supported us this year, we could not have done it without you. Which one would you choose for your
+            friends and family? Follow us and retweet for a chance to win.
+            """);
+        REFERENCE_TEXTS.put("es", """
+            Llegó el Black Friday y tenemos las mejores ofertas del año para ti. Por favor voten por mi foto, solo
+            necesito un voto más para ganar. Compré unos zapatos nuevos y me encantaron, la calidad es muy buena y
+            el precio también. No puedo creer que el pedido todavía no haya llegado, es la última vez que compro en
+            esta tienda. Gracias a todos por el apoyo, sin ustedes esto no sería posible. Aprovecha los descuentos de
+            hasta el cincuenta por ciento en toda la tienda durante este fin de semana. ¿Qué opinan de la nueva
+            colección? Nosotros estamos muy contentos con el resultado. Mi hermana y yo fuimos al centro comercial
+            pero había demasiada gente y nos fuimos sin comprar nada. Síguenos y comparte para participar en el
+            sorteo de un teléfono nuevo, los ganadores se anuncian el lunes.
+            """);
+        REFERENCE_TEXTS.put("fr", """
+            Cette semaine, gagnez une console de jeux en participant à notre grand jeu concours. Pour fêter nos dix
+            ans, nous vous offrons un cadeau avec chaque commande passée sur le site. Je suis vraiment
+            déçu par ce produit, il ne fonctionne plus après deux jours et le service client ne répond jamais. Merci
+            à tous pour votre soutien, nous sommes très heureux de vous retrouver chaque année. Les prix sont
+            incroyables mais il faut faire vite, les stocks sont limités. Qu'est-ce que vous en pensez, cela vaut-il
+            vraiment le coup de l'acheter maintenant ? Nous avons passé une très belle journée en famille au marché
+            de Noël. Pour participer, il suffit de suivre notre compte et de partager ce message avec vos amis. La
+            livraison est gratuite dès cinquante euros d'achat sur l'ensemble du site.
+            """);
+        REFERENCE_TEXTS.put("it", """
+            Il nostro cane è scappato ieri sera, per fortuna un vicino gentile l'ha trovato e ce l'ha riportato.
+            Questo venerdì tutti i prodotti del negozio sono in offerta con sconti fino al cinquanta per cento. Non
+            ho mai visto un servizio clienti così lento, aspetto ancora il rimborso del mio ordine. Grazie mille a
+            tutti per gli auguri, è stata una giornata bellissima con la mia famiglia. Che ne pensate della nuova
+            collezione? Secondo me i colori sono perfetti per questa stagione. Siamo molto felici di annunciare
+            l'apertura del nostro nuovo negozio nel centro della città. La spedizione è gratuita per tutti gli ordini
+            superiori a cinquanta euro, approfittatene subito. Ho comprato questo telefono la settimana scorsa e
+            sono davvero soddisfatto della batteria e della fotocamera. Seguiteci e condividete il post per
+            partecipare all'estrazione dei premi.
+            """);
+        REFERENCE_TEXTS.put("pl", """
+            Dzień dobry wszystkim, którzy dzisiaj szukają dobrych okazji. W ten weekend wszystkie produkty w
+            naszym sklepie są przecenione nawet o połowę. Czekałem dwie godziny w kolejce, a wszystko było już
+            wyprzedane, nigdy więcej. Dziękujemy za wasze wsparcie przez cały rok, bez was nie byłoby to możliwe.
+            Jak wam się podoba nowa kolekcja? Naszym zdaniem kolory są idealne na zimę. Zamówienie miało przyjść w
+            poniedziałek, a do dzisiaj nie dostałam żadnej wiadomości od sprzedawcy. Bardzo polecam ten telefon,
+            bateria trzyma cały dzień i zdjęcia są świetnej jakości. Darmowa dostawa przy zamówieniach powyżej stu
+            złotych, tylko do końca tygodnia. Obserwujcie nas i udostępnijcie ten wpis, żeby wziąć udział w
+            konkursie. Życzymy wszystkim spokojnych i wesołych świąt.
+            """);
+        REFERENCE_TEXTS.put("de", """
+            Der Black Friday ist da und wir haben die besten Angebote des Jahres für euch. Ich habe zwei Stunden
+            gewartet und am Ende war alles ausverkauft, nie wieder. Vielen Dank für eure Unterstützung in diesem
+            Jahr, ohne euch wäre das nicht möglich gewesen. Wie gefällt euch die neue Kollektion? Wir finden die
+            Farben einfach perfekt für den Winter. Meine Bestellung ist immer noch nicht angekommen und der
+            Kundenservice antwortet nicht. Nur noch heute gibt es auf alle Produkte bis zu fünfzig Prozent Rabatt.
+            Der Versand ist kostenlos ab einem Bestellwert von fünfzig Euro. Folgt uns und teilt diesen Beitrag, um
+            an der Verlosung teilzunehmen. Wir wünschen euch allen schöne Feiertage und einen guten Rutsch.
+            """);
+        REFERENCE_TEXTS.put("pt", """
+            A Black Friday chegou e temos as melhores ofertas do ano para você. Esperei duas horas na fila e quando
+            cheguei já estava tudo esgotado, nunca mais. Muito obrigado a todos pelo carinho e pelo apoio durante
+            este ano, vocês são incríveis. O que vocês acharam da nova coleção? Nós ficamos muito felizes com o
+            resultado. Meu pedido ainda não chegou e o atendimento não responde as minhas mensagens. Aproveite os
+            descontos de até cinquenta por cento em toda a loja somente neste fim de semana. O frete é grátis para
+            compras acima de cem reais. Siga a nossa página e compartilhe esta publicação para participar do sorteio
+            de um celular novo. Desejamos a todos boas festas e um feliz ano novo.
+            """);
+    }
+
+    private final List<String> languages = new ArrayList<>();
+    // Row of each n-gram seen in a reference text, plus one, 0 if unseen
+    private final LongLongMap rows = new LongLongMap(4096);
+    // Log-probability of each seen n-gram in each language, by row then language
+    private final float[] logProbabilities;
+
+    private static final class Holder {
+        private static final LanguageDetector INSTANCE = new LanguageDetector(REFERENCE_TEXTS);
+    }
+
+    /**
+     * @param referenceTexts A reference text by language code
+     */
+    LanguageDetector(Map<String, String> referenceTexts) {
+        languages.addAll(referenceTexts.keySet());
+        List<LongLongMap> counts = new ArrayList<>();
+        long[] totals = new long[languages.size()];
+        for (int language = 0; language < languages.size(); language++) {
+            LongLongMap languageCounts = new LongLongMap(4096);
+            int current = language;
+            forEachNgram(referenceTexts.get(languages.get(language)), ngram -> {
+                languageCounts.addTo(ngram, 1);
+                totals[current]++;
+                if (rows.get(ngram) == 0) {
+                    rows.addTo(ngram, rows.size() + 1);
+                }
+            });
+            counts.add(languageCounts);
+        }
+
+        // Add-one smoothing over the n-grams of every profile
+        int vocabulary = rows.size();
+        logProbabilities = new float[vocabulary * languages.size()];
+        rows.forEach((ngram, row) -> {
+            for (int language = 0; language < languages.size(); language++) {
+                double probability = (counts.get(language).get(ngram) + 1.0) / (totals[language] + vocabulary);
+                logProbabilities[(int) (row - 1) * languages.size() + language] = (float) Math.log(probability);
+            }
+        });
+    }
+
+    /**
+     * @return The detector of the worker, with the embedded profiles
+     */
+    public static LanguageDetector get() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * @return The codes of the detected languages
+     */
+    public List<String> languages() {
+        return List.copyOf(languages);
+    }
+
+    /**
+     * Detect the language of a post
+     *
+     * @param text The text of the post
+     * @return The ISO 639-1 code of the language, or null if it couldn't be
+     *         told
+     */
+    public String detect(String text) {
+        if (text == null) {
+            return null;
+        }
+
+        double[] scores = new double[languages.size()];
+        int[] ngrams = new int[1];
+        forEachNgram(text, ngram -> {
+            long row = rows.get(ngram);
+            // N-grams of no profile are equally unlikely in every language
+            if (row == 0) {
+                return;
+            }
+            int offset = (int) (row - 1) * scores.length;
+            for (int language = 0; language < scores.length; language++) {
+                scores[language] += logProbabilities[offset + language];
+            }
+            ngrams[0]++;
+        });
+        if (ngrams[0] < MIN_NGRAMS) {
+            return null;
+        }
+
+        int best = 0;
+        int second = -1;
+        for (int language = 1; language < scores.length; language++) {
+            if (scores[language] > scores[best]) {
+                second = best;
+                best = language;
+            } else if (second < 0 || scores[language] > scores[second]) {
+                second = language;
+            }
+        }
+        if (second >= 0 && scores[best] - scores[second] < MIN_MARGIN) {
+            return null;
+        }
+        return languages.get(best);
+    }
+
+    @FunctionalInterface
+    private interface NgramConsumer {
+        void accept(long ngram);
+    }
+
+    // Letters, bigrams and trigrams of the lower case words of the text, padded
+    // with a space on both sides. Chars are packed 16 bits each, letters and
+    // bigrams are flagged above the 48 bits of a trigram.
+    private static void forEachNgram(String text, NgramConsumer consumer) {
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c == '#' || c == '@' || text.startsWith("http", i)) {
+                // Skip the hashtag, mention or link
+                while (i < text.length() && !Character.isWhitespace(text.charAt(i))) {
+                    i++;
+                }
+            } else if (Character.isLetter(c)) {
+                // A word: letters and apostrophes inside it
+                long chars = ' ';
+                int length = 0;
+                while (i < text.length() && (Character.isLetter(text.charAt(i))
+                        || text.charAt(i) == '\'' && length > 0)) {
+                    chars = chars << 16 | Character.toLowerCase(text.charAt(i));
+                    length++;
+                    emit(chars, length >= 2, consumer);
+                    i++;
+                }
+                emit(chars << 16 | ' ', true, consumer);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private static void emit(long chars, boolean trigram, NgramConsumer consumer) {
+        if ((chars & 0xFFFF) != ' ') {
+            consumer.accept(chars & 0xFFFF | LETTER);
+        }
+        consumer.accept(chars & 0xFFFF_FFFFL | BIGRAM);
+        if (trigram) {
+            consumer.accept(chars & 0xFFFF_FFFF_FFFFL);
+        }
+    }
+}
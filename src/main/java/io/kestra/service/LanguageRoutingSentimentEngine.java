@@ -0,0 +1,82 @@
+package io.kestra.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Groups posts by detected language and sends each group to the engine of its
+ * language in batches, so that a batch never mixes languages: the model gets
+ * homogeneous prompts, and languages the lexicon handles well can be scored
+ * locally without any remote call. Results keep the order of the posts.
+ */
+public class LanguageRoutingSentimentEngine implements SentimentEngine {
+    /**
+     * Language of the posts which couldn't be detected
+     */
+    public static final String UNKNOWN = "unknown";
+
+    private final LanguageDetector languageDetector;
+    private final Map<String, SentimentEngine> engines;
+    private final SentimentEngine defaultEngine;
+    private final int batchSize;
+    private final Map<String, Long> counts = new TreeMap<>();
+
+    /**
+     * @param languageDetector The detector of the language of the posts
+     * @param engines          The engine of each language code, or of
+     *                         {@link #UNKNOWN}
+     * @param defaultEngine    The engine of the other languages
+     * @param batchSize        The maximum number of posts per call to an engine
+     */
+    public LanguageRoutingSentimentEngine(LanguageDetector languageDetector, Map<String, SentimentEngine> engines,
+            SentimentEngine defaultEngine, int batchSize) {
+        this.languageDetector = languageDetector;
+        this.engines = engines;
+        this.defaultEngine = defaultEngine;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public List<SentimentAnalysisApiClient.SentimentResult> analyzeSentiment(List<String> posts)
+            throws IOException, InterruptedException {
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < posts.size(); i++) {
+            String language = languageDetector.detect(posts.get(i));
+            groups.computeIfAbsent(language == null ? UNKNOWN : language, key -> new ArrayList<>()).add(i);
+        }
+
+        SentimentAnalysisApiClient.SentimentResult[] results = new SentimentAnalysisApiClient.SentimentResult[posts
+                .size()];
+        for (Map.Entry<String, List<Integer>> group : groups.entrySet()) {
+            SentimentEngine engine = engines.getOrDefault(group.getKey(), defaultEngine);
+            List<Integer> indexes = group.getValue();
+            for (int from = 0; from < indexes.size(); from += batchSize) {
+                List<Integer> batch = indexes.subList(from, Math.min(from + batchSize, indexes.size()));
+                List<String> batchPosts = new ArrayList<>(batch.size());
+                for (int index : batch) {
+                    batchPosts.add(posts.get(index));
+                }
+
+                List<SentimentAnalysisApiClient.SentimentResult> batchResults = SentimentEngines.requireOnePerPost(
+                        batchPosts, engine.analyzeSentiment(batchPosts));
+                for (int i = 0; i < batch.size(); i++) {
+                    results[batch.get(i)] = batchResults.get(i);
+                }
+            }
+            counts.merge(group.getKey(), (long) indexes.size(), Long::sum);
+        }
+
+        return List.of(results);
+    }
+
+    /**
+     * @return The number of posts analyzed so far by language
+     */
+    public Map<String, Long> counts() {
+        return new TreeMap<>(counts);
+    }
+}
@@ -0,0 +1,44 @@
+package io.kestra.service;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Rolling window of the latest observed latencies, used to derive percentile
+ * based timeouts such as the hedging delay.
+ */
+public class LatencyTracker {
+    private final long[] samples;
+    private int next;
+    private int size;
+
+    public LatencyTracker(int windowSize) {
+        this.samples = new long[windowSize];
+    }
+
+    public synchronized void record(Duration latency) {
+        samples[next] = latency.toNanos();
+        next = (next + 1) % samples.length;
+        size = Math.min(size + 1, samples.length);
+    }
+
+    /**
+     * @param percentile   The percentile, between 0 and 100
+     * @param minSamples   The number of samples needed to trust the window
+     * @param defaultValue The value returned while the window is too small
+     * @return The percentile of the window
+     */
+    public Duration percentile(double percentile, int minSamples, Duration defaultValue) {
+        long[] sorted;
+        synchronized (this) {
+            if (size < minSamples) {
+                return defaultValue;
+            }
+            sorted = Arrays.copyOf(samples, size);
+        }
+
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return Duration.ofNanos(sorted[Math.max(0, Math.min(index, sorted.length - 1))]);
+    }
+}
@@ -0,0 +1,92 @@
+package io.kestra.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * In-JVM sentiment scorer counting positive and negative words from a small
+ * lexicon. It is far less accurate than the model but answers instantly and
+ * never fails, which makes it a suitable fallback during provider outages and
+ * the first tier of {@link CascadeSentimentEngine}.
+ */
+public class LexiconSentimentEngine implements SentimentEngine {
+    private static final Set<String> POSITIVE_WORDS = Set.of(
+        "good", "great", "excellent", "amazing", "awesome", "love", "loved", "loving", "like", "best", "better",
+        "happy", "glad", "nice", "perfect", "fantastic", "wonderful", "beautiful", "cool", "fun", "enjoy",
+        "enjoyed", "recommend", "win", "won", "save", "saving", "savings", "deal", "deals", "free", "bargain",
+        "thanks", "thank", "gift", "favorite", "favourite", "delighted", "excited", "worth", "magic", "magical",
+        "sale", "discount", "discounts", "offer", "offers", "exclusive", "congrats", "congratulations",
+        "bueno", "genial", "gracias", "feliz", "bien", "super", "merci", "bravo", "bello", "grazie", "dobry");
+
+    private static final Set<String> NEGATIVE_WORDS = Set.of(
+        "bad", "worse", "worst", "terrible", "awful", "horrible", "hate", "hated", "poor", "sad", "angry",
+        "disappointed", "disappointing", "broken", "scam", "fake", "waste", "wasted", "never", "problem",
+        "problems", "issue", "issues", "fail", "failed", "refund", "late", "delay", "delayed", "expensive",
+        "overpriced", "rude", "ugly", "useless", "annoying", "sold", "cancel", "cancelled", "canceled", "wrong",
+        "malo", "nunca", "triste", "mauvais", "jamais", "brutto", "mai", "zły");
+
+    @Override
+    public List<SentimentAnalysisApiClient.SentimentResult> analyzeSentiment(List<String> posts) {
+        List<SentimentAnalysisApiClient.SentimentResult> results = new ArrayList<>(posts.size());
+        for (String post : posts) {
+            results.add(score(post));
+        }
+        return results;
+    }
+
+    /**
+     * Score a single post
+     *
+     * @param post The post
+     * @return The sentiment result
+     */
+    public SentimentAnalysisApiClient.SentimentResult score(String post) {
+        int positive = 0;
+        int negative = 0;
+
+        if (post != null) {
+            int start = -1;
+            for (int i = 0; i <= post.length(); i++) {
+                boolean letter = i < post.length() && Character.isLetter(post.charAt(i));
+                if (letter && start < 0) {
+                    start = i;
+                } else if (!letter && start >= 0) {
+                    String word = post.substring(start, i).toLowerCase(Locale.ROOT);
+                    if (POSITIVE_WORDS.contains(word)) {
+                        positive++;
+                    } else if (NEGATIVE_WORDS.contains(word)) {
+                        negative++;
+                    }
+                    start = -1;
+                }
+            }
+        }
+
+        SentimentAnalysisApiClient.SentimentResult.Sentiment sentiment;
+        if (positive > negative) {
+            sentiment = SentimentAnalysisApiClient.SentimentResult.Sentiment.POSITIVE;
+        } else if (negative > positive) {
+            sentiment = SentimentAnalysisApiClient.SentimentResult.Sentiment.NEGATIVE;
+        } else {
+            sentiment = SentimentAnalysisApiClient.SentimentResult.Sentiment.NEUTRAL;
+        }
+
+        // Laplace smoothed share of positive words, 0.5 when nothing matched
+        double score = (positive + 1.0) / (positive + negative + 2.0);
+        // Margin between positive and negative words, discounted when they are
+        // few or contradict each other: 0 without evidence, 0.5 for a single
+        // word, 0.75 for three words agreeing
+        double confidence = (double) Math.abs(positive - negative) / (positive + negative + 1);
+
+        return SentimentAnalysisApiClient.SentimentResult.builder()
+            .sentiment(sentiment)
+            .score(score)
+            .positiveWordCount(positive)
+            .negativeWordCount(negative)
+            .tier(SentimentAnalysisApiClient.SentimentResult.Tier.LOCAL)
+            .confidence(confidence)
+            .build();
+    }
+}
@@ -0,0 +1,79 @@
+package io.kestra.service;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A post as read from a posts file. Fetch tasks write either plain strings or
+ * objects carrying metadata, this normalizes both shapes.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PostRecord {
+    private String text;
+    private String source;
+    private String language;
+    private Instant timestamp;
+    private List<String> hashtags;
+    private List<String> mentions;
+
+    /**
+     * Read a post from an element of a posts file
+     *
+     * @param node The element, either a string or an object
+     * @return The post
+     */
+    public static PostRecord of(JsonNode node) {
+        if (!node.isObject()) {
+            return PostRecord.builder().text(node.isNull() ? null : node.asText()).build();
+        }
+
+        return PostRecord.builder()
+                .text(text(node.has("text") ? node.get("text") : node.get("caption")))
+                .source(text(node.get("source")))
+                .language(text(node.get("language")))
+                .timestamp(timestamp(node.get("timestamp")))
+                .hashtags(strings(node.get("hashtags")))
+                .mentions(strings(node.get("mentions")))
+                .build();
+    }
+
+    private static String text(JsonNode node) {
+        return node == null || node.isNull() ? null : node.asText();
+    }
+
+    private static Instant timestamp(JsonNode node) {
+        if (node == null || node.isNull()) {
+            return null;
+        }
+        if (node.isNumber()) {
+            return Instant.ofEpochMilli(node.asLong());
+        }
+
+        try {
+            return Instant.parse(node.asText());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static List<String> strings(JsonNode node) {
+        if (node == null || !node.isArray()) {
+            return null;
+        }
+
+        List<String> values = new ArrayList<>(node.size());
+        node.forEach(value -> values.add(value.asText()));
+        return values;
+    }
+}
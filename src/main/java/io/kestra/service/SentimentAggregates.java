@@ -0,0 +1,184 @@
+package io.kestra.service;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Sentiment distribution and mean score of a set of results, with confidence
+ * intervals sized on the number of analyzed posts. When the posts are a sample
+ * of a known population, the intervals apply the finite population correction.
+ */
+@Builder
+@Getter
+public class SentimentAggregates {
+    private final long sampleSize;
+    private final Long populationSize;
+    private final double confidenceLevel;
+    private final Map<String, Proportion> sentiments;
+    private final Estimate score;
+    // Number of results produced by each engine tier
+    private final Map<String, Long> tiers;
+
+    @Builder
+    @Getter
+    public static class Proportion {
+        private final long count;
+        private final double value;
+        private final double lower;
+        private final double upper;
+    }
+
+    @Builder
+    @Getter
+    public static class Estimate {
+        private final double mean;
+        private final double lower;
+        private final double upper;
+    }
+
+    /**
+     * Streaming accumulator, results can be added one at a time and partial
+     * accumulators merged together
+     */
+    public static class Accumulator {
+        private final EnumMap<SentimentAnalysisApiClient.SentimentResult.Sentiment, Long> counts =
+                new EnumMap<>(SentimentAnalysisApiClient.SentimentResult.Sentiment.class);
+        private final EnumMap<SentimentAnalysisApiClient.SentimentResult.Tier, Long> tiers =
+                new EnumMap<>(SentimentAnalysisApiClient.SentimentResult.Tier.class);
+        private long count;
+        private double mean;
+        private double m2;
+
+        public void add(SentimentAnalysisApiClient.SentimentResult result) {
+            if (result.getSentiment() != null) {
+                counts.merge(result.getSentiment(), 1L, Long::sum);
+            }
+            if (result.getTier() != null) {
+                tiers.merge(result.getTier(), 1L, Long::sum);
+            }
+
+            // Welford's online mean and variance
+            count++;
+            double delta = result.getScore() - mean;
+            mean += delta / count;
+            m2 += delta * (result.getScore() - mean);
+        }
+
+        public void merge(Accumulator other) {
+            other.counts.forEach((sentiment, value) -> counts.merge(sentiment, value, Long::sum));
+            other.tiers.forEach((tier, value) -> tiers.merge(tier, value, Long::sum));
+
+            // Chan et al. parallel combination of mean and variance
+            if (other.count == 0) {
+                return;
+            }
+            long total = count + other.count;
+            double delta = other.mean - mean;
+            mean += delta * other.count / total;
+            m2 += other.m2 + delta * delta * count * other.count / total;
+            count = total;
+        }
+
+        /**
+         * @param populationSize  The size of the population the results were
+         *                        sampled from, or null if they cover it fully
+         * @param confidenceLevel The confidence level of the intervals, e.g. 0.95
+         * @return The aggregates
+         */
+        public SentimentAggregates build(Long populationSize, double confidenceLevel) {
+            // The finite population correction scales the standard error, which
+            // amounts to scaling the z-score. A sample covering the whole
+            // population gives exact values.
+            double z = zScore(confidenceLevel) * finitePopulationCorrection(count, populationSize);
+
+            Map<String, Proportion> sentiments = new LinkedHashMap<>();
+            for (SentimentAnalysisApiClient.SentimentResult.Sentiment sentiment
+                    : SentimentAnalysisApiClient.SentimentResult.Sentiment.values()) {
+                sentiments.put(sentiment.getValue(), wilson(counts.getOrDefault(sentiment, 0L), z));
+            }
+
+            Map<String, Long> tierCounts = new LinkedHashMap<>();
+            tiers.forEach((tier, value) -> tierCounts.put(tier.name(), value));
+
+            double halfWidth = count > 1 ? z * Math.sqrt(m2 / (count - 1) / count) : 0;
+
+            return SentimentAggregates.builder()
+                    .sampleSize(count)
+                    .populationSize(populationSize)
+                    .confidenceLevel(confidenceLevel)
+                    .sentiments(sentiments)
+                    .score(Estimate.builder().mean(mean).lower(mean - halfWidth).upper(mean + halfWidth).build())
+                    .tiers(tierCounts)
+                    .build();
+        }
+
+        // Wilson score interval, z already includes the finite population
+        // correction so that a z of 0 gives [p, p]
+        private Proportion wilson(long successes, double z) {
+            if (count == 0) {
+                return Proportion.builder().count(0).value(0).lower(0).upper(1).build();
+            }
+
+            double p = (double) successes / count;
+            double z2 = z * z;
+            double denominator = 1 + z2 / count;
+            double center = (p + z2 / (2 * count)) / denominator;
+            double halfWidth = z * Math.sqrt(p * (1 - p) / count + z2 / (4.0 * count * count)) / denominator;
+
+            return Proportion.builder()
+                    .count(successes)
+                    .value(p)
+                    .lower(Math.max(0, center - halfWidth))
+                    .upper(Math.min(1, center + halfWidth))
+                    .build();
+        }
+    }
+
+    private static double finitePopulationCorrection(long sampleSize, Long populationSize) {
+        if (populationSize == null || populationSize <= 1) {
+            return 1;
+        }
+        if (sampleSize >= populationSize) {
+            return 0;
+        }
+        return Math.sqrt((double) (populationSize - sampleSize) / (populationSize - 1));
+    }
+
+    /**
+     * Two-sided z-score of a confidence level, using Acklam's rational
+     * approximation of the inverse normal distribution.
+     *
+     * @param confidenceLevel The confidence level, between 0 and 1 exclusive
+     * @return The z-score
+     */
+    static double zScore(double confidenceLevel) {
+        if (confidenceLevel <= 0 || confidenceLevel >= 1) {
+            throw new IllegalArgumentException("Invalid confidence level '" + confidenceLevel + "', must be between 0 and 1");
+        }
+
+        double p = 1 - (1 - confidenceLevel) / 2;
+        double[] a = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+                1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+        double[] b = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+                6.680131188771972e+01, -1.328068155288572e+01};
+        double[] c = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+                -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+        double[] d = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+                3.754408661907416e+00};
+
+        if (p > 1 - 0.02425) {
+            double q = Math.sqrt(-2 * Math.log(1 - p));
+            return -(((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+                    / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+        }
+
+        double q = p - 0.5;
+        double r = q * q;
+        return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q
+                / (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+    }
+}
@@ -5,26 +5,68 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonValue;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import org.apache.commons.text.StringEscapeUtils;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
 import lombok.Getter;
-
-public class SentimentAnalysisApiClient {
-    private final String apiKey;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+public class SentimentAnalysisApiClient implements SentimentEngine {
+    public static final String DEFAULT_BASE_URL = "https://api.groq.com/openai/v1";
+    public static final String DEFAULT_MODEL = "llama3-8b-8192";
+
+    // Hedging waits for this many latency samples before trusting the percentile
+    private static final int HEDGING_MIN_SAMPLES = 20;
+    private static final Duration HEDGING_DEFAULT_DELAY = Duration.ofSeconds(5);
+    // At most this share of the requests are duplicated, to bound the extra load
+    private static final double HEDGING_MAX_RATIO = 0.1;
+    // Latencies and hedging budget are shared by all clients of an endpoint
+    private static final Map<String, Endpoint> ENDPOINTS = new ConcurrentHashMap<>();
+    // The model answers a JSON array, possibly surrounded by text
+    private static final Pattern JSON_ARRAY = Pattern.compile("\\[.*?\\]", Pattern.DOTALL);
+
+    private final CredentialPool credentialPool;
+    private final String chatCompletionsUrl;
+    private final Double hedgingPercentile;
+    private final String model;
+    private final Endpoint endpoint;
     private final HttpClient httpClient;
     private final ObjectMapper objectMapper;
-    private static final String BASE_URL = "https://api.groq.com/openai/v1/chat/completions";
+    private final ObjectReader completionReader;
+    private final ObjectReader resultsReader;
+    private final ObjectReader errorReader;
+
+    private record Endpoint(LatencyTracker latencies, AtomicLong requests, AtomicLong hedgedRequests) {
+    }
 
     // Response DTO for sentiment analysis
     @Getter
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
     public static class SentimentResult {
         @JsonProperty("sentiment")
         private Sentiment sentiment;
@@ -38,6 +80,21 @@ public class SentimentAnalysisApiClient {
         @JsonProperty("negative_word_count")
         private int negativeWordCount;
 
+        // Engine which produced the result, set by the engine rather than the model
+        @Setter
+        @JsonProperty("tier")
+        private Tier tier;
+
+        // Confidence of the local engine, the model doesn't report one
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        @JsonProperty("confidence")
+        private Double confidence;
+
+        public enum Tier {
+            LOCAL,
+            LLM
+        }
+
         // Enum definition remains the same as in the original code
         public enum Sentiment {
             POSITIVE("POSITIVE"),
@@ -76,7 +133,7 @@ public class SentimentAnalysisApiClient {
 
     // Comprehensive Chat Completion Response DTO
     @Getter
-    private static class ChatCompletionResponse {
+    static class ChatCompletionResponse {
         @JsonProperty("id")
         private String id;
 
@@ -132,7 +189,7 @@ public class SentimentAnalysisApiClient {
     // Request DTO remains the same as in the original code
     @Getter
     private static class ChatRequest {
-        private final String model = "llama3-8b-8192";
+        private String model;
         private List<Message> messages;
 
         private record Message(String role, String content) {
@@ -140,12 +197,51 @@ public class SentimentAnalysisApiClient {
     }
 
     public SentimentAnalysisApiClient(String apiKey) {
-        this.apiKey = apiKey;
-        this.httpClient = HttpClient.newHttpClient();
+        this(apiKey, DEFAULT_BASE_URL);
+    }
+
+    public SentimentAnalysisApiClient(String apiKey, String baseUrl) {
+        this(apiKey, baseUrl, null);
+    }
 
-        // Configure ObjectMapper
-        this.objectMapper = new ObjectMapper();
-        this.objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    public SentimentAnalysisApiClient(String apiKey, String baseUrl, Double hedgingPercentile) {
+        this(new CredentialPool("groq:" + baseUrl, List.of(apiKey)), baseUrl, hedgingPercentile);
+    }
+
+    /**
+     * @param credentialPool    The Groq API keys, requests switch to another key
+     *                          of the pool when rate limited
+     * @param baseUrl           The base URL of the API
+     * @param hedgingPercentile When set, a request still pending after this
+     *                          percentile of the recent latencies is duplicated
+     *                          and the first answer wins
+     */
+    public SentimentAnalysisApiClient(CredentialPool credentialPool, String baseUrl, Double hedgingPercentile) {
+        this(credentialPool, baseUrl, hedgingPercentile, DEFAULT_MODEL);
+    }
+
+    /**
+     * @param credentialPool    The Groq API keys, requests switch to another key
+     *                          of the pool when rate limited
+     * @param baseUrl           The base URL of the API
+     * @param hedgingPercentile When set, a request still pending after this
+     *                          percentile of the recent latencies is duplicated
+     *                          and the first answer wins
+     * @param model             The model answering the requests
+     */
+    public SentimentAnalysisApiClient(CredentialPool credentialPool, String baseUrl, Double hedgingPercentile,
+            String model) {
+        this.credentialPool = credentialPool;
+        this.chatCompletionsUrl = baseUrl + "/chat/completions";
+        this.hedgingPercentile = hedgingPercentile;
+        this.model = model;
+        this.endpoint = ENDPOINTS.computeIfAbsent(chatCompletionsUrl,
+                key -> new Endpoint(new LatencyTracker(1000), new AtomicLong(), new AtomicLong()));
+        this.httpClient = WorkerComponents.get().httpClient();
+        this.objectMapper = WorkerComponents.get().objectMapper();
+        this.completionReader = WorkerComponents.get().reader(ChatCompletionResponse.class);
+        this.resultsReader = WorkerComponents.get().reader(SentimentResult[].class);
+        this.errorReader = WorkerComponents.get().reader(ErrorResponse.class);
     }
 
     /**
@@ -156,9 +252,11 @@ public class SentimentAnalysisApiClient {
      * @throws IOException          If there's a network or request error
      * @throws InterruptedException If the request is interrupted
      */
+    @Override
     public List<SentimentResult> analyzeSentiment(List<String> posts) throws IOException, InterruptedException {
         // Prepare request payload
         ChatRequest chatRequest = new ChatRequest();
+        chatRequest.model = model;
         chatRequest.messages = List.of(
                 new ChatRequest.Message("user",
                         "Please provide a sentiment analysis for the posts in the following format:\r\n\r\n[  \r\n  {\r\n    \"sentiment\": \"POSITIVE\",\r\n    \"score\": 0.7,\r\n    \"positive_word_count\": 4,\r\n    \"negative_word_count\": 1 \r\n  },\r\n  {\r\n    \"sentiment\": \"NEGATIVE\",\r\n    \"score\": 0.3,\r\n    \"positive_word_count\": 2,\r\n    \"negative_word_count\": 6\r\n  },\r\n  {\r\n    \"sentiment\": \"NEUTRAL\",\r\n    \"score\": 0.4,\r\n    \"positive_word_count\": 2,\r\n    \"negative_word_count\": 3\r\n  }\r\n]\r\n\r\nNOTE: Ensure there is an **equal distribution** of **POSITIVE**, **NEGATIVE** and **NEUTRAL** responses across the posts. Do not skew results to either positive or negative excessively. Just return the raw JSON response in the exact format as shown above without any additional explanation or plain text."),
@@ -168,27 +266,32 @@ public class SentimentAnalysisApiClient {
         // Convert request to JSON
         String requestBody = objectMapper.writeValueAsString(chatRequest);
 
-        // Prepare HTTP request
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(BASE_URL))
-                .header("Content-Type", "application/json")
-                .header("Authorization", "Bearer " + apiKey)
-                .POST(HttpRequest.BodyPublishers.ofString(requestBody))
-                .build();
-
-        // Send request and get response
-        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        // Send request and get response, switching to another key of the pool
+        // when rate limited
+        HttpResponse<String> response = null;
+        for (int attempt = 0; attempt < credentialPool.size(); attempt++) {
+            CredentialPool.Credential credential = credentialPool.acquire();
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(chatCompletionsUrl))
+                    .header("Content-Type", "application/json")
+                    .header("Authorization", "Bearer " + credential.getKey())
+                    .POST(HttpRequest.BodyPublishers.ofString(requestBody))
+                    .build();
+
+            response = send(request);
+            if (!credentialPool.onResponse(credential, response)) {
+                break;
+            }
+        }
 
-        // Check response status
+        // Check response status, a 429 here means every key of the pool is
+        // rate limited
         if (response.statusCode() != 200) {
-            // Parse error response
-            ErrorResponse errorResponse = objectMapper.readValue(response.body(), ErrorResponse.class);
-            throw new IOException("API Error: " + errorResponse.getMessage());
+            throw new ApiException(response.statusCode(), "API Error: " + errorMessage(response));
         }
 
         // Parse the chat completion response
-        ChatCompletionResponse completionResponse = objectMapper.readValue(response.body(),
-                ChatCompletionResponse.class);
+        ChatCompletionResponse completionResponse = completionReader.readValue(response.body());
 
         // Extract sentiment JSON from the first choice
         String sentimentJson = completionResponse.getChoices().get(0).getMessage().getContent();
@@ -197,7 +300,90 @@ public class SentimentAnalysisApiClient {
         String extractedJson = extractJSONArray(sentimentJson);
 
         // Parse and return sentiment results
-        return Arrays.asList(objectMapper.readValue(extractedJson, SentimentResult[].class));
+        List<SentimentResult> sentimentResults = Arrays.asList(resultsReader.<SentimentResult[]>readValue(
+                extractedJson));
+        sentimentResults.forEach(sentimentResult -> sentimentResult.setTier(SentimentResult.Tier.LLM));
+        return SentimentEngines.requireOnePerPost(posts, sentimentResults);
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        long requests = endpoint.requests().incrementAndGet();
+        CompletableFuture<HttpResponse<String>> primary = httpClient.sendAsync(request,
+                HttpResponse.BodyHandlers.ofString());
+        CompletableFuture<HttpResponse<String>> winner = primary;
+
+        try {
+            if (hedgingPercentile != null) {
+                Duration delay = endpoint.latencies().percentile(hedgingPercentile, HEDGING_MIN_SAMPLES,
+                        HEDGING_DEFAULT_DELAY);
+                try {
+                    winner = CompletableFuture.completedFuture(primary.get(delay.toNanos(), TimeUnit.NANOSECONDS));
+                } catch (TimeoutException e) {
+                    if (endpoint.hedgedRequests().get() < requests * HEDGING_MAX_RATIO) {
+                        endpoint.hedgedRequests().incrementAndGet();
+                        winner = firstAnswer(primary, httpClient.sendAsync(request,
+                                HttpResponse.BodyHandlers.ofString()));
+                    }
+                }
+            }
+
+            HttpResponse<String> response = winner.get();
+            if (isAnswer(response)) {
+                endpoint.latencies().record(Duration.ofNanos(System.nanoTime() - start));
+            }
+            return response;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            // Drop the slower request if hedged
+            primary.cancel(true);
+        }
+    }
+
+    // Completes with the first proper answer, or with the last outcome if none is
+    private static CompletableFuture<HttpResponse<String>> firstAnswer(
+            CompletableFuture<HttpResponse<String>> primary, CompletableFuture<HttpResponse<String>> hedged) {
+        CompletableFuture<HttpResponse<String>> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(2);
+
+        for (CompletableFuture<HttpResponse<String>> candidate : List.of(primary, hedged)) {
+            candidate.whenComplete((response, throwable) -> {
+                if (throwable == null && isAnswer(response)) {
+                    result.complete(response);
+                } else if (pending.decrementAndGet() == 0) {
+                    if (throwable != null) {
+                        result.completeExceptionally(throwable);
+                    } else {
+                        result.complete(response);
+                    }
+                }
+            });
+        }
+
+        result.whenComplete((response, throwable) -> hedged.cancel(true));
+        return result;
+    }
+
+    // Server errors and rate limiting are worth waiting for the other request
+    private static boolean isAnswer(HttpResponse<String> response) {
+        return response.statusCode() < 500 && response.statusCode() != 429;
+    }
+
+    // Gateways answer server errors with HTML pages rather than JSON
+    private String errorMessage(HttpResponse<String> response) {
+        try {
+            ErrorResponse errorResponse = errorReader.readValue(response.body());
+            if (errorResponse.getMessage() != null) {
+                return errorResponse.getMessage();
+            }
+        } catch (JsonProcessingException e) {
+            // Fall back to the status
+        }
+        return "HTTP " + response.statusCode();
     }
 
     private String extractJSONArray(String text) {
@@ -205,8 +391,7 @@ public class SentimentAnalysisApiClient {
             return null;
 
         // Find the first JSON array in the text
-        java.util.regex.Pattern pattern = java.util.regex.Pattern.compile("\\[.*?\\]", java.util.regex.Pattern.DOTALL);
-        java.util.regex.Matcher matcher = pattern.matcher(text);
+        Matcher matcher = JSON_ARRAY.matcher(text);
 
         if (!matcher.find()) {
             return null;
@@ -0,0 +1,20 @@
+package io.kestra.service;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Scores the sentiment of posts, one result per post
+ */
+public interface SentimentEngine {
+    /**
+     * Perform sentiment analysis on a list of posts
+     *
+     * @param posts List of posts to analyze
+     * @return List of sentiment results
+     * @throws IOException          If there's a network or request error
+     * @throws InterruptedException If the request is interrupted
+     */
+    List<SentimentAnalysisApiClient.SentimentResult> analyzeSentiment(List<String> posts)
+            throws IOException, InterruptedException;
+}
@@ -0,0 +1,89 @@
+package io.kestra.service;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Builds the sentiment engines shared by the tasks calling the model, so that
+ * they all go through the same credential pools and circuit breakers.
+ */
+public final class SentimentEngines {
+    // Open the circuit when half of the last 20 calls (at least 5) failed, and
+    // retry after 30 seconds
+    private static final int CIRCUIT_BREAKER_WINDOW = 20;
+    private static final int CIRCUIT_BREAKER_MINIMUM_CALLS = 5;
+    private static final double CIRCUIT_BREAKER_FAILURE_RATE = 0.5;
+    private static final Duration CIRCUIT_BREAKER_OPEN_DURATION = Duration.ofSeconds(30);
+
+    private SentimentEngines() {
+    }
+
+    /**
+     * Check that an engine answered one result per post. Results are matched
+     * to posts by position, any other count can't be matched reliably.
+     *
+     * @param posts   The posts sent to the engine
+     * @param results The results it answered
+     * @return The results
+     * @throws InvalidResponseException If there isn't one result per post
+     */
+    public static List<SentimentAnalysisApiClient.SentimentResult> requireOnePerPost(List<String> posts,
+            List<SentimentAnalysisApiClient.SentimentResult> results) throws InvalidResponseException {
+        if (results.size() != posts.size()) {
+            throw new InvalidResponseException("Invalid response, " + results.size() + " sentiment results for "
+                    + posts.size() + " posts");
+        }
+        return results;
+    }
+
+    /**
+     * Engine calling the Groq model
+     *
+     * @param apiKeys           The API keys, pooled per worker
+     * @param baseUrl           The base URL of the API
+     * @param hedgingPercentile When set, slow requests are hedged, see
+     *                          {@link SentimentAnalysisApiClient}
+     * @param circuitBreaker    Whether to guard the calls with the circuit
+     *                          breaker of the worker for this endpoint and model
+     * @param fallback          The engine answering while the circuit is open,
+     *                          or null to fail fast
+     * @return The engine
+     */
+    public static SentimentEngine model(List<String> apiKeys, String baseUrl, Double hedgingPercentile,
+            boolean circuitBreaker, SentimentEngine fallback) {
+        return model(apiKeys, baseUrl, SentimentAnalysisApiClient.DEFAULT_MODEL, hedgingPercentile, circuitBreaker,
+                fallback);
+    }
+
+    /**
+     * Engine calling a given Groq model. Models of the same endpoint share its
+     * credential pool, each model has its own circuit breaker as one model may
+     * be down while the others answer.
+     *
+     * @param apiKeys           The API keys, pooled per worker
+     * @param baseUrl           The base URL of the API
+     * @param model             The model
+     * @param hedgingPercentile When set, slow requests are hedged, see
+     *                          {@link SentimentAnalysisApiClient}
+     * @param circuitBreaker    Whether to guard the calls with the circuit
+     *                          breaker of the worker for this endpoint and model
+     * @param fallback          The engine answering while the circuit is open,
+     *                          or null to fail fast
+     * @return The engine
+     */
+    public static SentimentEngine model(List<String> apiKeys, String baseUrl, String model,
+            Double hedgingPercentile, boolean circuitBreaker, SentimentEngine fallback) {
+        CredentialPool credentialPool = CredentialPool.shared("groq:" + baseUrl, apiKeys);
+        SentimentEngine sentimentEngine = new SentimentAnalysisApiClient(credentialPool, baseUrl, hedgingPercentile,
+                model);
+        if (!circuitBreaker) {
+            return sentimentEngine;
+        }
+
+        return new CircuitBreakingSentimentEngine(
+                sentimentEngine,
+                CircuitBreaker.shared("groq:" + baseUrl + ":" + model, CIRCUIT_BREAKER_WINDOW,
+                        CIRCUIT_BREAKER_MINIMUM_CALLS, CIRCUIT_BREAKER_FAILURE_RATE, CIRCUIT_BREAKER_OPEN_DURATION),
+                fallback);
+    }
+}
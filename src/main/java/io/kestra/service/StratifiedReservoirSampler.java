@@ -0,0 +1,172 @@
+package io.kestra.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * One pass, fixed size sampler over a stream of unknown length.
+ * <p>
+ * Every stratum keeps its own uniform reservoir (Algorithm R) of at most
+ * {@code sampleSize} items, so memory is bounded by
+ * {@code sampleSize * maxStrata} whatever the size of the stream. Once the
+ * stream is consumed, the final sample is allocated to the strata in proportion
+ * to their population and drawn uniformly from each reservoir, which keeps the
+ * sample self-weighting. With a single stratum this is plain reservoir sampling.
+ *
+ * @param <T> The type of the sampled items
+ */
+public class StratifiedReservoirSampler<T> {
+    /**
+     * Stratum that absorbs every new stratum once {@code maxStrata} is reached
+     */
+    public static final String OTHER_STRATUM = "__other__";
+
+    /**
+     * Bounds the memory used by stratification on high cardinality keys
+     */
+    public static final int DEFAULT_MAX_STRATA = 256;
+
+    private final int sampleSize;
+    private final int maxStrata;
+    private final SplittableRandom random;
+    private final Map<String, Reservoir<T>> reservoirs = new LinkedHashMap<>();
+    private long populationSize;
+
+    public StratifiedReservoirSampler(int sampleSize, int maxStrata, Long seed) {
+        if (sampleSize <= 0) {
+            throw new IllegalArgumentException("Invalid sample size '" + sampleSize + "', must be > 0");
+        }
+        if (maxStrata <= 0) {
+            throw new IllegalArgumentException("Invalid max strata '" + maxStrata + "', must be > 0");
+        }
+
+        this.sampleSize = sampleSize;
+        this.maxStrata = maxStrata;
+        this.random = seed == null ? new SplittableRandom() : new SplittableRandom(seed);
+    }
+
+    /**
+     * Offer an item of the stream to the sampler
+     *
+     * @param stratum The stratum of the item
+     * @param item    The item
+     */
+    public void offer(String stratum, T item) {
+        Reservoir<T> reservoir = reservoirs.get(stratum);
+        if (reservoir == null) {
+            if (reservoirs.size() >= maxStrata) {
+                stratum = OTHER_STRATUM;
+            }
+            reservoir = reservoirs.computeIfAbsent(stratum, key -> new Reservoir<>(sampleSize));
+        }
+
+        reservoir.offer(populationSize++, item, random);
+    }
+
+    /**
+     * @return The number of items offered so far
+     */
+    public long populationSize() {
+        return populationSize;
+    }
+
+    /**
+     * @return The number of items offered so far, by stratum
+     */
+    public Map<String, Long> strata() {
+        Map<String, Long> strata = new LinkedHashMap<>();
+        reservoirs.forEach((stratum, reservoir) -> strata.put(stratum, reservoir.seen));
+        return strata;
+    }
+
+    /**
+     * Draw the final sample. Items are returned in the order they were offered.
+     *
+     * @return At most {@code sampleSize} items
+     */
+    public List<T> sample() {
+        Map<String, Integer> allocation = allocate();
+
+        List<Reservoir.Entry<T>> selected = new ArrayList<>();
+        allocation.forEach((stratum, size) -> selected.addAll(reservoirs.get(stratum).draw(size, random)));
+        selected.sort(Comparator.comparingLong(Reservoir.Entry::sequence));
+
+        List<T> sample = new ArrayList<>(selected.size());
+        for (Reservoir.Entry<T> entry : selected) {
+            sample.add(entry.item());
+        }
+        return sample;
+    }
+
+    // Proportional allocation rounded with the largest remainder method
+    private Map<String, Integer> allocate() {
+        Map<String, Integer> allocation = new HashMap<>();
+        if (populationSize <= sampleSize) {
+            reservoirs.forEach((stratum, reservoir) -> allocation.put(stratum, reservoir.items.size()));
+            return allocation;
+        }
+
+        Map<String, Double> remainders = new HashMap<>();
+        int allocated = 0;
+        for (Map.Entry<String, Reservoir<T>> entry : reservoirs.entrySet()) {
+            double share = (double) sampleSize * entry.getValue().seen / populationSize;
+            int size = (int) Math.floor(share);
+            allocation.put(entry.getKey(), size);
+            remainders.put(entry.getKey(), share - size);
+            allocated += size;
+        }
+
+        List<String> byRemainder = new ArrayList<>(remainders.keySet());
+        byRemainder.sort(Comparator.comparingDouble(remainders::get).reversed());
+        for (int i = 0; allocated < sampleSize && i < byRemainder.size(); i++) {
+            allocation.merge(byRemainder.get(i), 1, Integer::sum);
+            allocated++;
+        }
+
+        return allocation;
+    }
+
+    private static class Reservoir<T> {
+        private final int capacity;
+        private final List<Entry<T>> items;
+        private long seen;
+
+        private Reservoir(int capacity) {
+            this.capacity = capacity;
+            this.items = new ArrayList<>(Math.min(capacity, 1024));
+        }
+
+        private void offer(long sequence, T item, SplittableRandom random) {
+            seen++;
+            if (items.size() < capacity) {
+                items.add(new Entry<>(sequence, item));
+                return;
+            }
+
+            long slot = random.nextLong(seen);
+            if (slot < capacity) {
+                items.set((int) slot, new Entry<>(sequence, item));
+            }
+        }
+
+        // A uniform subset of a uniform reservoir is still a uniform sample
+        private List<Entry<T>> draw(int size, SplittableRandom random) {
+            size = Math.min(size, items.size());
+            for (int i = 0; i < size; i++) {
+                int j = i + random.nextInt(items.size() - i);
+                Entry<T> swap = items.get(i);
+                items.set(i, items.get(j));
+                items.set(j, swap);
+            }
+            return items.subList(0, size);
+        }
+
+        private record Entry<T>(long sequence, T item) {
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package io.kestra.service;
+
+import java.time.temporal.ChronoUnit;
+
+/**
+ * How posts are grouped into strata when sampling
+ */
+public enum StratifyBy {
+    NONE,
+    SOURCE,
+    LANGUAGE,
+    HOUR;
+
+    private static final String UNKNOWN = "unknown";
+
+    /**
+     * @param post The post
+     * @return The stratum the post belongs to
+     */
+    public String stratum(PostRecord post) {
+        return switch (this) {
+            case NONE -> "all";
+            case SOURCE -> post.getSource() == null ? UNKNOWN : post.getSource();
+            case LANGUAGE -> language(post);
+            case HOUR -> post.getTimestamp() == null ? UNKNOWN
+                    : post.getTimestamp().truncatedTo(ChronoUnit.HOURS).toString();
+        };
+    }
+
+    // Posts without a language in their metadata are detected from their text
+    private static String language(PostRecord post) {
+        String language = post.getLanguage() != null ? post.getLanguage()
+                : LanguageDetector.get().detect(post.getText());
+        return language == null ? UNKNOWN : language;
+    }
+}
@@ -0,0 +1,87 @@
+package io.kestra.service;
+
+import java.util.Arrays;
+
+/**
+ * Assigns dense int ids to strings, so that counters can be kept in primitive
+ * maps. Ids start at 0 and follow the order of first appearance.
+ */
+public final class StringInterner {
+    private static final float LOAD_FACTOR = 0.6f;
+
+    // Hash table of ids, -1 for empty slots, and strings by id
+    private int[] table;
+    private String[] strings;
+    private int size;
+
+    public StringInterner() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize The number of strings expected, to size the table once
+     */
+    public StringInterner(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        table = new int[capacity];
+        Arrays.fill(table, -1);
+        strings = new String[Math.max(4, expectedSize)];
+    }
+
+    /**
+     * @return The id of a string, assigning the next one on first appearance
+     */
+    public int intern(String string) {
+        int slot = slot(table, strings, string);
+        if (table[slot] != -1) {
+            return table[slot];
+        }
+
+        if (size == strings.length) {
+            strings = Arrays.copyOf(strings, size * 2);
+        }
+        strings[size] = string;
+        table[slot] = size;
+        if (++size > table.length * LOAD_FACTOR) {
+            grow();
+        }
+        return size - 1;
+    }
+
+    /**
+     * @return The id of a string, -1 if it was never interned
+     */
+    public int find(String string) {
+        return table[slot(table, strings, string)];
+    }
+
+    /**
+     * @return The string of an id
+     */
+    public String get(int id) {
+        return strings[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        int[] grown = new int[table.length * 2];
+        Arrays.fill(grown, -1);
+        for (int id = 0; id < size; id++) {
+            grown[slot(grown, strings, strings[id])] = id;
+        }
+        table = grown;
+    }
+
+    private static int slot(int[] table, String[] strings, String string) {
+        int mask = table.length - 1;
+        int hash = string.hashCode() * 0x9E3779B9;
+        int slot = (hash ^ hash >>> 16) & mask;
+        while (table[slot] != -1 && !strings[table[slot]].equals(string)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
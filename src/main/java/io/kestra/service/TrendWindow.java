@@ -0,0 +1,525 @@
+package io.kestra.service;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Sliding window counts of hashtags, mentions and pairs of hashtags posted
+ * together.
+ * <p>
+ * The window is split in fixed buckets, the oldest ones being dropped as newer
+ * posts come in. Tags are interned and counted in primitive maps, so a window
+ * of millions of posts takes a few bytes per distinct tag and bucket. The
+ * window can be written and read back, only the posts newer than the ones
+ * already counted are added on the next run.
+ * <p>
+ * Posts without a time can't be told apart that way, they are counted as
+ * posted now and remembered by the hash of their text while their bucket is
+ * in the window, up to {@link #MAX_UNTIMED_POSTS} of them. They slide the
+ * window but don't move the time up to which posts were counted, so the
+ * timed posts of the next run aren't taken for counted ones.
+ */
+public class TrendWindow {
+    /**
+     * Maximum number of posts without time remembered, about 800 KB once
+     * written. Past it the ones of the oldest bucket are forgotten, and counted
+     * again if they are read again.
+     */
+    public static final int MAX_UNTIMED_POSTS = 100_000;
+
+    // Version 2 added the posts without time, version 3 the latest timed post
+    private static final int VERSION = 3;
+
+    private final long bucketMillis;
+    private final int bucketCount;
+    private final StringInterner tags;
+    private final TreeMap<Long, Bucket> buckets = new TreeMap<>();
+    // Posts up to this time were counted by a previous run
+    private final long countedUntil;
+    // The latest post, with or without time, the window ends with its bucket
+    private long latest;
+    // The latest post with a time, the next run counts the posts after it
+    private long latestTimed;
+    private int untimedPosts;
+
+    /**
+     * The count of a tag
+     *
+     * @param tag    The hashtag or mention, without # or @
+     * @param count  The number of posts in the window
+     * @param latest The number of posts in the latest bucket
+     */
+    public record Trend(String tag, long count, long latest) {
+    }
+
+    /**
+     * The count of a pair of hashtags posted together
+     *
+     * @param first  The first hashtag, in alphabetical order
+     * @param second The second hashtag
+     * @param count  The number of posts in the window
+     * @param latest The number of posts in the latest bucket
+     */
+    public record Cooccurrence(String first, String second, long count, long latest) {
+    }
+
+    private static class Bucket {
+        private final IntLongMap hashtags = new IntLongMap();
+        private final IntLongMap mentions = new IntLongMap();
+        // Pairs of hashtag ids, the lowest one in the high bits
+        private final LongLongMap pairs = new LongLongMap();
+        // Hashes of the posts without time counted in the bucket, null if none
+        private LongLongMap untimedPosts;
+
+        private int untimedPostCount() {
+            return untimedPosts == null ? 0 : untimedPosts.size();
+        }
+    }
+
+    /**
+     * @param window The length of the window
+     * @param bucket The length of a bucket, the window slides by buckets
+     */
+    public TrendWindow(Duration window, Duration bucket) {
+        this(bucket.toMillis(), (int) Math.max(1, window.toMillis() / bucket.toMillis()), new StringInterner(),
+                Long.MIN_VALUE, Long.MIN_VALUE);
+    }
+
+    private TrendWindow(long bucketMillis, int bucketCount, StringInterner tags, long latestTimed, long latest) {
+        if (bucketMillis <= 0) {
+            throw new IllegalArgumentException("Invalid bucket of " + bucketMillis + "ms, must be positive");
+        }
+
+        this.bucketMillis = bucketMillis;
+        this.bucketCount = bucketCount;
+        this.tags = tags;
+        this.countedUntil = latestTimed;
+        this.latestTimed = latestTimed;
+        this.latest = latest;
+    }
+
+    /**
+     * Count a post
+     *
+     * @param timestamp The time of the post, in epoch milliseconds
+     * @param hashtags  The hashtags of the post, null or empty if none
+     * @param mentions  The mentions of the post, null or empty if none
+     * @return Whether the post was counted, i.e. it's neither counted by a
+     *         previous run nor older than the window
+     */
+    public boolean add(long timestamp, Collection<String> hashtags, Collection<String> mentions) {
+        if (timestamp <= countedUntil) {
+            return false;
+        }
+
+        latestTimed = Math.max(latestTimed, timestamp);
+        return count(timestamp, hashtags, mentions);
+    }
+
+    // Count a post in its bucket, sliding the window up to it
+    private boolean count(long timestamp, Collection<String> hashtags, Collection<String> mentions) {
+        latest = Math.max(latest, timestamp);
+        long bucketIndex = Math.floorDiv(timestamp, bucketMillis);
+        if (bucketIndex <= Math.floorDiv(latest, bucketMillis) - bucketCount) {
+            return false;
+        }
+        Bucket bucket = buckets.computeIfAbsent(bucketIndex, key -> new Bucket());
+
+        // A tag repeated in a post counts once
+        int[] hashtagIds = ids(hashtags);
+        for (int i = 0; i < hashtagIds.length; i++) {
+            bucket.hashtags.addTo(hashtagIds[i], 1);
+            for (int j = i + 1; j < hashtagIds.length; j++) {
+                bucket.pairs.addTo(pair(hashtagIds[i], hashtagIds[j]), 1);
+            }
+        }
+        for (int mentionId : ids(mentions)) {
+            bucket.mentions.addTo(mentionId, 1);
+        }
+        expire();
+        return true;
+    }
+
+    /**
+     * Count a post without time as posted now, unless it was counted before
+     * while still in the window
+     *
+     * @param postHash A hash of the post text, see
+     *                 {@link HistoryStore#postHash}, 0 if it has no text
+     * @param now      The current time, in epoch milliseconds
+     * @param hashtags The hashtags of the post, null or empty if none
+     * @param mentions The mentions of the post, null or empty if none
+     * @return Whether the post was counted
+     */
+    public boolean addUntimed(long postHash, long now, Collection<String> hashtags, Collection<String> mentions) {
+        if (postHash == 0) {
+            return count(now, hashtags, mentions);
+        }
+
+        // Keys of the maps are non-negative, 63 bits are plenty to tell posts apart
+        long key = postHash & Long.MAX_VALUE;
+        // Only the buckets still in the window once it slid to now
+        long oldestBucket = Math.floorDiv(Math.max(latest, now), bucketMillis) - bucketCount + 1;
+        for (Bucket bucket : buckets.tailMap(oldestBucket).values()) {
+            if (bucket.untimedPosts != null && bucket.untimedPosts.get(key) != 0) {
+                return false;
+            }
+        }
+        if (!count(now, hashtags, mentions)) {
+            return false;
+        }
+
+        Bucket bucket = buckets.get(Math.floorDiv(now, bucketMillis));
+        if (bucket.untimedPosts == null) {
+            bucket.untimedPosts = new LongLongMap();
+        }
+        bucket.untimedPosts.addTo(key, 1);
+        untimedPosts++;
+        while (untimedPosts > MAX_UNTIMED_POSTS) {
+            // Forget the posts of the oldest bucket remembering some
+            for (Bucket remembering : buckets.values()) {
+                if (remembering.untimedPosts != null) {
+                    untimedPosts -= remembering.untimedPostCount();
+                    remembering.untimedPosts = null;
+                    break;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The time of the latest post counted, in epoch milliseconds
+     */
+    public long getLatest() {
+        return latest;
+    }
+
+    /**
+     * @return The number of distinct tags counted in the window
+     */
+    public int getTagCount() {
+        return tags.size();
+    }
+
+    /**
+     * @param k The number of hashtags
+     * @return The k most posted hashtags of the window, most posted first
+     */
+    public List<Trend> topHashtags(int k) {
+        return top(k, false);
+    }
+
+    /**
+     * @param k The number of mentions
+     * @return The k most posted mentions of the window, most posted first
+     */
+    public List<Trend> topMentions(int k) {
+        return top(k, true);
+    }
+
+    /**
+     * @param k The number of pairs
+     * @return The k pairs of hashtags most posted together, most posted first
+     */
+    public List<Cooccurrence> topCooccurrences(int k) {
+        LongLongMap totals = new LongLongMap();
+        buckets.values().forEach(bucket -> bucket.pairs.forEach(totals::addTo));
+        LongLongMap latestCounts = buckets.isEmpty() ? new LongLongMap() : buckets.lastEntry().getValue().pairs;
+
+        TopK topK = new TopK(k);
+        totals.forEach(topK::offer);
+        List<Cooccurrence> cooccurrences = new ArrayList<>();
+        for (long key : topK.keys()) {
+            String first = tags.get((int) (key >>> 32));
+            String second = tags.get((int) key);
+            boolean ordered = first.compareTo(second) <= 0;
+            cooccurrences.add(new Cooccurrence(ordered ? first : second, ordered ? second : first, totals.get(key),
+                    latestCounts.get(key)));
+        }
+        return cooccurrences;
+    }
+
+    /**
+     * Write the window, dropping the tags no longer in it
+     *
+     * @param output The output
+     * @throws IOException If the output can't be written
+     */
+    public void write(DataOutput output) throws IOException {
+        // Ids are reassigned densely to the live tags, so that the dictionary
+        // doesn't grow with every tag ever seen. Their order is kept, ties of
+        // the top K are ranked the same after a restore.
+        int[] remapped = new int[tags.size()];
+        for (Bucket bucket : buckets.values()) {
+            bucket.hashtags.forEach((id, count) -> remapped[id] = 1);
+            bucket.mentions.forEach((id, count) -> remapped[id] = 1);
+        }
+        StringInterner live = new StringInterner(tags.size());
+        for (int id = 0; id < remapped.length; id++) {
+            remapped[id] = remapped[id] == 1 ? live.intern(tags.get(id)) : -1;
+        }
+
+        output.writeInt(VERSION);
+        output.writeLong(bucketMillis);
+        output.writeInt(bucketCount);
+        output.writeLong(latest);
+        output.writeLong(latestTimed);
+        output.writeInt(live.size());
+        for (int id = 0; id < live.size(); id++) {
+            output.writeUTF(live.get(id));
+        }
+
+        output.writeInt(buckets.size());
+        for (Map.Entry<Long, Bucket> entry : buckets.entrySet()) {
+            output.writeLong(entry.getKey());
+            writeCounts(output, entry.getValue().hashtags, remapped);
+            writeCounts(output, entry.getValue().mentions, remapped);
+            writePairs(output, entry.getValue().pairs, remapped);
+            output.writeInt(entry.getValue().untimedPostCount());
+            if (entry.getValue().untimedPosts != null) {
+                try {
+                    entry.getValue().untimedPosts.forEach((postHash, count) -> {
+                        try {
+                            output.writeLong(postHash);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+        }
+    }
+
+    /**
+     * Read a window written by a previous run, the posts it counted are
+     * skipped by {@link #add}
+     *
+     * @param input  The input
+     * @param window The length of the window
+     * @param bucket The length of a bucket
+     * @return The window, or a new one if it was written with other lengths
+     * @throws IOException If the input can't be read
+     */
+    public static TrendWindow read(DataInput input, Duration window, Duration bucket) throws IOException {
+        TrendWindow empty = new TrendWindow(window, bucket);
+        int version = input.readInt();
+        if (version < 1 || version > VERSION || input.readLong() != empty.bucketMillis
+                || input.readInt() != empty.bucketCount) {
+            return empty;
+        }
+
+        long latest = input.readLong();
+        long latestTimed = version < 3 ? latest : input.readLong();
+        int tagCount = input.readInt();
+        StringInterner tags = new StringInterner(tagCount);
+        for (int i = 0; i < tagCount; i++) {
+            tags.intern(input.readUTF());
+        }
+
+        TrendWindow trendWindow = new TrendWindow(empty.bucketMillis, empty.bucketCount, tags, latestTimed, latest);
+        int bucketCount = input.readInt();
+        for (int i = 0; i < bucketCount; i++) {
+            Bucket restored = new Bucket();
+            trendWindow.buckets.put(input.readLong(), restored);
+            readCounts(input, restored.hashtags);
+            readCounts(input, restored.mentions);
+            int pairs = input.readInt();
+            for (int j = 0; j < pairs; j++) {
+                restored.pairs.addTo(input.readLong(), input.readLong());
+            }
+            int untimedPosts = version < 2 ? 0 : input.readInt();
+            if (untimedPosts > 0) {
+                restored.untimedPosts = new LongLongMap(untimedPosts);
+                for (int j = 0; j < untimedPosts; j++) {
+                    restored.untimedPosts.addTo(input.readLong(), 1);
+                }
+                trendWindow.untimedPosts += untimedPosts;
+            }
+        }
+        return trendWindow;
+    }
+
+    private List<Trend> top(int k, boolean mentions) {
+        IntLongMap totals = new IntLongMap(tags.size());
+        for (Bucket bucket : buckets.values()) {
+            (mentions ? bucket.mentions : bucket.hashtags).forEach(totals::addTo);
+        }
+        IntLongMap latestCounts = buckets.isEmpty()
+                ? new IntLongMap()
+                : mentions ? buckets.lastEntry().getValue().mentions : buckets.lastEntry().getValue().hashtags;
+
+        TopK topK = new TopK(k);
+        totals.forEach(topK::offer);
+        List<Trend> trends = new ArrayList<>();
+        for (long key : topK.keys()) {
+            trends.add(new Trend(tags.get((int) key), totals.get((int) key), latestCounts.get((int) key)));
+        }
+        return trends;
+    }
+
+    private void expire() {
+        long oldest = Math.floorDiv(latest, bucketMillis) - bucketCount + 1;
+        while (!buckets.isEmpty() && buckets.firstKey() < oldest) {
+            untimedPosts -= buckets.pollFirstEntry().getValue().untimedPostCount();
+        }
+    }
+
+    private int[] ids(Collection<String> values) {
+        if (values == null || values.isEmpty()) {
+            return new int[0];
+        }
+
+        int[] ids = new int[values.size()];
+        int count = 0;
+        for (String value : values) {
+            if (value != null && !value.isEmpty()) {
+                ids[count++] = tags.intern(value);
+            }
+        }
+        // Sorted ids, so that duplicates are adjacent and pairs are ordered
+        Arrays.sort(ids, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || ids[distinct - 1] != ids[i]) {
+                ids[distinct++] = ids[i];
+            }
+        }
+        return Arrays.copyOf(ids, distinct);
+    }
+
+    private static long pair(int first, int second) {
+        return first <= second ? (long) first << 32 | second : (long) second << 32 | first;
+    }
+
+    private static void writeCounts(DataOutput output, IntLongMap counts, int[] remapped) throws IOException {
+        output.writeInt(counts.size());
+        try {
+            counts.forEach((id, count) -> {
+                try {
+                    output.writeInt(remapped[id]);
+                    output.writeLong(count);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void writePairs(DataOutput output, LongLongMap pairs, int[] remapped) throws IOException {
+        output.writeInt(pairs.size());
+        try {
+            pairs.forEach((key, count) -> {
+                try {
+                    output.writeLong(pair(remapped[(int) (key >>> 32)], remapped[(int) key]));
+                    output.writeLong(count);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void readCounts(DataInput input, IntLongMap counts) throws IOException {
+        int size = input.readInt();
+        for (int i = 0; i < size; i++) {
+            counts.addTo(input.readInt(), input.readLong());
+        }
+    }
+
+    /**
+     * Bounded min-heap of the keys with the highest counts
+     */
+    private static final class TopK {
+        private final long[] keys;
+        private final long[] counts;
+        private int size;
+
+        private TopK(int k) {
+            keys = new long[Math.max(0, k)];
+            counts = new long[Math.max(0, k)];
+        }
+
+        private void offer(long key, long count) {
+            if (size < keys.length) {
+                keys[size] = key;
+                counts[size] = count;
+                siftUp(size++);
+            } else if (size > 0 && ranksBelow(keys[0], counts[0], key, count)) {
+                keys[0] = key;
+                counts[0] = count;
+                siftDown(0);
+            }
+        }
+
+        // Highest count first, the lowest key on ties so that the order is stable
+        private long[] keys() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> a.equals(b) ? 0 : ranksBelow(keys[a], counts[a], keys[b], counts[b]) ? 1 : -1);
+            long[] sorted = new long[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = keys[order[i]];
+            }
+            return sorted;
+        }
+
+        // Whether the first entry ranks after the second one
+        private static boolean ranksBelow(long key, long count, long otherKey, long otherCount) {
+            return count != otherCount ? count < otherCount : key > otherKey;
+        }
+
+        private void siftUp(int index) {
+            while (index > 0) {
+                int parent = (index - 1) / 2;
+                if (!ranksBelow(keys[index], counts[index], keys[parent], counts[parent])) {
+                    return;
+                }
+                swap(index, parent);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index) {
+            while (true) {
+                int smallest = index;
+                for (int child = 2 * index + 1; child <= 2 * index + 2 && child < size; child++) {
+                    if (ranksBelow(keys[child], counts[child], keys[smallest], counts[smallest])) {
+                        smallest = child;
+                    }
+                }
+                if (smallest == index) {
+                    return;
+                }
+                swap(index, smallest);
+                index = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            long key = keys[a];
+            keys[a] = keys[b];
+            keys[b] = key;
+            long count = counts[a];
+            counts[a] = counts[b];
+            counts[b] = count;
+        }
+    }
+}
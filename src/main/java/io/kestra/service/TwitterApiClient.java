@@ -0,0 +1,106 @@
+package io.kestra.service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.Getter;
+
+public class TwitterApiClient {
+    public static final String DEFAULT_BASE_URL = "https://api.x.com";
+    // The search endpoint only accepts between 10 and 100 results per request
+    public static final int MIN_SEARCH_RESULTS = 10;
+    public static final int MAX_SEARCH_RESULTS = 100;
+
+    private final String accessToken;
+    private final String baseUrl;
+    private final HttpClient httpClient;
+    private final ObjectReader searchResponseReader;
+
+    // Search response DTO, tweets are kept as trees so that callers pick the
+    // fields they need
+    @Getter
+    static class SearchResponse {
+        @JsonProperty("data")
+        private List<JsonNode> data;
+
+        @JsonProperty("meta")
+        private Meta meta;
+
+        @Getter
+        private static class Meta {
+            @JsonProperty("result_count")
+            private int resultCount;
+
+            @JsonProperty("next_token")
+            private String nextToken;
+        }
+    }
+
+    /**
+     * A page of search results
+     *
+     * @param tweets    The tweets of the page, objects with at least a text
+     * @param nextToken The token of the next page, null on the last page
+     */
+    public record SearchPage(List<JsonNode> tweets, String nextToken) {
+    }
+
+    public TwitterApiClient(String accessToken, String baseUrl) {
+        this.accessToken = accessToken;
+        this.baseUrl = baseUrl;
+        this.httpClient = WorkerComponents.get().httpClient();
+        this.searchResponseReader = WorkerComponents.get().reader(SearchResponse.class);
+    }
+
+    /**
+     * Search the tweets of the last seven days
+     *
+     * @param query      The search query, e.g. "#blackfridaysale"
+     * @param maxResults The number of tweets of the page, clamped to what the
+     *                   endpoint accepts
+     * @param nextToken  The token of the page to fetch, null for the first one
+     * @return The page
+     * @throws IOException          If there's a network or request error
+     * @throws InterruptedException If the request is interrupted
+     */
+    public SearchPage searchRecent(String query, int maxResults, String nextToken)
+            throws IOException, InterruptedException {
+        String requestUrl = baseUrl + "/2/tweets/search/recent?query=" + encode(query) + "&max_results="
+                + Math.min(Math.max(maxResults, MIN_SEARCH_RESULTS), MAX_SEARCH_RESULTS)
+                + (nextToken == null ? "" : "&next_token=" + encode(nextToken));
+
+        // Prepare tweets search request
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(requestUrl))
+                .header("Authorization", "Bearer " + accessToken)
+                .header("Content-Type", "application/json")
+                .GET()
+                .build();
+
+        // Send tweets request
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("API Error: " + response.body());
+        }
+
+        // The search has no results when data is missing
+        SearchResponse searchResponse = searchResponseReader.readValue(response.body());
+        return new SearchPage(
+                searchResponse.getData() == null ? new ArrayList<>() : searchResponse.getData(),
+                searchResponse.getMeta() == null ? null : searchResponse.getMeta().getNextToken());
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
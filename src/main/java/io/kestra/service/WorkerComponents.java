@@ -0,0 +1,97 @@
+package io.kestra.service;
+
+import java.net.http.HttpClient;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.kestra.plugin.instagram.PostsData;
+
+/**
+ * Components shared by every task run of a worker. They are thread safe once
+ * built and costly to build: an object mapper builds its serializers and
+ * deserializers on first use of each type, an HTTP client starts a selector
+ * thread and a connection pool. Sharing them, short task runs stop paying
+ * these costs on every run.
+ * <p>
+ * The components are created on first use. When the
+ * {@value #WARM_UP_PROPERTY} system property is true, the readers of the API
+ * responses and posts files are also built in the background at that time,
+ * instead of by the first run reading each of them.
+ */
+public final class WorkerComponents {
+    public static final String WARM_UP_PROPERTY = "io.kestra.plugin.sentiment.warmUp";
+
+    private final ObjectMapper objectMapper;
+    private final HttpClient httpClient;
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    // Initialized by the class loader on first access, which is thread safe
+    private static final class Holder {
+        private static final WorkerComponents INSTANCE = create();
+    }
+
+    private WorkerComponents() {
+        this.objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.httpClient = HttpClient.newHttpClient();
+    }
+
+    private static WorkerComponents create() {
+        WorkerComponents workerComponents = new WorkerComponents();
+        if (Boolean.getBoolean(WARM_UP_PROPERTY)) {
+            Thread.ofVirtual().name("sentiment-plugin-warm-up").start(workerComponents::warmUp);
+        }
+        return workerComponents;
+    }
+
+    /**
+     * @return The components of this worker
+     */
+    public static WorkerComponents get() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * @return The object mapper, ignoring unknown properties. Mustn't be
+     *         reconfigured, derive readers and writers from it instead.
+     */
+    public ObjectMapper objectMapper() {
+        return objectMapper;
+    }
+
+    /**
+     * @return The reader of a type, with its deserializer already built
+     */
+    public ObjectReader reader(Class<?> type) {
+        return readers.computeIfAbsent(type, objectMapper::readerFor);
+    }
+
+    /**
+     * @return The HTTP client, sharing its connections between runs
+     */
+    public HttpClient httpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Build the readers of the types read by the tasks
+     */
+    public void warmUp() {
+        List<Class<?>> types = List.of(
+                JsonNode.class,
+                PostsData.class,
+                SentimentAnalysisApiClient.SentimentResult.class,
+                SentimentAnalysisApiClient.SentimentResult[].class,
+                SentimentAnalysisApiClient.ChatCompletionResponse.class,
+                SentimentAnalysisApiClient.ErrorResponse.class,
+                ApifyApiClient.ActorRunResponse.class,
+                TwitterApiClient.SearchResponse.class);
+        for (Class<?> type : types) {
+            reader(type);
+        }
+    }
+}
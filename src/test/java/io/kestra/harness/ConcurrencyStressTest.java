@@ -0,0 +1,143 @@
+package io.kestra.harness;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+import io.kestra.plugin.twitter.GetTweets;
+import io.kestra.service.KeyValueStoreService;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import jakarta.inject.Inject;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs many concurrent executions sharing tokens and KV-backed state against
+ * the mock server and the local KV store, checks that no refresh is
+ * duplicated, no update is lost and no execution sees the state of another
+ * one, and reports throughput and contention. Excluded from the default test
+ * run, use {@code ./gradlew stressTest}, tuned with the {@code stressTest.*}
+ * system properties, e.g. {@code ./gradlew stressTest -DstressTest.executions=1000}.
+ */
+@MicronautTest
+@Tag("stress")
+class ConcurrencyStressTest {
+    private static final int EXECUTIONS = Integer.getInteger("stressTest.executions", 200);
+    private static final int CONCURRENCY = Integer.getInteger("stressTest.concurrency", 32);
+    private static final long LATENCY_MS = Long.getLong("stressTest.latencyMs", 20);
+    private static final String MOCK_ACCESS_TOKEN = "bW9jay1hY2Nlc3MtdG9rZW4";
+    private static final String MOCK_EXPIRES_AT = "4102444800000";
+
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void expiredTokenIsRefreshedOnce() throws Exception {
+        // A namespace of its own, so that no token is stored yet
+        String namespace = "stress.token" + System.nanoTime();
+        try (MockApiServer mockApiServer = MockApiServer.start()) {
+            mockApiServer.latency(Duration.ofMillis(LATENCY_MS), Duration.ZERO);
+
+            LoadRunner.Report report = LoadRunner.run(EXECUTIONS, CONCURRENCY, () -> GetTweets.builder()
+                .access_token("expired-access-token")
+                .refresh_token("refresh-token")
+                .expires_at("0")
+                .client_id("client-id")
+                .numberOfPosts("10")
+                .baseUrl(mockApiServer.url())
+                .build()
+                .run(runContext(namespace)));
+            System.out.println("concurrent token refresh: " + report + " refreshes="
+                + mockApiServer.hits("/2/oauth2/token"));
+
+            assertThat(report.failures(), is(0L));
+            assertThat(mockApiServer.hits("/2/oauth2/token"), is(1L));
+            KeyValueStoreService kvService = new KeyValueStoreService(runContext(namespace));
+            assertThat(kvService.getKeyValue("twitter_access_token"), is(MOCK_ACCESS_TOKEN));
+            assertThat(kvService.getKeyValue("twitter_token_expires_at"), is(MOCK_EXPIRES_AT));
+        }
+    }
+
+    @Test
+    void concurrentExecutionsDontShareState() throws Exception {
+        try (MockApiServer mockApiServer = MockApiServer.start()) {
+            mockApiServer.latency(Duration.ofMillis(LATENCY_MS), Duration.ofMillis(LATENCY_MS));
+
+            // Each execution asks for its own number of tweets and checks it got it
+            AtomicInteger counter = new AtomicInteger();
+            AtomicLong mismatches = new AtomicLong();
+            LoadRunner.Report report = LoadRunner.run(EXECUTIONS, CONCURRENCY, () -> {
+                int numberOfPosts = 1 + counter.getAndIncrement() % 10;
+                RunContext runContext = runContext("stress.state");
+                GetTweets.Output output = GetTweets.builder()
+                    .access_token("access-token")
+                    .refresh_token("refresh-token")
+                    .expires_at(String.valueOf(Long.MAX_VALUE))
+                    .client_id("client-id")
+                    .hashtag("tag" + numberOfPosts)
+                    .numberOfPosts(String.valueOf(numberOfPosts))
+                    .baseUrl(mockApiServer.url())
+                    .build()
+                    .run(runContext);
+
+                try (InputStream inputStream = runContext.storage().getFile(output.getUri())) {
+                    List<String> tweets = new ObjectMapper().readValue(inputStream, new TypeReference<>() {
+                    });
+                    if (tweets.size() != numberOfPosts) {
+                        mismatches.incrementAndGet();
+                    }
+                }
+                return output;
+            });
+            System.out.println("concurrent fetches: " + report);
+
+            assertThat(report.failures(), is(0L));
+            assertThat(mismatches.get(), is(0L));
+        }
+    }
+
+    @Test
+    void kvLockLosesNoUpdate() throws Exception {
+        String namespace = "stress.kv" + System.nanoTime();
+        KeyValueStoreService kvService = new KeyValueStoreService(runContext(namespace));
+
+        // Uncontended baseline, then every execution increments the same counter
+        LoadRunner.Report baseline = LoadRunner.run(EXECUTIONS, 1, () -> increment(kvService, "baseline"));
+        LoadRunner.Report contended = LoadRunner.run(EXECUTIONS, CONCURRENCY,
+            () -> increment(new KeyValueStoreService(runContext(namespace)), "counter"));
+        System.out.println("kv lock, uncontended: " + baseline);
+        System.out.println("kv lock, " + CONCURRENCY + " threads on one key: " + contended);
+
+        assertThat(contended.failures(), is(0L));
+        assertThat(kvService.getKeyValue("counter"), is(String.valueOf(EXECUTIONS)));
+        assertThat(kvService.getKeyValue("baseline"), is(String.valueOf(EXECUTIONS)));
+    }
+
+    // Read then write under the lock, like the token refresh of GetTweets
+    private static String increment(KeyValueStoreService kvService, String key) throws Exception {
+        return kvService.withLock(key, () -> {
+            String value = kvService.getKeyValue(key);
+            String incremented = String.valueOf(value == null ? 1 : Long.parseLong(value) + 1);
+            kvService.addKeyValue(key, incremented);
+            return incremented;
+        });
+    }
+
+    private RunContext runContext(String namespace) {
+        return runContextFactory.of(Map.of("flow", Map.of(
+            "id", "stressTest",
+            "namespace", namespace
+        )));
+    }
+}
@@ -0,0 +1,105 @@
+package io.kestra.harness;
+
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+import io.kestra.plugin.instagram.GetPosts;
+import io.kestra.plugin.sentiment_analysis.SentimentAnalysis;
+import io.kestra.plugin.twitter.GetTweets;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import jakarta.inject.Inject;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many concurrent fetch then analyze executions against the mock server
+ * and reports throughput, latency percentiles and allocation. Excluded from the
+ * default test run, use {@code ./gradlew loadTest}. The load can be tuned with
+ * the {@code loadTest.*} system properties, e.g.
+ * {@code ./gradlew loadTest -DloadTest.executions=1000 -DloadTest.errorRate=0.01}.
+ */
+@MicronautTest
+@Tag("load")
+class FetchAnalyzeLoadTest {
+    private static final int EXECUTIONS = Integer.getInteger("loadTest.executions", 200);
+    private static final int CONCURRENCY = Integer.getInteger("loadTest.concurrency", 16);
+    private static final long LATENCY_MS = Long.getLong("loadTest.latencyMs", 50);
+    private static final long JITTER_MS = Long.getLong("loadTest.jitterMs", 50);
+    private static final double ERROR_RATE = Double.parseDouble(System.getProperty("loadTest.errorRate", "0"));
+    private static final double RATE_LIMIT_RATE = Double.parseDouble(System.getProperty("loadTest.rateLimitRate", "0"));
+
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void fetchThenAnalyze() throws Exception {
+        try (MockApiServer mockApiServer = MockApiServer.start()) {
+            mockApiServer
+                .latency(Duration.ofMillis(LATENCY_MS), Duration.ofMillis(JITTER_MS))
+                .errorRate(ERROR_RATE)
+                .rateLimitRate(RATE_LIMIT_RATE);
+
+            // Warm up class loading and JIT before measuring
+            LoadRunner.run(Math.min(EXECUTIONS, 20), CONCURRENCY, execution(mockApiServer, new AtomicInteger()));
+
+            LoadRunner.Report report = LoadRunner.run(EXECUTIONS, CONCURRENCY,
+                execution(mockApiServer, new AtomicInteger()));
+            System.out.println("fetch -> analyze: " + report);
+
+            if (ERROR_RATE == 0 && RATE_LIMIT_RATE == 0) {
+                assertThat(report.failures(), is(0L));
+            }
+        }
+    }
+
+    // Alternate between the Twitter and the asynchronous Instagram fetch
+    private Callable<URI> execution(MockApiServer mockApiServer, AtomicInteger counter) {
+        return () -> {
+            RunContext runContext = runContextFactory.of(Map.of("flow", Map.of(
+                "id", "loadTest",
+                "namespace", "company.team"
+            )));
+
+            URI posts;
+            if (counter.getAndIncrement() % 2 == 0) {
+                posts = GetTweets.builder()
+                    .access_token("access-token")
+                    .refresh_token("refresh-token")
+                    .expires_at(String.valueOf(Long.MAX_VALUE))
+                    .client_id("client-id")
+                    .numberOfPosts("10")
+                    .baseUrl(mockApiServer.url())
+                    .build()
+                    .run(runContext)
+                    .getUri();
+            } else {
+                posts = GetPosts.builder()
+                    .token("apify_api_token")
+                    .numberOfPosts("3")
+                    .mode(GetPosts.FetchMode.ASYNC)
+                    .pageSize("2")
+                    .baseUrl(mockApiServer.apifyUrl())
+                    .build()
+                    .run(runContext)
+                    .getUri();
+            }
+
+            return SentimentAnalysis.builder()
+                .posts(posts.toString())
+                .api_key("gsk_api_key")
+                .baseUrl(mockApiServer.groqUrl())
+                .build()
+                .run(runContext)
+                .getUri();
+        };
+    }
+}
@@ -0,0 +1,122 @@
+package io.kestra.harness;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Runs the same scenario many times concurrently and measures throughput,
+ * latency percentiles and allocation.
+ * <p>
+ * Allocation is measured on the threads running the scenario, work offloaded
+ * to other threads (e.g. the HTTP client selector) is not accounted for.
+ */
+public final class LoadRunner {
+    private LoadRunner() {
+    }
+
+    public static Report run(int executions, int concurrency, Callable<?> scenario) throws InterruptedException {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long[] latencies = new long[executions];
+        AtomicLong failures = new AtomicLong();
+        AtomicLong allocatedBytes = new AtomicLong();
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcTime();
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> futures = IntStream.range(0, executions)
+                .<Future<?>>mapToObj(index -> executor.submit(() -> {
+                    long allocatedBefore = threadMXBean.getCurrentThreadAllocatedBytes();
+                    long executionStart = System.nanoTime();
+                    try {
+                        scenario.call();
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    } finally {
+                        latencies[index] = System.nanoTime() - executionStart;
+                        allocatedBytes.addAndGet(threadMXBean.getCurrentThreadAllocatedBytes() - allocatedBefore);
+                    }
+                }))
+                .toList();
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    failures.incrementAndGet();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        return new Report(
+            executions,
+            failures.get(),
+            Duration.ofNanos(elapsed),
+            executions / (elapsed / 1_000_000_000d),
+            Duration.ofNanos(percentile(latencies, 0.50)),
+            Duration.ofNanos(percentile(latencies, 0.90)),
+            Duration.ofNanos(percentile(latencies, 0.99)),
+            Duration.ofNanos(latencies[latencies.length - 1]),
+            allocatedBytes.get() / executions,
+            gcCount() - gcCountBefore,
+            Duration.ofMillis(gcTime() - gcTimeBefore)
+        );
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+            .mapToLong(GarbageCollectorMXBean::getCollectionCount)
+            .filter(count -> count > 0)
+            .sum();
+    }
+
+    private static long gcTime() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+            .mapToLong(GarbageCollectorMXBean::getCollectionTime)
+            .filter(time -> time > 0)
+            .sum();
+    }
+
+    public record Report(
+        long executions,
+        long failures,
+        Duration elapsed,
+        double throughput,
+        Duration p50,
+        Duration p90,
+        Duration p99,
+        Duration max,
+        long allocatedBytesPerExecution,
+        long gcCount,
+        Duration gcTime
+    ) {
+        @Override
+        public String toString() {
+            return String.format(
+                "executions=%d failures=%d elapsed=%dms throughput=%.1f/s p50=%dms p90=%dms p99=%dms max=%dms allocated=%.1fKB/execution gc=%d (%dms)",
+                executions, failures, elapsed.toMillis(), throughput, p50.toMillis(), p90.toMillis(), p99.toMillis(),
+                max.toMillis(), allocatedBytesPerExecution / 1024d, gcCount, gcTime.toMillis()
+            );
+        }
+    }
+}
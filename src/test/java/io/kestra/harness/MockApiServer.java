@@ -0,0 +1,312 @@
+package io.kestra.harness;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local HTTP server replaying canned Twitter, Apify and Groq responses, so
+ * that tasks can be tested and load tested offline without credentials.
+ * <p>
+ * The responses live in {@code src/test/resources/recordings}, one file per
+ * endpoint holding the status, headers and body to answer. They are written by
+ * hand after the documented responses of each API, the server only replays
+ * them and has no mode recording the traffic of the real APIs. Latency, server
+ * errors and rate limiting can be injected to exercise retry and resilience
+ * code paths.
+ */
+public class MockApiServer implements AutoCloseable {
+    public static final String TWITTER_PATH = "";
+    public static final String APIFY_PATH = "/v2";
+    public static final String GROQ_PATH = "/openai/v1";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final List<Route> routes = new CopyOnWriteArrayList<>();
+    private final Map<String, LongAdder> hits = new ConcurrentHashMap<>();
+
+    private volatile Duration latency = Duration.ZERO;
+    private volatile Duration jitter = Duration.ZERO;
+    private volatile double errorRate;
+    private volatile double rateLimitRate;
+    private final AtomicReference<Duration> nextDelay = new AtomicReference<>(Duration.ZERO);
+
+    private MockApiServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::handle);
+    }
+
+    /**
+     * Start a server replaying the default recordings of every provider
+     */
+    public static MockApiServer start() throws IOException {
+        MockApiServer mockApiServer = new MockApiServer()
+            .replay("POST", TWITTER_PATH + "/2/oauth2/token", "recordings/twitter/oauth2_token.json")
+            .replay("GET", TWITTER_PATH + "/2/tweets/search/recent", "recordings/twitter/search_recent.json")
+            .replay("POST", APIFY_PATH + "/acts/apify~instagram-hashtag-scraper/run-sync-get-dataset-items", "recordings/apify/dataset_items.json")
+            .replay("POST", APIFY_PATH + "/acts/apify~instagram-hashtag-scraper/runs", "recordings/apify/actor_run_started.json")
+            .replay("GET", APIFY_PATH + "/actor-runs/", "recordings/apify/actor_run_succeeded.json")
+            .replayPaged(APIFY_PATH + "/datasets/", "recordings/apify/dataset_items.json")
+            .replayChat(GROQ_PATH + "/chat/completions", "recordings/groq/chat_completions.json");
+
+        mockApiServer.server.start();
+        return mockApiServer;
+    }
+
+    /**
+     * @return The base URL of the server, to be used as the baseUrl of Twitter tasks
+     */
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public String apifyUrl() {
+        return url() + APIFY_PATH;
+    }
+
+    public String groqUrl() {
+        return url() + GROQ_PATH;
+    }
+
+    /**
+     * Replay a recording for every request matching a method and path prefix
+     */
+    public MockApiServer replay(String method, String pathPrefix, String recording) {
+        routes.add(new Route(method, pathPrefix, load(recording), Mode.REPLAY));
+        return this;
+    }
+
+    /**
+     * Replay a canned JSON array for GET requests, sliced with the offset and
+     * limit query parameters like Apify datasets
+     */
+    public MockApiServer replayPaged(String pathPrefix, String recording) {
+        routes.add(new Route("GET", pathPrefix, load(recording), Mode.PAGED));
+        return this;
+    }
+
+    /**
+     * Replay a canned chat completion for POST requests, answering one of
+     * its results per post of the prompt, in turn, like the model
+     */
+    public MockApiServer replayChat(String pathPrefix, String recording) {
+        routes.add(new Route("POST", pathPrefix, load(recording), Mode.CHAT));
+        return this;
+    }
+
+    /**
+     * Delay every response by a fixed latency plus a uniform random jitter
+     */
+    public MockApiServer latency(Duration latency, Duration jitter) {
+        this.latency = latency;
+        this.jitter = jitter;
+        return this;
+    }
+
+    /**
+     * Delay only the next request received, on top of the latency, e.g. to
+     * make a single response slow
+     */
+    public MockApiServer delayNext(Duration delay) {
+        nextDelay.set(delay);
+        return this;
+    }
+
+    /**
+     * Share of requests answered with a 503
+     */
+    public MockApiServer errorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Share of requests answered with a 429 and a Retry-After header
+     */
+    public MockApiServer rateLimitRate(double rateLimitRate) {
+        this.rateLimitRate = rateLimitRate;
+        return this;
+    }
+
+    /**
+     * @return The number of requests received on paths starting with the prefix
+     */
+    public long hits(String pathPrefix) {
+        return hits.entrySet().stream()
+            .filter(entry -> entry.getKey().startsWith(pathPrefix))
+            .mapToLong(entry -> entry.getValue().sum())
+            .sum();
+    }
+
+    /**
+     * Remove injected faults and forget received requests
+     */
+    public void reset() {
+        latency = Duration.ZERO;
+        jitter = Duration.ZERO;
+        errorRate = 0;
+        rateLimitRate = 0;
+        nextDelay.set(Duration.ZERO);
+        hits.clear();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            hits.computeIfAbsent(path, key -> new LongAdder()).increment();
+            byte[] requestBody = exchange.getRequestBody().readAllBytes();
+
+            sleep();
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (random.nextDouble() < rateLimitRate) {
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                send(exchange, 429, "{\"message\":\"Rate limit reached, please try again later\"}");
+                return;
+            }
+            if (random.nextDouble() < errorRate) {
+                send(exchange, 503, "{\"message\":\"Service unavailable (injected)\"}");
+                return;
+            }
+
+            Route route = routes.stream()
+                .filter(candidate -> candidate.method.equals(exchange.getRequestMethod()) && path.startsWith(candidate.pathPrefix))
+                .max(Comparator.comparingInt(candidate -> candidate.pathPrefix.length()))
+                .orElse(null);
+            if (route == null) {
+                send(exchange, 404, "{\"message\":\"No recording for " + exchange.getRequestMethod() + " " + path + "\"}");
+                return;
+            }
+
+            route.recording.headers.forEach((name, value) -> exchange.getResponseHeaders().add(name, value));
+            JsonNode body = route.recording.body;
+            if (route.mode == Mode.PAGED) {
+                body = page((ArrayNode) body, query(exchange.getRequestURI().getRawQuery()));
+            } else if (route.mode == Mode.CHAT) {
+                body = chat((ObjectNode) body, MAPPER.readTree(requestBody));
+            }
+            send(exchange, route.recording.status, body.isTextual() ? body.asText() : MAPPER.writeValueAsString(body));
+        }
+    }
+
+    private void sleep() {
+        long delay = latency.toMillis() + nextDelay.getAndSet(Duration.ZERO).toMillis();
+        if (!jitter.isZero()) {
+            delay += ThreadLocalRandom.current().nextLong(jitter.toMillis() + 1);
+        }
+        if (delay <= 0) {
+            return;
+        }
+
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static JsonNode page(ArrayNode items, Map<String, String> query) {
+        int offset = Integer.parseInt(query.getOrDefault("offset", "0"));
+        int limit = Integer.parseInt(query.getOrDefault("limit", String.valueOf(items.size())));
+
+        ArrayNode page = MAPPER.createArrayNode();
+        for (int i = offset; i < Math.min(items.size(), offset + limit); i++) {
+            page.add(items.get(i));
+        }
+        return page;
+    }
+
+    // The posts are the JSON array ending the last message of the prompt
+    private static JsonNode chat(ObjectNode completion, JsonNode request) throws IOException {
+        JsonNode messages = request.get("messages");
+        String prompt = messages.get(messages.size() - 1).get("content").asText();
+        int posts = MAPPER.readTree(prompt.substring(prompt.indexOf('['))).size();
+
+        JsonNode message = completion.get("choices").get(0).get("message");
+        ArrayNode recorded = (ArrayNode) MAPPER.readTree(message.get("content").asText());
+        ArrayNode results = MAPPER.createArrayNode();
+        for (int i = 0; i < posts; i++) {
+            results.add(recorded.get(i % recorded.size()));
+        }
+
+        ObjectNode answer = completion.deepCopy();
+        ((ObjectNode) answer.get("choices").get(0).get("message")).put("content", MAPPER.writeValueAsString(results));
+        return answer;
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+
+        for (String parameter : rawQuery.split("&")) {
+            String[] keyValue = parameter.split("=", 2);
+            query.put(keyValue[0], keyValue.length > 1 ? keyValue[1] : "");
+        }
+        return query;
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private static Recording load(String recording) {
+        try (InputStream input = Objects.requireNonNull(
+            MockApiServer.class.getClassLoader().getResourceAsStream(recording), recording)) {
+            return MAPPER.readValue(input, Recording.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private enum Mode {
+        REPLAY,
+        PAGED,
+        CHAT
+    }
+
+    private record Route(String method, String pathPrefix, Recording recording, Mode mode) {
+    }
+
+    private record Recording(int status, Map<String, String> headers, JsonNode body) {
+    }
+}
@@ -0,0 +1,100 @@
+package io.kestra.plugin.history;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import io.kestra.service.HistoryStore;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+
+import jakarta.inject.Inject;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+@MicronautTest
+class AppendHistoryTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Instant START = Instant.parse("2024-11-29T10:00:00Z");
+
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void run() throws Exception {
+        RunContext runContext = runContextFactory.of(ImmutableMap.of());
+        URI posts = put(runContext, List.of(
+            Map.of("text", "Great deals today", "timestamp", START.toString(), "hashtags", List.of("#Deals")),
+            Map.of("text", "Sold out again", "timestamp", START.plusSeconds(60).toString()),
+            "No metadata"));
+        URI results = put(runContext, List.of(
+            Map.of("sentiment", "POSITIVE", "score", 0.8),
+            Map.of("sentiment", "NEGATIVE", "score", 0.2),
+            Map.of("sentiment", "NEUTRAL", "score", 0.5)));
+
+        AppendHistory.Output runOutput = AppendHistory.builder()
+            .directory(directory.toString())
+            .results(results.toString())
+            .posts(posts.toString())
+            .hashtag("#Kestra")
+            .timestamp(START.plusSeconds(120).toString())
+            .build()
+            .run(runContext);
+
+        // Every post for the hashtag of the task, the first one for its own hashtag too
+        assertThat(runOutput.getAppended(), is(4L));
+        assertThat(runOutput.getSkipped(), is(0L));
+
+        HistoryStore store = new HistoryStore(directory);
+        HistoryStore.Bucket kestra = store.query("kestra", START, START.plus(Duration.ofHours(1)),
+            Duration.ofHours(1)).get(0);
+        assertThat(kestra.count(), is(3L));
+        assertThat(kestra.positive(), is(1L));
+        assertThat(kestra.negative(), is(1L));
+        assertThat(kestra.neutral(), is(1L));
+        assertThat(store.query("deals", START, START.plus(Duration.ofHours(1)), Duration.ofHours(1)).get(0)
+            .positive(), is(1L));
+    }
+
+    @Test
+    void refusesMisalignedPosts() throws Exception {
+        RunContext runContext = runContextFactory.of(ImmutableMap.of());
+        URI posts = put(runContext, List.of("First post", "Second post", "Third post"));
+        URI results = put(runContext, List.of(Map.of("sentiment", "POSITIVE", "score", 0.8)));
+
+        AppendHistory task = AppendHistory.builder()
+            .directory(directory.toString())
+            .results(results.toString())
+            .posts(posts.toString())
+            .hashtag("kestra")
+            .build();
+
+        // Nothing is appended when the posts can't be matched to the results
+        assertThrows(IllegalArgumentException.class, () -> task.run(runContext));
+        try (var files = Files.list(directory)) {
+            assertThat(files.noneMatch(path -> path.getFileName().toString().startsWith("segment-")), is(true));
+        }
+    }
+
+    private static URI put(RunContext runContext, Object content) throws IOException {
+        File file = runContext.workingDir().createTempFile().toFile();
+        Files.writeString(file.toPath(), MAPPER.writeValueAsString(content));
+        return runContext.storage().putFile(file);
+    }
+}
@@ -0,0 +1,60 @@
+package io.kestra.plugin.history;
+
+import com.google.common.collect.ImmutableMap;
+import io.kestra.service.HistoryStore;
+import io.kestra.service.SentimentAnalysisApiClient;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+
+import jakarta.inject.Inject;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+@MicronautTest
+class CompactHistoryTest {
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void run() throws Exception {
+        Instant now = Instant.now();
+        HistoryStore store = new HistoryStore(directory, 8);
+        List<HistoryStore.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            // Posts of the last 10 days, one a day
+            entries.add(new HistoryStore.Entry(now.minus(Duration.ofDays(i)), HistoryStore.postHash("post " + i),
+                "kestra", "instagram", "en", SentimentAnalysisApiClient.SentimentResult.Sentiment.NEUTRAL,
+                SentimentAnalysisApiClient.SentimentResult.Tier.LOCAL, 0.5));
+        }
+        // Every post appended twice, e.g. by overlapping fetches
+        store.append(entries);
+        store.append(entries);
+
+        RunContext runContext = runContextFactory.of(ImmutableMap.of());
+        CompactHistory.Output runOutput = CompactHistory.builder()
+            .directory(directory.toString())
+            .retention(Duration.ofDays(5).minusMinutes(1))
+            .build()
+            .run(runContext);
+
+        assertThat(runOutput.getRecordsBefore(), is(20L));
+        assertThat(runOutput.getSegmentsBefore(), is(3));
+        assertThat(runOutput.getRecordsAfter(), is(5L));
+        assertThat(runOutput.getSegmentsAfter(), is(1));
+        assertThat(store.query("kestra", now.minus(Duration.ofDays(10)), now.plusSeconds(1), Duration.ofDays(11))
+            .get(0).count(), is(5L));
+    }
+}
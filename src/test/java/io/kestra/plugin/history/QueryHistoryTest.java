@@ -0,0 +1,67 @@
+package io.kestra.plugin.history;
+
+import com.google.common.collect.ImmutableMap;
+import io.kestra.service.HistoryStore;
+import io.kestra.service.SentimentAnalysisApiClient;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+
+import jakarta.inject.Inject;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+@MicronautTest
+class QueryHistoryTest {
+    private static final Instant START = Instant.parse("2024-11-29T00:00:00Z");
+
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void run() throws Exception {
+        // One post every 10 minutes for 3 hours, one positive post in two
+        List<HistoryStore.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 18; i++) {
+            entries.add(new HistoryStore.Entry(START.plus(Duration.ofMinutes(10L * i)), HistoryStore.postHash("post " + i),
+                "kestra", "twitter", "en",
+                i % 2 == 0 ? SentimentAnalysisApiClient.SentimentResult.Sentiment.POSITIVE
+                    : SentimentAnalysisApiClient.SentimentResult.Sentiment.NEGATIVE,
+                SentimentAnalysisApiClient.SentimentResult.Tier.LLM, i % 2 == 0 ? 1 : 0));
+        }
+        new HistoryStore(directory).append(entries);
+
+        RunContext runContext = runContextFactory.of(ImmutableMap.of());
+        QueryHistory.Output runOutput = QueryHistory.builder()
+            .directory(directory.toString())
+            .hashtag("#Kestra")
+            .from(START.plus(Duration.ofMinutes(30)).toString())
+            .to(START.plus(Duration.ofHours(3)).toString())
+            .interval(Duration.ofHours(1))
+            .build()
+            .run(runContext);
+
+        // Intervals start at from, the partial hours are read record by record
+        assertThat(runOutput.getBuckets().size(), is(3));
+        assertThat(runOutput.getBuckets().get(0).start(), is(START.plus(Duration.ofMinutes(30))));
+        assertThat(runOutput.getBuckets().get(0).count(), is(6L));
+        assertThat(runOutput.getBuckets().get(2).count(), is(3L));
+        assertThat(runOutput.getCount(), is(15L));
+        assertThat(runOutput.getPositive(), is(7L));
+        assertThat(runOutput.getNegative(), is(8L));
+        assertThat(runOutput.getMeanScore(), closeTo(7.0 / 15, 1e-9));
+    }
+}
@@ -1,7 +1,14 @@
 package io.kestra.plugin.instagram;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableMap;
+import io.kestra.harness.MockApiServer;
+import io.kestra.service.FetchCache;
+import io.kestra.service.KeyValueStoreService;
 import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import io.kestra.core.runners.RunContext;
 import io.kestra.core.runners.RunContextFactory;
@@ -9,33 +16,197 @@ import io.kestra.core.runners.RunContextFactory;
 import jakarta.inject.Inject;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
-import java.time.LocalDate;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * This test will only test the main task, this allow you to send any input
- * parameters to your task and test the returning behaviour easily.
+ * parameters to your task and test the returning behaviour easily. Apify is
+ * replaced by a {@link MockApiServer} replaying canned responses.
  */
 @MicronautTest
 class GetPostsTest {
+    private static MockApiServer mockApiServer;
+
     @Inject
     private RunContextFactory runContextFactory;
 
+    @BeforeAll
+    static void startMockApiServer() throws IOException {
+        mockApiServer = MockApiServer.start();
+    }
+
+    @AfterAll
+    static void stopMockApiServer() {
+        mockApiServer.close();
+    }
+
     @Test
     void run() throws Exception {
         RunContext runContext = runContextFactory.of(ImmutableMap.of(
-                "token", "apify_api_p9bfRqx74jUne8bfLV9vyN5gfcuP351aYjXC",
-                "hashtag", "diwali_sale",
-                "number_of_posts", "1"));
+            "token", "apify_api_token",
+            "hashtag", "blackfridaysale"));
 
         GetPosts task = GetPosts.builder()
-                .token("{{ token }}")
-                .hashtag("{{ hashtag }}")
-                .build();
+            .token("{{ token }}")
+            .hashtag("{{ hashtag }}")
+            .numberOfPosts("3")
+            .baseUrl(mockApiServer.apifyUrl())
+            .build();
 
         GetPosts.Output runOutput = task.run(runContext);
-        assertThat(runOutput.getPosts().size(), is(1));
-        assertThat(runOutput.getCurrentDate(), is(LocalDate.now().toString()));
+        assertThat(read(runContext, runOutput).size(), is(3));
+    }
+
+    @Test
+    void runAsync() throws Exception {
+        RunContext runContext = runContextFactory.of(ImmutableMap.of());
+
+        GetPosts task = GetPosts.builder()
+            .token("apify_api_token")
+            .numberOfPosts("3")
+            .mode(GetPosts.FetchMode.ASYNC)
+            .pageSize("2")
+            .memory("1024")
+            .baseUrl(mockApiServer.apifyUrl())
+            .build();
+
+        GetPosts.Output runOutput = task.run(runContext);
+        List<String> posts = read(runContext, runOutput);
+        assertThat(posts.size(), is(3));
+        assertThat(posts.get(1), is("Waited two hours and the deal was already sold out. Never again #blackfridaysale"));
+    }
+
+    @Test
+    void runAsyncPagesUntilShortPage() throws Exception {
+        RunContext runContext = runContextFactory.of(ImmutableMap.of());
+        mockApiServer.reset();
+
+        // The dataset has 3 items: a full page of 2, then a short page of 1
+        // ends the download before numberOfPosts is reached
+        GetPosts.Output runOutput = GetPosts.builder()
+            .token("apify_api_token")
+            .numberOfPosts("10")
+            .mode(GetPosts.FetchMode.ASYNC)
+            .pageSize("2")
+            .baseUrl(mockApiServer.apifyUrl())
+            .build()
+            .run(runContext);
+
+        List<String> posts = read(runContext, runOutput);
+        assertThat(posts.size(), is(3));
+        assertThat(posts.get(0).startsWith("Black Friday is here!"), is(true));
+        assertThat(posts.get(2).startsWith("Nuestra selección"), is(true));
+        // The page after the short one is prefetched at most, never the next ones
+        long pages = mockApiServer.hits(MockApiServer.APIFY_PATH + "/datasets/");
+        assertThat(pages, greaterThanOrEqualTo(2L));
+        assertThat(pages, lessThanOrEqualTo(3L));
+    }
+
+    @Test
+    void rejectsInvalidPageSize() {
+        RunContext runContext = runContextFactory.of(ImmutableMap.of());
+
+        for (String pageSize : List.of("0", "-1")) {
+            GetPosts task = GetPosts.builder()
+                .token("apify_api_token")
+                .numberOfPosts("3")
+                .mode(GetPosts.FetchMode.ASYNC)
+                .pageSize(pageSize)
+                .baseUrl(mockApiServer.apifyUrl())
+                .build();
+
+            IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> task.run(runContext));
+            assertThat(exception.getMessage().startsWith("Invalid pageSize"), is(true));
+        }
+    }
+
+    @Test
+    void concurrentRunsShareOneFetch() throws Exception {
+        mockApiServer.reset();
+        mockApiServer.latency(Duration.ofMillis(200), Duration.ZERO);
+        // Unique hashtag, the KV store outlives the test
+        String hashtag = "cached" + System.nanoTime();
+        try {
+            List<Callable<GetPosts.Output>> runs = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                runs.add(() -> GetPosts.builder()
+                    .token("apify_api_token")
+                    .hashtag(hashtag)
+                    .numberOfPosts("3")
+                    .cacheTtl(Duration.ofHours(1))
+                    .baseUrl(mockApiServer.apifyUrl())
+                    .build()
+                    .run(runContextFactory.of(ImmutableMap.of(
+                        "flow", ImmutableMap.of("id", "fetch", "namespace", "company.team")))));
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(runs.size());
+            List<GetPosts.Output> outputs = new ArrayList<>();
+            try {
+                for (Future<GetPosts.Output> future : executor.invokeAll(runs)) {
+                    outputs.add(future.get());
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+
+            assertThat(mockApiServer.hits(MockApiServer.APIFY_PATH), is(1L));
+            assertThat(outputs.stream().filter(output -> !output.getCached()).count(), is(1L));
+            // Each execution reads its own copy of the file
+            assertThat(outputs.stream().map(GetPosts.Output::getUri).distinct().count(), is(4L));
+            RunContext runContext = runContextFactory.of(ImmutableMap.of());
+            for (GetPosts.Output output : outputs) {
+                assertThat(read(runContext, output).size(), is(3));
+            }
+        } finally {
+            mockApiServer.reset();
+        }
+    }
+
+    @Test
+    void refetchesPurgedFiles() throws Exception {
+        mockApiServer.reset();
+        String hashtag = "purged" + System.nanoTime();
+        RunContext runContext = runContextFactory.of(ImmutableMap.of(
+            "flow", ImmutableMap.of("id", "fetch", "namespace", "company.team")));
+        // Cached by an execution whose files were purged since
+        new KeyValueStoreService(runContext).addKeyValue(
+            FetchCache.key("instagram", hashtag, "3", Duration.ofHours(1), Instant.now()),
+            "kestra:///company/team/fetch/executions/purged/tasks/fetch/posts.ion", Duration.ofHours(1));
+
+        GetPosts.Output runOutput = GetPosts.builder()
+            .token("apify_api_token")
+            .hashtag(hashtag)
+            .numberOfPosts("3")
+            .cacheTtl(Duration.ofHours(1))
+            .baseUrl(mockApiServer.apifyUrl())
+            .build()
+            .run(runContext);
+
+        assertThat(runOutput.getCached(), is(false));
+        assertThat(mockApiServer.hits(MockApiServer.APIFY_PATH), is(1L));
+        assertThat(read(runContext, runOutput).size(), is(3));
+    }
+
+    private static List<String> read(RunContext runContext, GetPosts.Output runOutput) throws IOException {
+        try (InputStream inputStream = runContext.storage().getFile(runOutput.getUri())) {
+            return new ObjectMapper().readValue(inputStream, new TypeReference<>() {
+            });
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,138 @@
+package io.kestra.plugin.matching;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import io.kestra.service.WorkerComponents;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import org.junit.jupiter.api.Test;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+
+import jakarta.inject.Inject;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@MicronautTest
+class MatchKeywordsTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Map<String, List<String>> KEYWORDS = Map.of(
+        "kestra", List.of("kestra", "kestra.io"),
+        "airflow", List.of("airflow", "apache airflow"));
+
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void tagsStringPosts() throws Exception {
+        RunContext runContext = runContextFactory.of(ImmutableMap.of());
+        URI posts = put(runContext, List.of(
+            "Moving from Apache Airflow to Kestra, thanks @kestra_io! https://kestra.io/docs.",
+            "The orchestra played all night",
+            "Ask @someone"));
+
+        MatchKeywords.Output output = MatchKeywords.builder()
+            .posts(posts.toString())
+            .keywords(KEYWORDS)
+            .build()
+            .run(runContext);
+
+        assertThat(output.getTotal(), is(3L));
+        // Whole words only, the orchestra doesn't match
+        assertThat(output.getMatched(), is(1L));
+        assertThat(output.getBrands(), is(Map.of("airflow", 1L, "kestra", 1L)));
+
+        List<Map<String, Object>> tagged = read(runContext, output.getUri());
+        assertThat(tagged.size(), is(3));
+        assertThat(tagged.get(0).get("text"),
+            is("Moving from Apache Airflow to Kestra, thanks @kestra_io! https://kestra.io/docs."));
+        assertThat(tagged.get(0).get("brands"), is(List.of("airflow", "kestra")));
+        assertThat(tagged.get(0).get("mentions"), is(List.of("kestra_io")));
+        assertThat(tagged.get(0).get("urls"), is(List.of("https://kestra.io/docs")));
+        assertThat(tagged.get(1).get("brands"), is(List.of()));
+        assertThat(tagged.get(2).get("mentions"), is(List.of("someone")));
+    }
+
+    @Test
+    void keepsFieldsOfObjectPosts() throws Exception {
+        RunContext runContext = runContextFactory.of(ImmutableMap.of());
+        Map<String, Object> post = new LinkedHashMap<>();
+        post.put("text", "Black friday on kestra with @ourstore and @kestra_io");
+        post.put("source", "instagram");
+        post.put("mentions", List.of("ourstore"));
+        URI posts = put(runContext, List.of(post));
+
+        MatchKeywords.Output output = MatchKeywords.builder()
+            .posts(posts.toString())
+            .keywords(KEYWORDS)
+            .build()
+            .run(runContext);
+
+        Map<String, Object> tagged = read(runContext, output.getUri()).get(0);
+        assertThat(tagged.get("source"), is("instagram"));
+        assertThat(tagged.get("brands"), is(List.of("kestra")));
+        // The mentions of the metadata are kept, the new ones of the text added once
+        assertThat(tagged.get("mentions"), is(List.of("ourstore", "kestra_io")));
+        assertThat(tagged.get("urls"), is(List.of()));
+    }
+
+    @Test
+    void filtersMatchingPosts() throws Exception {
+        RunContext runContext = runContextFactory.of(ImmutableMap.of());
+        URI posts = put(runContext, List.of("airflow dags", "nothing to see", "KESTRA flows"));
+
+        MatchKeywords.Output output = MatchKeywords.builder()
+            .posts(posts.toString())
+            .keywords(MAPPER.writeValueAsString(KEYWORDS))
+            .filter(true)
+            .build()
+            .run(runContext);
+
+        assertThat(output.getTotal(), is(3L));
+        assertThat(output.getMatched(), is(2L));
+        assertThat(read(runContext, output.getUri()).stream().map(tagged -> tagged.get("text")).toList(),
+            is(List.of("airflow dags", "KESTRA flows")));
+    }
+
+    @Test
+    void reusesCompiledDictionaries() throws Exception {
+        RunContext runContext = runContextFactory.of(ImmutableMap.of());
+        ObjectMapper om = WorkerComponents.get().objectMapper();
+        Map<String, List<String>> reordered = new LinkedHashMap<>();
+        reordered.put("airflow", KEYWORDS.get("airflow"));
+        reordered.put("kestra", KEYWORDS.get("kestra"));
+
+        MatchKeywords task = MatchKeywords.builder().posts("unused").keywords(KEYWORDS).build();
+        // The same dictionary in another order, or set by another task, is compiled once
+        assertThat(MatchKeywords.builder().posts("unused").build().matcher(runContext, om, reordered),
+            sameInstance(task.matcher(runContext, om, KEYWORDS)));
+        // Other options compile another matcher
+        assertThat(MatchKeywords.builder().posts("unused").caseSensitive(true).build()
+            .matcher(runContext, om, KEYWORDS), not(sameInstance(task.matcher(runContext, om, KEYWORDS))));
+    }
+
+    private static URI put(RunContext runContext, Object content) throws IOException {
+        File file = runContext.workingDir().createTempFile().toFile();
+        Files.writeString(file.toPath(), MAPPER.writeValueAsString(content));
+        return runContext.storage().putFile(file);
+    }
+
+    private static List<Map<String, Object>> read(RunContext runContext, URI uri) throws IOException {
+        try (InputStream inputStream = runContext.storage().getFile(uri)) {
+            return MAPPER.readValue(inputStream, new TypeReference<>() {
+            });
+        }
+    }
+}
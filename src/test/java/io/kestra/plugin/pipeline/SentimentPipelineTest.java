@@ -0,0 +1,99 @@
+package io.kestra.plugin.pipeline;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import io.kestra.harness.MockApiServer;
+import io.kestra.plugin.sentiment_analysis.SentimentAnalysis;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+
+import jakarta.inject.Inject;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Twitter, Apify and Groq are replaced by a {@link MockApiServer} replaying
+ * canned responses.
+ */
+@MicronautTest
+class SentimentPipelineTest {
+    private static MockApiServer mockApiServer;
+
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @BeforeAll
+    static void startMockApiServer() throws IOException {
+        mockApiServer = MockApiServer.start();
+    }
+
+    @AfterAll
+    static void stopMockApiServer() {
+        mockApiServer.close();
+    }
+
+    @Test
+    void twitter() throws Exception {
+        RunContext runContext = runContextFactory.of(ImmutableMap.of());
+
+        SentimentPipeline.Output runOutput = SentimentPipeline.builder()
+            .source(SentimentPipeline.Source.TWITTER)
+            .access_token("access_token")
+            .numberOfPosts("25")
+            .engine(SentimentAnalysis.Engine.LOCAL)
+            .twitterBaseUrl(mockApiServer.url())
+            .build()
+            .run(runContext);
+
+        // The recording always answers the same 10 tweets, the next pages are duplicates
+        assertThat(runOutput.getFetched(), is(25L));
+        assertThat(runOutput.getDuplicates(), is(15L));
+        assertThat(runOutput.getAggregates().getSampleSize(), is(10L));
+        assertThat(read(runContext, runOutput.getUri()).size(), is(10));
+    }
+
+    @Test
+    void instagram() throws Exception {
+        RunContext runContext = runContextFactory.of(ImmutableMap.of());
+
+        SentimentPipeline.Output runOutput = SentimentPipeline.builder()
+            .source(SentimentPipeline.Source.INSTAGRAM)
+            .token("apify_api_token")
+            .numberOfPosts("3")
+            .pageSize("2")
+            .api_key("gsk_api_key")
+            .batchSize("2")
+            .concurrency("2")
+            .apifyBaseUrl(mockApiServer.apifyUrl())
+            .baseUrl(mockApiServer.groqUrl())
+            .build()
+            .run(runContext);
+
+        assertThat(runOutput.getFetched(), is(3L));
+        List<Map<String, Object>> results = read(runContext, runOutput.getUri());
+        assertThat(results.size(), is(3));
+        // Results keep the order of the posts although batches run concurrently
+        assertThat((String) results.get(1).get("text"), startsWith("Waited two hours"));
+        assertThat(results.get(1).get("tier"), is("LLM"));
+    }
+
+    private static List<Map<String, Object>> read(RunContext runContext, URI uri) throws IOException {
+        try (InputStream inputStream = runContext.storage().getFile(uri)) {
+            return new ObjectMapper().readValue(inputStream, new TypeReference<>() {
+            });
+        }
+    }
+}
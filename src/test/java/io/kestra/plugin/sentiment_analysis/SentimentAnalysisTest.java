@@ -0,0 +1,171 @@
+package io.kestra.plugin.sentiment_analysis;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import io.kestra.harness.MockApiServer;
+import io.kestra.service.BatchCheckpoint;
+import io.kestra.service.KeyValueStoreService;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+
+import jakarta.inject.Inject;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This test will only test the main task, this allow you to send any input
+ * parameters to your task and test the returning behaviour easily. Groq is
+ * replaced by a {@link MockApiServer} replaying a canned response.
+ */
+@MicronautTest
+class SentimentAnalysisTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static MockApiServer mockApiServer;
+
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @BeforeAll
+    static void startMockApiServer() throws IOException {
+        mockApiServer = MockApiServer.start();
+    }
+
+    @AfterAll
+    static void stopMockApiServer() {
+        mockApiServer.close();
+    }
+
+    @Test
+    void run() throws Exception {
+        RunContext runContext = runContextFactory.of(ImmutableMap.of());
+        URI posts = put(runContext, List.of("This product is very good", "I hate this product"));
+
+        SentimentAnalysis.Output runOutput = SentimentAnalysis.builder()
+            .posts(posts.toString())
+            .api_key("gsk_api_key")
+            .baseUrl(mockApiServer.groqUrl())
+            .build()
+            .run(runContext);
+
+        // One result per post, the canned ones in turn
+        assertThat(read(runContext, runOutput.getUri()).size(), is(2));
+        assertThat(runOutput.getAggregates().getSampleSize(), is(2L));
+        assertThat(runOutput.getAggregates().getSentiments().get("POSITIVE").getCount(), is(1L));
+        assertThat(runOutput.getAggregates().getSentiments().get("NEUTRAL").getCount(), is(1L));
+    }
+
+    @Test
+    void cascade() throws Exception {
+        RunContext runContext = runContextFactory.of(ImmutableMap.of());
+        URI posts = put(runContext, List.of("Great deal, love it, best gift!", "I hate this product", "Just landed"));
+
+        mockApiServer.reset();
+        SentimentAnalysis.Output runOutput = SentimentAnalysis.builder()
+            .posts(posts.toString())
+            .api_key("gsk_api_key")
+            .engine(SentimentAnalysis.Engine.CASCADE)
+            .baseUrl(mockApiServer.groqUrl())
+            .build()
+            .run(runContext);
+
+        // Only the two posts the lexicon is unsure about are sent to the model
+        assertThat(mockApiServer.hits(MockApiServer.GROQ_PATH), is(1L));
+        List<Map<String, Object>> results = read(runContext, runOutput.getUri());
+        assertThat(results.size(), is(3));
+        assertThat(results.get(0).get("tier"), is("LOCAL"));
+        assertThat(results.get(0).get("sentiment"), is("POSITIVE"));
+        assertThat(results.get(1).get("tier"), is("LLM"));
+        assertThat(results.get(2).get("tier"), is("LLM"));
+        assertThat(runOutput.getAggregates().getTiers(), is(Map.of("LOCAL", 1L, "LLM", 2L)));
+    }
+
+    @Test
+    void local() throws Exception {
+        RunContext runContext = runContextFactory.of(ImmutableMap.of());
+        URI posts = put(runContext, List.of("This product is very good", "I hate this product"));
+
+        mockApiServer.reset();
+        SentimentAnalysis.Output runOutput = SentimentAnalysis.builder()
+            .posts(posts.toString())
+            .engine(SentimentAnalysis.Engine.LOCAL)
+            .baseUrl(mockApiServer.groqUrl())
+            .build()
+            .run(runContext);
+
+        assertThat(mockApiServer.hits(MockApiServer.GROQ_PATH), is(0L));
+        assertThat(runOutput.getAggregates().getSentiments().get("POSITIVE").getCount(), is(1L));
+        assertThat(runOutput.getAggregates().getSentiments().get("NEGATIVE").getCount(), is(1L));
+    }
+
+    @Test
+    void resumeFromCheckpoint() throws Exception {
+        RunContext runContext = runContextFactory.of(ImmutableMap.of(
+            "flow", ImmutableMap.of("id", "sentiment", "namespace", "company.team"),
+            "execution", ImmutableMap.of("id", "resumeExecution"),
+            "taskrun", ImmutableMap.of("id", "resumeTaskRun")));
+        URI posts = put(runContext, List.of("post1", "post2", "post3"));
+
+        // A previous attempt analyzed the first two batches before failing
+        Map<String, Object> negative = Map.of("sentiment", "NEGATIVE", "score", 0.1, "positive_word_count", 0,
+            "negative_word_count", 1);
+        BatchCheckpoint batchCheckpoint = BatchCheckpoint.of(runContext, "sentiment_analysis").orElseThrow();
+        BatchCheckpoint.State state = batchCheckpoint.load(posts.toString(), 1);
+        batchCheckpoint.commit(state, 0, 1, put(runContext, List.of(negative)).toString());
+        batchCheckpoint.commit(state, 1, 2, put(runContext, List.of(negative)).toString());
+        KeyValueStoreService kvService = new KeyValueStoreService(runContext);
+        String key = "checkpoint_sentiment_analysis_resumeExecution_resumeTaskRun";
+        // The state only counts the batches, each one has a key of its own
+        assertThat(MAPPER.readTree(kvService.getKeyValue(key)).get("batchCount").asInt(), is(2));
+        assertThat(kvService.getKeyValue(key + "_batch_1"), is(notNullValue()));
+
+        mockApiServer.reset();
+        SentimentAnalysis.Output runOutput = SentimentAnalysis.builder()
+            .posts(posts.toString())
+            .api_key("gsk_api_key")
+            .batchSize("1")
+            .checkpoint(true)
+            .baseUrl(mockApiServer.groqUrl())
+            .build()
+            .run(runContext);
+
+        // Only the last batch is sent to the model
+        assertThat(mockApiServer.hits(MockApiServer.GROQ_PATH), is(1L));
+        List<Map<String, Object>> results = read(runContext, runOutput.getUri());
+        assertThat(results.size(), is(3));
+        assertThat(results.get(0).get("sentiment"), is("NEGATIVE"));
+        assertThat(results.get(1).get("sentiment"), is("NEGATIVE"));
+        assertThat(results.get(2).get("tier"), is("LLM"));
+        assertThat(kvService.getKeyValue(key), is(nullValue()));
+        assertThat(kvService.getKeyValue(key + "_batch_0"), is(nullValue()));
+        assertThat(kvService.getKeyValue(key + "_batch_2"), is(nullValue()));
+    }
+
+    private static URI put(RunContext runContext, Object content) throws IOException {
+        File file = runContext.workingDir().createTempFile().toFile();
+        Files.writeString(file.toPath(), MAPPER.writeValueAsString(content));
+        return runContext.storage().putFile(file);
+    }
+
+    private static List<Map<String, Object>> read(RunContext runContext, URI uri) throws IOException {
+        try (InputStream inputStream = runContext.storage().getFile(uri)) {
+            return MAPPER.readValue(inputStream, new TypeReference<>() {
+            });
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package io.kestra.plugin.sharding;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import org.junit.jupiter.api.Test;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+
+import jakarta.inject.Inject;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Split posts into shards, then merge per shard results back in order.
+ */
+@MicronautTest
+class SplitPostsTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void splitThenMerge() throws Exception {
+        RunContext runContext = runContextFactory.of(ImmutableMap.of());
+        URI posts = put(runContext, List.of("post1", "post2", "post3", "post4", "post5"));
+
+        SplitPosts.Output split = SplitPosts.builder()
+            .posts(posts.toString())
+            .rows("2")
+            .build()
+            .run(runContext);
+
+        assertThat(split.getSize(), is(5L));
+        assertThat(split.getUris().size(), is(3));
+        assertThat(read(runContext, split.getUris().get(2), new TypeReference<List<String>>() {
+        }), is(List.of("post5")));
+
+        // Fake one result per post, keyed by shard like the outputs of a ForEach
+        Map<String, Object> results = new LinkedHashMap<>();
+        for (URI shard : split.getUris().reversed()) {
+            List<Map<String, Object>> shardResults = new ArrayList<>();
+            for (String post : read(runContext, shard, new TypeReference<List<String>>() {
+            })) {
+                shardResults.add(Map.of("sentiment", "POSITIVE", "score", Double.parseDouble(post.substring(4)) / 10,
+                    "positive_word_count", 1, "negative_word_count", 0));
+            }
+            results.put(shard.toString(), Map.of("uri", put(runContext, shardResults).toString()));
+        }
+
+        MergeResults.Output merged = MergeResults.builder()
+            .results(MAPPER.writeValueAsString(results))
+            .shards(MAPPER.writeValueAsString(split.getUris()))
+            .build()
+            .run(runContext);
+
+        List<Map<String, Object>> mergedResults = read(runContext, merged.getUri(), new TypeReference<>() {
+        });
+        assertThat(mergedResults.stream().map(result -> result.get("score")).toList(), is(List.of(0.1, 0.2, 0.3, 0.4, 0.5)));
+        assertThat(merged.getAggregates().getSampleSize(), is(5L));
+        assertThat(merged.getAggregates().getSentiments().get("POSITIVE").getCount(), is(5L));
+    }
+
+    @Test
+    void splitIntoPartitions() throws Exception {
+        RunContext runContext = runContextFactory.of(ImmutableMap.of());
+        URI posts = put(runContext, List.of("post1", "post2", "post3", "post4", "post5"));
+
+        SplitPosts.Output split = SplitPosts.builder()
+            .posts(posts.toString())
+            .partitions("2")
+            .build()
+            .run(runContext);
+
+        assertThat(split.getUris().size(), is(2));
+    }
+
+    private static URI put(RunContext runContext, Object content) throws IOException {
+        File file = runContext.workingDir().createTempFile().toFile();
+        Files.writeString(file.toPath(), MAPPER.writeValueAsString(content));
+        return runContext.storage().putFile(file);
+    }
+
+    private static <T> T read(RunContext runContext, URI uri, TypeReference<T> type) throws IOException {
+        try (InputStream inputStream = runContext.storage().getFile(uri)) {
+            return MAPPER.readValue(inputStream, type);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package io.kestra.plugin.trends;
+
+import com.google.common.collect.ImmutableMap;
+import io.kestra.harness.MockApiServer;
+import io.kestra.plugin.instagram.GetPosts;
+import io.kestra.service.TrendWindow;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+
+import jakarta.inject.Inject;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.IOException;
+
+/**
+ * Apify is replaced by a {@link MockApiServer} replaying canned responses.
+ */
+@MicronautTest
+class TrendingTagsTest {
+    private static MockApiServer mockApiServer;
+
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @BeforeAll
+    static void startMockApiServer() throws IOException {
+        mockApiServer = MockApiServer.start();
+    }
+
+    @AfterAll
+    static void stopMockApiServer() {
+        mockApiServer.close();
+    }
+
+    @Test
+    void run() throws Exception {
+        RunContext runContext = runContextFactory.of(ImmutableMap.of(
+            "flow", ImmutableMap.of("id", "trends", "namespace", "company.team")));
+
+        GetPosts.Output posts = GetPosts.builder()
+            .token("apify_api_token")
+            .numberOfPosts("3")
+            .includeMetadata(true)
+            .baseUrl(mockApiServer.apifyUrl())
+            .build()
+            .run(runContext);
+
+        TrendingTags task = TrendingTags.builder()
+            .posts(posts.getUri().toString())
+            .stateKey("trendingTagsTest")
+            .topK("2")
+            .build();
+
+        TrendingTags.Output runOutput = task.run(runContext);
+        assertThat(runOutput.getCounted(), is(3L));
+        TrendWindow.Trend top = runOutput.getHashtags().get(0);
+        assertThat(top.tag(), is("blackfridaysale"));
+        assertThat(top.count(), is(3L));
+        // The latest bucket is the 10:00 one, with a single post
+        assertThat(top.latest(), is(1L));
+        assertThat(runOutput.getHashtags().size(), is(2));
+        assertThat(runOutput.getMentions().get(0).tag(), is("ourstore"));
+        assertThat(runOutput.getCooccurrences().size(), is(2));
+        assertThat(runOutput.getCooccurrences().get(0).first(), is("blackfridaysale"));
+
+        // The posts were counted by the first run, the window is restored as is
+        TrendingTags.Output rerunOutput = task.run(runContext);
+        assertThat(rerunOutput.getCounted(), is(0L));
+        assertThat(rerunOutput.getHashtags().get(0).count(), is(3L));
+    }
+}
@@ -1,7 +1,13 @@
 package io.kestra.plugin.twitter;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableMap;
+import io.kestra.harness.MockApiServer;
+import io.kestra.service.KeyValueStoreService;
 import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import io.kestra.core.runners.RunContext;
 import io.kestra.core.runners.RunContextFactory;
@@ -11,28 +17,75 @@ import jakarta.inject.Inject;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 
-import java.time.LocalDate;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
 
 /**
  * This test will only test the main task, this allow you to send any input
- * parameters to your task and test the returning behaviour easily.
+ * parameters to your task and test the returning behaviour easily. Twitter is
+ * replaced by a {@link MockApiServer} replaying canned responses.
  */
 @MicronautTest
 class GetTweetsTest {
+    private static MockApiServer mockApiServer;
+
     @Inject
     private RunContextFactory runContextFactory;
 
+    @BeforeAll
+    static void startMockApiServer() throws IOException {
+        mockApiServer = MockApiServer.start();
+    }
+
+    @AfterAll
+    static void stopMockApiServer() {
+        mockApiServer.close();
+    }
+
     @Test
     void run() throws Exception {
-        RunContext runContext = runContextFactory.of(ImmutableMap.of("variable",
-                "https://gullak-seven.vercel.app"));
+        RunContext runContext = runContextFactory.of(ImmutableMap.of(
+            "flow", ImmutableMap.of("id", "twitterFetch", "namespace", "company.team"),
+            "hashtag", "blackfriday"));
+
+        GetTweets task = GetTweets.builder()
+            .access_token("access-token")
+            .refresh_token("refresh-token")
+            .expires_at(String.valueOf(Long.MAX_VALUE))
+            .client_id("client-id")
+            .hashtag("{{ hashtag }}")
+            .numberOfPosts("10")
+            .baseUrl(mockApiServer.url())
+            .build();
+
+        GetTweets.Output runOutput = task.run(runContext);
+        assertThat(read(runContext, runOutput).size(), is(10));
+    }
+
+    @Test
+    void refreshExpiredToken() throws Exception {
+        RunContext runContext = runContextFactory.of(ImmutableMap.of(
+            "flow", ImmutableMap.of("id", "twitterFetch", "namespace", "company.team")));
 
         GetTweets task = GetTweets.builder()
-                .url("{{ variable }}")
-                .build();
+            .access_token("access-token")
+            .refresh_token("refresh-token")
+            .expires_at("0")
+            .client_id("client-id")
+            .numberOfPosts("3")
+            .baseUrl(mockApiServer.url())
+            .build();
 
         GetTweets.Output runOutput = task.run(runContext);
-        assertThat(runOutput.getPosts().size(), is(10));
-        assertThat(runOutput.getCurrentDate(), is(LocalDate.now().toString()));
+        assertThat(read(runContext, runOutput).size(), is(3));
+        assertThat(new KeyValueStoreService(runContext).getKeyValue("twitter_access_token"), is("bW9jay1hY2Nlc3MtdG9rZW4"));
+    }
+
+    private static List<String> read(RunContext runContext, GetTweets.Output runOutput) throws IOException {
+        try (InputStream inputStream = runContext.storage().getFile(runOutput.getUri())) {
+            return new ObjectMapper().readValue(inputStream, new TypeReference<>() {
+            });
+        }
     }
-}
\ No newline at end of file
+}
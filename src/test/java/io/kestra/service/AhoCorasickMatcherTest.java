@@ -0,0 +1,65 @@
+package io.kestra.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+class AhoCorasickMatcherTest {
+    private static final Map<String, List<String>> DICTIONARY = new LinkedHashMap<>();
+
+    static {
+        DICTIONARY.put("kestra", List.of("kestra", "Kestra.io", "@kestra_io"));
+        DICTIONARY.put("airflow", List.of("airflow", "apache airflow"));
+        DICTIONARY.put("apache", List.of("apache", "he"));
+    }
+
+    @Test
+    void matchesOverlappingKeywordsOnce() {
+        AhoCorasickMatcher matcher = AhoCorasickMatcher.compile(DICTIONARY, false, true);
+        AhoCorasickMatcher.Scratch scratch = matcher.newScratch();
+
+        assertThat(brands(matcher, scratch, "Moving from Apache Airflow to KESTRA.io, kestra rocks!"),
+            containsInAnyOrder("apache", "airflow", "kestra"));
+        assertThat(brands(matcher, scratch, "he said @kestra_io"), containsInAnyOrder("apache", "kestra"));
+        assertThat(brands(matcher, scratch, null), is(empty()));
+    }
+
+    @Test
+    void wholeWords() {
+        AhoCorasickMatcher.Scratch scratch;
+
+        AhoCorasickMatcher wholeWords = AhoCorasickMatcher.compile(DICTIONARY, false, true);
+        scratch = wholeWords.newScratch();
+        assertThat(brands(wholeWords, scratch, "an orchestra ushers"), is(empty()));
+
+        AhoCorasickMatcher substrings = AhoCorasickMatcher.compile(DICTIONARY, false, false);
+        scratch = substrings.newScratch();
+        assertThat(brands(substrings, scratch, "an orchestra ushers"), containsInAnyOrder("kestra", "apache"));
+    }
+
+    @Test
+    void caseSensitive() {
+        AhoCorasickMatcher matcher = AhoCorasickMatcher.compile(DICTIONARY, true, true);
+        AhoCorasickMatcher.Scratch scratch = matcher.newScratch();
+
+        assertThat(brands(matcher, scratch, "KESTRA and Kestra.io"), containsInAnyOrder("kestra"));
+        assertThat(brands(matcher, scratch, "KESTRA"), is(empty()));
+    }
+
+    private static List<String> brands(AhoCorasickMatcher matcher, AhoCorasickMatcher.Scratch scratch, String text) {
+        List<String> brands = new ArrayList<>();
+        int found = matcher.match(text, scratch);
+        for (int i = 0; i < found; i++) {
+            brands.add(matcher.brand(scratch.get(i)));
+        }
+        return brands;
+    }
+}
@@ -0,0 +1,81 @@
+package io.kestra.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.List;
+
+class CircuitBreakerTest {
+    @Test
+    void opensOnFailureRateThenRecovers() throws InterruptedException {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", 10, 4, 0.5, Duration.ofMillis(50));
+
+        circuitBreaker.onSuccess();
+        circuitBreaker.onFailure();
+        circuitBreaker.onSuccess();
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+
+        circuitBreaker.onFailure();
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertThat(circuitBreaker.tryAcquire(), is(false));
+
+        Thread.sleep(60);
+        assertThat(circuitBreaker.tryAcquire(), is(true));
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+        // Only one trial call while half open
+        assertThat(circuitBreaker.tryAcquire(), is(false));
+
+        circuitBreaker.onSuccess();
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    void fallsBackWhileOpen() throws Exception {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("fallback", 10, 1, 0.5, Duration.ofMinutes(1));
+        circuitBreaker.onFailure();
+
+        SentimentEngine failing = posts -> {
+            throw new IOException("should not be called");
+        };
+        CircuitBreakingSentimentEngine engine = new CircuitBreakingSentimentEngine(failing, circuitBreaker,
+            new LexiconSentimentEngine());
+
+        SentimentAnalysisApiClient.SentimentResult result = engine
+            .analyzeSentiment(List.of("I love this great deal")).get(0);
+        assertThat(result.getSentiment(), is(SentimentAnalysisApiClient.SentimentResult.Sentiment.POSITIVE));
+    }
+
+    @Test
+    void countsOnlyRemoteFailures() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("rejected", 10, 1, 0.5, Duration.ofMinutes(1));
+
+        // Rejected requests and unusable answers leave the circuit closed
+        for (IOException error : List.of(new ApiException(401, "API Error: Invalid API Key"),
+            new ApiException(400, "API Error: Bad request"),
+            new InvalidResponseException("Invalid response, 1 sentiment results for 2 posts"))) {
+            CircuitBreakingSentimentEngine engine = new CircuitBreakingSentimentEngine(posts -> {
+                throw error;
+            }, circuitBreaker, null);
+            assertThrows(IOException.class, () -> engine.analyzeSentiment(List.of("post")));
+            assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+        }
+
+        // Transport errors, server errors and exhausted rate limits open it
+        for (IOException error : List.of(new ConnectException("Connection refused"),
+            new ApiException(503, "API Error: Service unavailable"),
+            new ApiException(429, "API Error: Rate limit reached"))) {
+            CircuitBreaker failing = new CircuitBreaker("failing", 10, 1, 0.5, Duration.ofMinutes(1));
+            CircuitBreakingSentimentEngine engine = new CircuitBreakingSentimentEngine(posts -> {
+                throw error;
+            }, failing, null);
+            assertThrows(IOException.class, () -> engine.analyzeSentiment(List.of("post")));
+            assertThat(failing.getState(), is(CircuitBreaker.State.OPEN));
+        }
+    }
+}
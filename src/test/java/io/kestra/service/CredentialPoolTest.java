@@ -0,0 +1,52 @@
+package io.kestra.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.time.Duration;
+import java.util.List;
+
+class CredentialPoolTest {
+    @Test
+    void spreadsRequestsOverKeys() throws InterruptedException {
+        CredentialPool credentialPool = new CredentialPool("test", List.of("key-1", "key-2", "key-3"));
+
+        for (int i = 0; i < 9; i++) {
+            credentialPool.acquire();
+        }
+
+        credentialPool.usage().values().forEach(usage -> assertThat(usage.getRequests(), is(3L)));
+    }
+
+    @Test
+    void prefersLeastRecentlyLimitedKeys() throws InterruptedException {
+        CredentialPool credentialPool = new CredentialPool("test", List.of("key-1", "key-2"));
+
+        CredentialPool.Credential first = credentialPool.acquire();
+        credentialPool.onRateLimited(first, Duration.ofMinutes(1));
+        // The limited key is skipped while cooling down
+        for (int i = 0; i < 3; i++) {
+            assertThat(credentialPool.acquire().getKey(), is("key-2"));
+        }
+
+        CredentialPool.Credential second = credentialPool.acquire();
+        credentialPool.onRateLimited(second, Duration.ZERO);
+        credentialPool.onRateLimited(first, Duration.ZERO);
+        // Both are available again, the one limited the longest time ago goes first
+        assertThat(credentialPool.acquire().getKey(), is("key-2"));
+        assertThat(credentialPool.usage().get("...ey-1").getRateLimited(), is(2L));
+    }
+
+    @Test
+    void waitsForCooldownWhenAllKeysAreLimited() throws InterruptedException {
+        CredentialPool credentialPool = new CredentialPool("test", List.of("key-1"));
+
+        credentialPool.onRateLimited(credentialPool.acquire(), Duration.ofMillis(100));
+        long start = System.nanoTime();
+        credentialPool.acquire();
+
+        assertThat(System.nanoTime() - start >= Duration.ofMillis(90).toNanos(), is(true));
+    }
+}
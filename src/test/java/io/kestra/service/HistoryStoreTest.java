@@ -0,0 +1,205 @@
+package io.kestra.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.anyOf;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+class HistoryStoreTest {
+    private static final Instant START = Instant.parse("2024-11-29T00:00:00Z");
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void aggregatesWindows() throws IOException {
+        // Segments of 50 records, so that the hours span several of them
+        HistoryStore store = new HistoryStore(directory, 50);
+        List<HistoryStore.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 240; i++) {
+            // One post every minute for 4 hours, alternating hashtags, one positive post in three
+            entries.add(entry(START.plus(Duration.ofMinutes(i)), "post " + i, i % 2 == 0 ? "kestra" : "airflow",
+                    i % 3 == 0 ? SentimentAnalysisApiClient.SentimentResult.Sentiment.POSITIVE
+                            : SentimentAnalysisApiClient.SentimentResult.Sentiment.NEUTRAL,
+                    i % 3 == 0 ? 1 : 0));
+        }
+        assertThat(store.append(entries.subList(0, 100)), is(100L));
+        assertThat(store.append(entries.subList(100, 240)), is(140L));
+
+        List<HistoryStore.Bucket> hourly = store.query("kestra", START, START.plus(Duration.ofHours(4)),
+                Duration.ofHours(1));
+        assertThat(hourly.size(), is(4));
+        for (HistoryStore.Bucket bucket : hourly) {
+            assertThat(bucket.count(), is(30L));
+            assertThat(bucket.positive(), is(10L));
+            assertThat(bucket.meanScore(), closeTo(1.0 / 3, 1e-9));
+        }
+
+        // Windows not aligned on hours read the records of the partial hours
+        List<HistoryStore.Bucket> unaligned = store.query("kestra", START.plus(Duration.ofMinutes(30)),
+                START.plus(Duration.ofMinutes(150)), Duration.ofMinutes(45));
+        assertThat(unaligned.size(), is(3));
+        assertThat(unaligned.get(0).count(), is(23L));
+        assertThat(unaligned.get(0).start(), is(START.plus(Duration.ofMinutes(30))));
+        assertThat(unaligned.get(2).count(), is(15L));
+
+        assertThat(store.query("unknown", START, START.plus(Duration.ofHours(1)), Duration.ofHours(1)).get(0).count(),
+                is(0L));
+    }
+
+    @Test
+    void rebuildsMissingIndex() throws IOException {
+        HistoryStore store = new HistoryStore(directory);
+        store.append(List.of(
+                entry(START, "a", "kestra", SentimentAnalysisApiClient.SentimentResult.Sentiment.NEGATIVE, -1),
+                entry(START.plusSeconds(60), "b", "kestra",
+                        SentimentAnalysisApiClient.SentimentResult.Sentiment.POSITIVE, 1)));
+        Files.delete(directory.resolve("segment-000001.idx"));
+
+        HistoryStore.Bucket bucket = new HistoryStore(directory)
+                .query("kestra", START, START.plus(Duration.ofHours(1)), Duration.ofHours(1)).get(0);
+        assertThat(bucket.count(), is(2L));
+        assertThat(bucket.negative(), is(1L));
+        assertThat(bucket.positive(), is(1L));
+    }
+
+    @Test
+    void compactsDuplicatesAndExpiredRecords() throws IOException {
+        HistoryStore store = new HistoryStore(directory, 4);
+        for (int run = 0; run < 3; run++) {
+            // The same posts are appended by every run
+            List<HistoryStore.Entry> entries = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                entries.add(entry(START.plus(Duration.ofHours(i)), "post " + i, "kestra",
+                        SentimentAnalysisApiClient.SentimentResult.Sentiment.POSITIVE, 1));
+            }
+            store.append(entries);
+        }
+
+        HistoryStore.Compaction compaction = store.compact(START.plus(Duration.ofHours(1)));
+        assertThat(compaction.recordsBefore(), is(15L));
+        assertThat(compaction.segmentsBefore(), is(4));
+        assertThat(compaction.recordsAfter(), is(4L));
+        assertThat(compaction.segmentsAfter(), is(1));
+
+        List<HistoryStore.Bucket> buckets = store.query("kestra", START, START.plus(Duration.ofHours(5)),
+                Duration.ofHours(1));
+        assertThat(buckets.get(0).count(), is(0L));
+        assertThat(buckets.get(1).count(), is(1L));
+        assertThat(buckets.get(4).count(), is(1L));
+
+        // Appends continue after the compacted segments
+        store.append(List.of(entry(START.plus(Duration.ofHours(4)), "post 5", "kestra",
+                SentimentAnalysisApiClient.SentimentResult.Sentiment.POSITIVE, 1)));
+        assertThat(store.query("kestra", START, START.plus(Duration.ofHours(5)), Duration.ofHours(5)).get(0).count(),
+                is(5L));
+    }
+
+    @Test
+    void compactsSegmentBySegment() throws IOException {
+        // Segments of 10 records, every one of them holding the three hashtags
+        // and their hours out of order
+        HistoryStore store = new HistoryStore(directory, 10);
+        List<String> hashtags = List.of("kestra", "airflow", "dagster");
+        List<HistoryStore.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            entries.add(entry(START.plus(Duration.ofMinutes(3L * (59 - i))), "post " + i, hashtags.get(i % 3),
+                    SentimentAnalysisApiClient.SentimentResult.Sentiment.POSITIVE, 1));
+        }
+        for (int run = 0; run < 2; run++) {
+            store.append(entries.subList(0, 30));
+            store.append(entries.subList(30, 60));
+        }
+        // The same post in another hour isn't a duplicate
+        store.append(List.of(entry(START.plus(Duration.ofHours(5)), "post 0", "kestra",
+                SentimentAnalysisApiClient.SentimentResult.Sentiment.POSITIVE, 1)));
+
+        HistoryStore.Compaction compaction = store.compact(null);
+        assertThat(compaction.recordsBefore(), is(121L));
+        assertThat(compaction.segmentsBefore(), is(13));
+        assertThat(compaction.recordsAfter(), is(61L));
+        assertThat(compaction.segmentsAfter(), is(7));
+
+        List<HistoryStore.Bucket> buckets = store.query("kestra", START, START.plus(Duration.ofHours(6)),
+                Duration.ofHours(1));
+        assertThat(buckets.stream().mapToLong(HistoryStore.Bucket::count).sum(), is(21L));
+        assertThat(buckets.get(5).count(), is(1L));
+        assertThat(store.query("dagster", START, START.plus(Duration.ofHours(3)), Duration.ofHours(3)).get(0)
+                .count(), is(20L));
+
+        // The sorted runs are removed once merged
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.noneMatch(path -> path.toString().endsWith(".run")), is(true));
+        }
+    }
+
+    @Test
+    void queriesWhileCompacting() throws Exception {
+        // Every post stored twice, so that a query counts either all the
+        // records before the compaction or the deduplicated ones after it
+        HistoryStore store = new HistoryStore(directory, 100);
+        List<HistoryStore.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            entries.add(entry(START.plus(Duration.ofSeconds(i)), "post " + i, "kestra",
+                    SentimentAnalysisApiClient.SentimentResult.Sentiment.POSITIVE, 1));
+        }
+        store.append(entries);
+        store.append(entries);
+
+        AtomicBoolean compacting = new AtomicBoolean(true);
+        List<Long> totals = new CopyOnWriteArrayList<>();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> queries = executor.submit(() -> {
+                do {
+                    totals.add(store.query("kestra", START, START.plus(Duration.ofHours(3)), Duration.ofHours(3))
+                            .get(0).count());
+                } while (compacting.get());
+                return null;
+            });
+
+            HistoryStore.Compaction compaction;
+            try {
+                compaction = store.compact(null);
+            } finally {
+                compacting.set(false);
+            }
+            queries.get(1, TimeUnit.MINUTES);
+
+            assertThat(compaction.recordsAfter(), is(10_000L));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(totals.isEmpty(), is(false));
+        for (long total : totals) {
+            assertThat(total, anyOf(is(20_000L), is(10_000L)));
+        }
+        assertThat(store.query("kestra", START, START.plus(Duration.ofHours(3)), Duration.ofHours(3)).get(0).count(),
+                is(10_000L));
+    }
+
+    private static HistoryStore.Entry entry(Instant timestamp, String text, String hashtag,
+            SentimentAnalysisApiClient.SentimentResult.Sentiment sentiment, double score) {
+        return new HistoryStore.Entry(timestamp, HistoryStore.postHash(text), hashtag, "twitter", "en", sentiment,
+                SentimentAnalysisApiClient.SentimentResult.Tier.LOCAL, score);
+    }
+}
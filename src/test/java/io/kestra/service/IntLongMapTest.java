@@ -0,0 +1,46 @@
+package io.kestra.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.concurrent.TimeUnit;
+
+class IntLongMapTest {
+    @Test
+    void countsKeys() {
+        IntLongMap map = new IntLongMap();
+        map.addTo(3, 2);
+        map.addTo(3, 1);
+        map.addTo(0, 5);
+
+        assertThat(map.size(), is(2));
+        assertThat(map.get(3), is(3L));
+        assertThat(map.get(0), is(5L));
+        assertThat(map.get(7), is(0L));
+    }
+
+    // Ids are dense, past 65,536 slots a hash keeping only 16 bits clusters
+    // them and probing turns linear
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void manyKeysSpreadOverTheWholeTable() {
+        int keys = 500_000;
+        IntLongMap map = new IntLongMap();
+        for (int round = 0; round < 2; round++) {
+            for (int key = 0; key < keys; key++) {
+                map.addTo(key, key);
+            }
+        }
+
+        assertThat(map.size(), is(keys));
+        for (int key = 0; key < keys; key++) {
+            assertThat(map.get(key), is(2L * key));
+        }
+        long[] sum = new long[1];
+        map.forEach((key, value) -> sum[0] += value);
+        assertThat(sum[0], is((long) keys * (keys - 1)));
+    }
+}
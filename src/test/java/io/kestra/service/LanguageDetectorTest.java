@@ -0,0 +1,36 @@
+package io.kestra.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+class LanguageDetectorTest {
+    private final LanguageDetector languageDetector = LanguageDetector.get();
+
+    @Test
+    void detectsTheLanguagesOfTheFeeds() {
+        assertThat(languageDetector.detect("Thanks for the great deal, I love it"), is("en"));
+        assertThat(languageDetector.detect("Qué buena oferta, me encanta"), is("es"));
+        assertThat(languageDetector.detect("Je suis très content de mon achat"), is("fr"));
+        assertThat(languageDetector.detect("Che bella giornata, grazie a tutti"), is("it"));
+        assertThat(languageDetector.detect("Zamówienie nie przyszło, jestem bardzo zły"), is("pl"));
+        assertThat(languageDetector.detect("Das ist wirklich ein tolles Angebot"), is("de"));
+        assertThat(languageDetector.detect("Adorei a promoção, muito obrigado"), is("pt"));
+    }
+
+    @Test
+    void ignoresMentionsHashtagsAndLinks() {
+        assertThat(languageDetector.detect("RT @AmbSzweWarszawa: Miłego piąteczku.\n\n#BlackFriday https://t.co/tFcEs7fSw8"),
+            is("pl"));
+        assertThat(languageDetector.detect("#BlackFriday #deals @shop https://t.co/abc"), is(nullValue()));
+    }
+
+    @Test
+    void leavesShortPostsUndetected() {
+        assertThat(languageDetector.detect("🔥🔥🔥"), is(nullValue()));
+        assertThat(languageDetector.detect("ok"), is(nullValue()));
+        assertThat(languageDetector.detect(null), is(nullValue()));
+    }
+}
@@ -0,0 +1,57 @@
+package io.kestra.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+class LanguageRoutingSentimentEngineTest {
+    private static final List<String> POSTS = List.of(
+        "Thanks for the great deal, I love it",
+        "Zamówienie nie przyszło, jestem bardzo zły",
+        "This is the worst customer service ever",
+        "Dziękuję, bardzo dobry sklep, polecam",
+        "🔥🔥🔥");
+
+    @Test
+    void batchesPostsByLanguageAndKeepsTheirOrder() throws Exception {
+        List<List<String>> modelBatches = new ArrayList<>();
+        SentimentEngine model = posts -> {
+            modelBatches.add(posts);
+            return new LexiconSentimentEngine().analyzeSentiment(posts).stream()
+                .peek(result -> result.setTier(SentimentAnalysisApiClient.SentimentResult.Tier.LLM))
+                .toList();
+        };
+        LanguageRoutingSentimentEngine engine = new LanguageRoutingSentimentEngine(LanguageDetector.get(),
+            Map.of("en", new LexiconSentimentEngine()), model, 1);
+
+        List<SentimentAnalysisApiClient.SentimentResult> results = engine.analyzeSentiment(POSTS);
+
+        // English posts are scored locally, the others are sent in batches of a single language
+        assertThat(results.stream().map(SentimentAnalysisApiClient.SentimentResult::getTier).toList(), contains(
+            SentimentAnalysisApiClient.SentimentResult.Tier.LOCAL,
+            SentimentAnalysisApiClient.SentimentResult.Tier.LLM,
+            SentimentAnalysisApiClient.SentimentResult.Tier.LOCAL,
+            SentimentAnalysisApiClient.SentimentResult.Tier.LLM,
+            SentimentAnalysisApiClient.SentimentResult.Tier.LLM));
+        assertThat(results.get(2).getSentiment(), is(SentimentAnalysisApiClient.SentimentResult.Sentiment.NEGATIVE));
+        assertThat(modelBatches, contains(List.of(POSTS.get(1)), List.of(POSTS.get(3)), List.of(POSTS.get(4))));
+        assertThat(engine.counts(), is(Map.of("en", 2L, "pl", 2L, "unknown", 1L)));
+    }
+
+    @Test
+    void rejectsUnansweredPosts() {
+        SentimentEngine model = posts -> List.of();
+        LanguageRoutingSentimentEngine engine = new LanguageRoutingSentimentEngine(LanguageDetector.get(), Map.of(),
+            model, 10);
+
+        assertThrows(IOException.class, () -> engine.analyzeSentiment(POSTS));
+    }
+}
@@ -0,0 +1,103 @@
+package io.kestra.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+class SentimentAggregatesTest {
+    @Test
+    void fullSampleGivesExactValues() {
+        SentimentAggregates aggregates = accumulator(10, 0).build(10L, 0.95);
+
+        SentimentAggregates.Proportion positive = aggregates.getSentiments().get("POSITIVE");
+        assertThat(positive.getValue(), is(1.0));
+        assertThat(positive.getLower(), is(1.0));
+        assertThat(positive.getUpper(), is(1.0));
+        SentimentAggregates.Proportion negative = aggregates.getSentiments().get("NEGATIVE");
+        assertThat(negative.getLower(), is(0.0));
+        assertThat(negative.getUpper(), is(0.0));
+        assertThat(aggregates.getScore().getLower(), is(aggregates.getScore().getMean()));
+        assertThat(aggregates.getScore().getUpper(), is(aggregates.getScore().getMean()));
+    }
+
+    @Test
+    void finitePopulationNarrowsTheInterval() {
+        SentimentAggregates.Proportion infinite = accumulator(5, 5).build(null, 0.95)
+            .getSentiments().get("POSITIVE");
+        SentimentAggregates.Proportion finite = accumulator(5, 5).build(20L, 0.95)
+            .getSentiments().get("POSITIVE");
+
+        assertThat(finite.getLower(), greaterThan(infinite.getLower()));
+        assertThat(finite.getUpper(), lessThan(infinite.getUpper()));
+        assertThat(finite.getLower(), lessThan(0.5));
+        assertThat(finite.getUpper(), greaterThan(0.5));
+        // Symmetric around p = 0.5
+        assertThat(finite.getLower() + finite.getUpper(), closeTo(1.0, 1e-9));
+    }
+
+    @Test
+    void extremeProportionsStayWithinBounds() {
+        SentimentAggregates aggregates = accumulator(10, 0).build(null, 0.95);
+
+        SentimentAggregates.Proportion positive = aggregates.getSentiments().get("POSITIVE");
+        assertThat(positive.getUpper(), closeTo(1.0, 1e-9));
+        assertThat(positive.getLower(), lessThan(1.0));
+        assertThat(positive.getLower(), greaterThan(0.6));
+
+        SentimentAggregates.Proportion negative = aggregates.getSentiments().get("NEGATIVE");
+        assertThat(negative.getLower(), is(0.0));
+        assertThat(negative.getUpper(), greaterThan(0.0));
+        assertThat(negative.getUpper(), lessThan(0.4));
+    }
+
+    @Test
+    void mergedAccumulatorsMatchASinglePass() {
+        SentimentAggregates.Accumulator singlePass = new SentimentAggregates.Accumulator();
+        SentimentAggregates.Accumulator merged = new SentimentAggregates.Accumulator();
+        SentimentAggregates.Accumulator shard = new SentimentAggregates.Accumulator();
+        for (int i = 0; i < 100; i++) {
+            SentimentAnalysisApiClient.SentimentResult result = SentimentAnalysisApiClient.SentimentResult.builder()
+                .sentiment(SentimentAnalysisApiClient.SentimentResult.Sentiment.values()[i % 3])
+                .tier(SentimentAnalysisApiClient.SentimentResult.Tier.LOCAL)
+                .score((i * 37 % 100) / 100.0)
+                .build();
+            singlePass.add(result);
+            shard.add(result);
+            // Shards of uneven sizes, and an empty one
+            if (i == 9 || i == 60 || i == 99) {
+                merged.merge(shard);
+                merged.merge(new SentimentAggregates.Accumulator());
+                shard = new SentimentAggregates.Accumulator();
+            }
+        }
+
+        SentimentAggregates expected = singlePass.build(null, 0.95);
+        SentimentAggregates actual = merged.build(null, 0.95);
+        assertThat(actual.getSampleSize(), is(100L));
+        assertThat(actual.getTiers(), is(expected.getTiers()));
+        for (String sentiment : expected.getSentiments().keySet()) {
+            assertThat(actual.getSentiments().get(sentiment).getCount(),
+                is(expected.getSentiments().get(sentiment).getCount()));
+        }
+        assertThat(actual.getScore().getMean(), closeTo(expected.getScore().getMean(), 1e-12));
+        assertThat(actual.getScore().getLower(), closeTo(expected.getScore().getLower(), 1e-12));
+        assertThat(actual.getScore().getUpper(), closeTo(expected.getScore().getUpper(), 1e-12));
+    }
+
+    private static SentimentAggregates.Accumulator accumulator(int positive, int negative) {
+        SentimentAggregates.Accumulator accumulator = new SentimentAggregates.Accumulator();
+        for (int i = 0; i < positive + negative; i++) {
+            accumulator.add(SentimentAnalysisApiClient.SentimentResult.builder()
+                .sentiment(i < positive
+                    ? SentimentAnalysisApiClient.SentimentResult.Sentiment.POSITIVE
+                    : SentimentAnalysisApiClient.SentimentResult.Sentiment.NEGATIVE)
+                .score(i < positive ? 0.8 : 0.2)
+                .build());
+        }
+        return accumulator;
+    }
+}
@@ -1,33 +1,59 @@
 package io.kestra.service;
 
-import com.google.common.collect.ImmutableMap;
+import io.kestra.harness.MockApiServer;
 import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
-import org.apache.commons.lang3.StringUtils;
 import org.junit.jupiter.api.Test;
-import io.kestra.core.runners.RunContext;
-import io.kestra.core.runners.RunContextFactory;
-
-import jakarta.inject.Inject;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 
-import java.time.LocalDate;
+import java.time.Duration;
 import java.util.List;
 
 /**
  * This test will only test the main task, this allow you to send any input
- * parameters to your task and test the returning behaviour easily.
+ * parameters to your task and test the returning behaviour easily. Groq is
+ * replaced by a {@link MockApiServer} answering canned results.
  */
 @MicronautTest
 class SentimentAnalysisTest {
     @Test
     void run() throws Exception {
-        SentimentAnalysisApiClient sentimentAnalysisApiClient = new SentimentAnalysisApiClient(
-                "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");
-        List<SentimentAnalysisApiClient.SentimentResult> sentimentResult = sentimentAnalysisApiClient
-                .analyzeSentiment(List.of("This product is very good", "I hate this product"));
-        System.out.println(sentimentResult);
-        assertThat(sentimentResult.size(), is(2));
+        try (MockApiServer mockApiServer = MockApiServer.start()) {
+            SentimentAnalysisApiClient sentimentAnalysisApiClient = new SentimentAnalysisApiClient(
+                    "gsk_api_key", mockApiServer.groqUrl());
+            List<SentimentAnalysisApiClient.SentimentResult> sentimentResult = sentimentAnalysisApiClient
+                    .analyzeSentiment(List.of("This product is very good", "I hate this product"));
+            assertThat(sentimentResult.size(), is(2));
+        }
+    }
+
+    @Test
+    void hedgesSlowRequests() throws Exception {
+        try (MockApiServer mockApiServer = MockApiServer.start()) {
+            SentimentAnalysisApiClient sentimentAnalysisApiClient = new SentimentAnalysisApiClient(
+                    "gsk_api_key", mockApiServer.groqUrl(), 90.0);
+            List<String> posts = List.of("This product is very good", "I hate this product");
+
+            // Just enough fast answers to trust the percentile, none hedged
+            // until then
+            mockApiServer.latency(Duration.ofMillis(20), Duration.ZERO);
+            for (int i = 0; i < 20; i++) {
+                sentimentAnalysisApiClient.analyzeSentiment(posts);
+            }
+            assertThat(mockApiServer.hits(MockApiServer.GROQ_PATH), is(20L));
+
+            // The first request is stuck, the second one sent after the
+            // percentile answers first
+            mockApiServer.delayNext(Duration.ofSeconds(10));
+            long start = System.nanoTime();
+            List<SentimentAnalysisApiClient.SentimentResult> sentimentResult = sentimentAnalysisApiClient
+                    .analyzeSentiment(posts);
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+            assertThat(sentimentResult.size(), is(2));
+            assertThat(mockApiServer.hits(MockApiServer.GROQ_PATH), is(22L));
+            assertThat(elapsed.compareTo(Duration.ofSeconds(5)) < 0, is(true));
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,44 @@
+package io.kestra.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.List;
+
+class StratifiedReservoirSamplerTest {
+    @Test
+    void keepsEverythingBelowSampleSize() {
+        StratifiedReservoirSampler<Integer> sampler = new StratifiedReservoirSampler<>(100, 10, 42L);
+        for (int i = 0; i < 5; i++) {
+            sampler.offer("all", i);
+        }
+
+        assertThat(sampler.sample(), is(List.of(0, 1, 2, 3, 4)));
+    }
+
+    @Test
+    void allocatesProportionallyToStrata() {
+        StratifiedReservoirSampler<Integer> sampler = new StratifiedReservoirSampler<>(100, 10, 42L);
+        for (int i = 0; i < 100_000; i++) {
+            sampler.offer(i % 10 < 7 ? "a" : "b", i);
+        }
+
+        List<Integer> sample = sampler.sample();
+        assertThat(sample.size(), is(100));
+        assertThat(sample.stream().filter(i -> i % 10 < 7).count(), is(70L));
+        assertThat(sampler.populationSize(), is(100_000L));
+    }
+
+    @Test
+    void boundsTheNumberOfStrata() {
+        StratifiedReservoirSampler<Integer> sampler = new StratifiedReservoirSampler<>(10, 2, 42L);
+        for (int i = 0; i < 10; i++) {
+            sampler.offer("stratum-" + i, i);
+        }
+
+        assertThat(sampler.strata().size(), is(3));
+        assertThat(sampler.strata().get(StratifiedReservoirSampler.OTHER_STRATUM), is(8L));
+    }
+}
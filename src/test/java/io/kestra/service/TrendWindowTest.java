@@ -0,0 +1,104 @@
+package io.kestra.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+class TrendWindowTest {
+    private static final long START = Instant.parse("2024-11-29T00:00:00Z").toEpochMilli();
+    private static final long HOUR = Duration.ofHours(1).toMillis();
+
+    @Test
+    void slidesAndRanks() {
+        TrendWindow trendWindow = new TrendWindow(Duration.ofHours(3), Duration.ofHours(1));
+
+        assertThat(trendWindow.add(START, List.of("old"), null), is(true));
+        for (int i = 0; i < 5; i++) {
+            trendWindow.add(START + HOUR + i, List.of("kestra", "airflow", "kestra"), List.of("kestra_io"));
+        }
+        for (int i = 0; i < 3; i++) {
+            trendWindow.add(START + 3 * HOUR + i, List.of("kestra", "dagster"), null);
+        }
+
+        // The first hour slid out of the window, late posts of it are dropped too
+        assertThat(trendWindow.add(START + 1, List.of("old"), null), is(false));
+        List<TrendWindow.Trend> hashtags = trendWindow.topHashtags(10);
+        assertThat(hashtags.size(), is(3));
+        assertThat(hashtags.get(0), is(new TrendWindow.Trend("kestra", 8, 3)));
+        assertThat(hashtags.get(1), is(new TrendWindow.Trend("airflow", 5, 0)));
+        assertThat(hashtags.get(2), is(new TrendWindow.Trend("dagster", 3, 3)));
+        assertThat(trendWindow.topMentions(1), is(List.of(new TrendWindow.Trend("kestra_io", 5, 0))));
+        assertThat(trendWindow.topCooccurrences(1),
+            is(List.of(new TrendWindow.Cooccurrence("airflow", "kestra", 5, 0))));
+    }
+
+    @Test
+    void resumesAfterCountedPosts() throws IOException {
+        TrendWindow trendWindow = new TrendWindow(Duration.ofDays(1), Duration.ofHours(1));
+        trendWindow.add(START, List.of("kestra"), null);
+        trendWindow.add(START + HOUR, List.of("kestra", "airflow"), null);
+
+        TrendWindow restored = roundTrip(trendWindow, Duration.ofDays(1));
+        // Posts of the previous run are skipped, newer ones are added
+        assertThat(restored.add(START + HOUR, List.of("kestra"), null), is(false));
+        assertThat(restored.add(START + 2 * HOUR, List.of("kestra"), null), is(true));
+        assertThat(restored.topHashtags(1), is(List.of(new TrendWindow.Trend("kestra", 3, 1))));
+        assertThat(restored.topCooccurrences(1),
+            is(List.of(new TrendWindow.Cooccurrence("airflow", "kestra", 1, 0))));
+
+        // Another window length restarts the counts
+        assertThat(roundTrip(trendWindow, Duration.ofDays(2)).topHashtags(1).size(), is(0));
+    }
+
+    @Test
+    void countsUntimedPostsOnce() throws IOException {
+        TrendWindow trendWindow = new TrendWindow(Duration.ofDays(1), Duration.ofHours(1));
+        long post = HistoryStore.postHash("Black friday #deals");
+        assertThat(trendWindow.addUntimed(post, START, List.of("deals"), null), is(true));
+        assertThat(trendWindow.addUntimed(post, START, List.of("deals"), null), is(false));
+
+        // A later run reading the same posts only counts the new ones
+        TrendWindow restored = roundTrip(trendWindow, Duration.ofDays(1));
+        assertThat(restored.addUntimed(post, START + HOUR, List.of("deals"), null), is(false));
+        assertThat(restored.addUntimed(HistoryStore.postHash("Cyber monday #deals"), START + HOUR, List.of("deals"),
+            null), is(true));
+        assertThat(restored.topHashtags(1), is(List.of(new TrendWindow.Trend("deals", 2, 1))));
+
+        // Once its bucket left the window, the post is forgotten with its counts
+        assertThat(restored.addUntimed(post, START + 24 * HOUR, List.of("deals"), null), is(true));
+        assertThat(restored.topHashtags(1), is(List.of(new TrendWindow.Trend("deals", 2, 1))));
+    }
+
+    @Test
+    void untimedPostsDontSkipTimedOnes() throws IOException {
+        TrendWindow trendWindow = new TrendWindow(Duration.ofDays(1), Duration.ofHours(1));
+        trendWindow.add(START, List.of("kestra"), null);
+        // Counted at the time of the run, later than the timed posts
+        trendWindow.addUntimed(HistoryStore.postHash("Black friday #deals"), START + 3 * HOUR, List.of("deals"), null);
+
+        // Timed posts of the next run, older than that run, are still counted
+        TrendWindow restored = roundTrip(trendWindow, Duration.ofDays(1));
+        assertThat(restored.add(START, List.of("kestra"), null), is(false));
+        assertThat(restored.add(START + HOUR, List.of("kestra"), null), is(true));
+        assertThat(restored.topHashtags(1), is(List.of(new TrendWindow.Trend("kestra", 2, 0))));
+    }
+
+    private static TrendWindow roundTrip(TrendWindow trendWindow, Duration window) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            trendWindow.write(output);
+        }
+        return TrendWindow.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), window,
+            Duration.ofHours(1));
+    }
+}
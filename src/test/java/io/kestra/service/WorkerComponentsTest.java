@@ -0,0 +1,29 @@
+package io.kestra.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.kestra.plugin.instagram.PostsData;
+
+class WorkerComponentsTest {
+    @Test
+    void componentsAreSharedAndReadersCached() throws Exception {
+        WorkerComponents workerComponents = WorkerComponents.get();
+        assertThat(WorkerComponents.get(), sameInstance(workerComponents));
+
+        workerComponents.warmUp();
+        assertThat(workerComponents.reader(PostsData.class), sameInstance(workerComponents.reader(PostsData.class)));
+
+        // Unknown properties are ignored by the shared mapper
+        JsonNode node = workerComponents.reader(JsonNode.class).readTree("{\"text\":\"hello\"}");
+        SentimentAnalysisApiClient.SentimentResult result = workerComponents
+                .reader(SentimentAnalysisApiClient.SentimentResult.class)
+                .readValue("{\"sentiment\":\"positive\",\"unknown\":1}");
+        assertThat(node.get("text").asText(), is("hello"));
+        assertThat(result.getSentiment(), is(SentimentAnalysisApiClient.SentimentResult.Sentiment.POSITIVE));
+    }
+}